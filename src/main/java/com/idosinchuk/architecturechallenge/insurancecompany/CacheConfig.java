@@ -0,0 +1,109 @@
+package com.idosinchuk.architecturechallenge.insurancecompany;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.ToLongFunction;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.HolderEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.ProductEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.VehicleEntity;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * In-process caches of the single record lookups, bounded in size and time,
+ * and the location of the Hibernate second-level cache regions.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+	/** Policy responses by policy code */
+	public static final String POLICIES = "policies";
+
+	/** Holder responses by passport number */
+	public static final String HOLDERS = "holders";
+
+	/** Vehicle responses by license plate */
+	public static final String VEHICLES = "vehicles";
+
+	@Bean
+	public CacheManager cacheManager(@Value("${insurancecompany.cache.spec}") String cacheSpecification) {
+		// Only these caches exist, a misspelled cache name fails instead of creating
+		// an unbounded one
+		CaffeineCacheManager cacheManager = new CaffeineCacheManager(POLICIES, HOLDERS, VEHICLES);
+		cacheManager.setCacheSpecification(cacheSpecification);
+
+		// Evictions made in a transaction wait for its commit, so a concurrent read
+		// can not put the old row back before it is replaced
+		return new TransactionAwareCacheManagerProxy(cacheManager);
+	}
+
+	/**
+	 * Ehcache opens its configuration as a URL, so the classpath location is
+	 * resolved here instead of in application.properties.
+	 */
+	@Bean
+	public HibernatePropertiesCustomizer secondLevelCacheConfiguration(
+			@Value("classpath:ehcache.xml") Resource configuration) {
+		return properties -> {
+			try {
+				properties.put(ConfigSettings.CONFIG_URI, configuration.getURI().toString());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+	}
+
+	/**
+	 * Hits, misses and puts of each second-level cache region, the Hibernate
+	 * metrics of the actuator only have the totals. Counted only while
+	 * hibernate.generate_statistics is on, it is off by default.
+	 */
+	@Bean
+	public MeterBinder secondLevelCacheRegionMetrics(EntityManagerFactory entityManagerFactory) {
+		return registry -> {
+			Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+			for (String region : new String[] { ProductEntity.CACHE_REGION, VehicleEntity.CACHE_REGION,
+					HolderEntity.CACHE_REGION }) {
+				regionCounter(registry, statistics, region, "hibernate.cache.region.requests",
+						CacheRegionStatistics::getHitCount, "result", "hit");
+				regionCounter(registry, statistics, region, "hibernate.cache.region.requests",
+						CacheRegionStatistics::getMissCount, "result", "miss");
+				regionCounter(registry, statistics, region, "hibernate.cache.region.puts",
+						CacheRegionStatistics::getPutCount);
+			}
+		};
+	}
+
+	private static void regionCounter(MeterRegistry registry, Statistics statistics, String region, String name,
+			ToLongFunction<CacheRegionStatistics> count, String... tags) {
+		FunctionCounter.builder(name, statistics, s -> {
+			// No region statistics while the second-level cache is disabled
+			CacheRegionStatistics regionStatistics = s.getDomainDataRegionStatistics(region);
+			return regionStatistics != null ? count.applyAsLong(regionStatistics) : 0;
+		}).tag("region", region).tags(tags).register(registry);
+	}
+}
@@ -0,0 +1,125 @@
+package com.idosinchuk.architecturechallenge.insurancecompany;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CacheableBody;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.SerializedBody;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.ResponseCacheService;
+
+/**
+ * Writes the reads by key from the bodies of {@link ResponseCacheService}. The
+ * media type is negotiated as for any other body, then a stored body of that
+ * version and media type is copied to the response as it is. Otherwise the
+ * value is written by the converter that would write it, and its bytes are
+ * stored for the next reads.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+public class CacheableBodyHttpMessageConverter implements HttpMessageConverter<CacheableBody> {
+
+	private final ResponseCacheService responseCacheService;
+
+	// Every converter, this one included
+	private final List<HttpMessageConverter<?>> converters;
+
+	public CacheableBodyHttpMessageConverter(ResponseCacheService responseCacheService,
+			List<HttpMessageConverter<?>> converters) {
+		this.responseCacheService = responseCacheService;
+		this.converters = converters;
+	}
+
+	@Override
+	public boolean canRead(Class<?> clazz, MediaType mediaType) {
+		return false;
+	}
+
+	@Override
+	public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+		return CacheableBody.class.isAssignableFrom(clazz);
+	}
+
+	@Override
+	public List<MediaType> getSupportedMediaTypes() {
+		return Collections.singletonList(MediaType.ALL);
+	}
+
+	@Override
+	public CacheableBody read(Class<? extends CacheableBody> clazz, HttpInputMessage inputMessage) {
+		throw new HttpMessageNotReadableException("Cacheable bodies are not read", inputMessage);
+	}
+
+	@Override
+	public void write(CacheableBody body, MediaType contentType, HttpOutputMessage outputMessage)
+			throws IOException {
+
+		HttpMessageConverter<Object> converter = converterFor(body.getValue(), contentType);
+
+		if (!responseCacheService.isEnabled()) {
+			converter.write(body.getValue(), contentType, outputMessage);
+			return;
+		}
+
+		SerializedBody serializedBody = responseCacheService.get(body.getResource(), body.getKey(),
+				body.getEntityTag(), contentType);
+
+		if (serializedBody == null) {
+			BufferedOutputMessage buffered = new BufferedOutputMessage();
+			converter.write(body.getValue(), contentType, buffered);
+
+			byte[] bytes = buffered.out.toByteArray();
+			responseCacheService.put(body.getResource(), body.getKey(), body.getEntityTag(), contentType,
+					buffered.headers.getContentType(), bytes);
+
+			serializedBody = SerializedBody.onHeap(buffered.headers.getContentType(), bytes);
+		}
+
+		outputMessage.getHeaders().setContentType(serializedBody.getContentType());
+		outputMessage.getHeaders().setContentLength(serializedBody.getLength());
+		serializedBody.writeTo(outputMessage.getBody());
+	}
+
+	@SuppressWarnings("unchecked")
+	private HttpMessageConverter<Object> converterFor(Object value, MediaType contentType) {
+		for (HttpMessageConverter<?> converter : converters) {
+			if (converter != this && converter.canWrite(value.getClass(), contentType)) {
+				return (HttpMessageConverter<Object>) converter;
+			}
+		}
+
+		throw new HttpMessageNotWritableException(
+				"No converter for " + value.getClass() + " with Content-Type " + contentType);
+	}
+
+	/**
+	 * Output of the converter writing a body to store.
+	 */
+	private static class BufferedOutputMessage implements HttpOutputMessage {
+
+		private final HttpHeaders headers = new HttpHeaders();
+
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+
+		@Override
+		public OutputStream getBody() {
+			return out;
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return headers;
+		}
+	}
+}
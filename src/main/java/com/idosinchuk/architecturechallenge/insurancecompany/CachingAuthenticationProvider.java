@@ -0,0 +1,97 @@
+package com.idosinchuk.architecturechallenge.insurancecompany;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Remembers the successful verifications of another provider for a short time,
+ * so a client sending its basic credentials on every request pays the password
+ * hash once per ttl instead of once per request. The result is cached with its
+ * authorities, so the roles are enforced as before. Failed verifications are not
+ * cached and always reach the provider.
+ * 
+ * Entries are keyed by an HMAC of the user name and password with a key drawn at
+ * startup, so the cache holds no password nor a digest that can be attacked
+ * offline without that key.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+
+	private static final String ALGORITHM = "HmacSHA256";
+
+	private final AuthenticationProvider provider;
+
+	private final Cache<String, Authentication> verified;
+
+	private final ThreadLocal<Mac> macs;
+
+	public CachingAuthenticationProvider(AuthenticationProvider provider, Duration ttl, long maxEntries) {
+		this.provider = provider;
+		this.verified = Caffeine.newBuilder().maximumSize(maxEntries).expireAfterWrite(ttl).build();
+
+		byte[] secret = new byte[32];
+		new SecureRandom().nextBytes(secret);
+		SecretKeySpec key = new SecretKeySpec(secret, ALGORITHM);
+		this.macs = ThreadLocal.withInitial(() -> {
+			try {
+				Mac mac = Mac.getInstance(ALGORITHM);
+				mac.init(key);
+				return mac;
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(ALGORITHM + " is not available", e);
+			}
+		});
+	}
+
+	@Override
+	public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+		if (authentication.getCredentials() == null) {
+			return provider.authenticate(authentication);
+		}
+
+		// Concurrent requests with the same credentials verify them once. A failure
+		// is thrown to all of them and leaves no entry.
+		return verified.get(key(authentication), k -> provider.authenticate(authentication));
+	}
+
+	@Override
+	public boolean supports(Class<?> authentication) {
+		return UsernamePasswordAuthenticationToken.class.isAssignableFrom(authentication)
+				&& provider.supports(authentication);
+	}
+
+	/**
+	 * Forgets all verifications, for instance after a password change.
+	 */
+	public void invalidateAll() {
+		verified.invalidateAll();
+	}
+
+	private String key(Authentication authentication) {
+		Mac mac = macs.get();
+		byte[] name = authentication.getName().getBytes(StandardCharsets.UTF_8);
+		// The name length keeps "ab" + "c" and "a" + "bc" apart
+		mac.update(ByteBuffer.allocate(Integer.BYTES).putInt(name.length).array());
+		mac.update(name);
+		return Base64.getEncoder().encodeToString(
+				mac.doFinal(authentication.getCredentials().toString().getBytes(StandardCharsets.UTF_8)));
+	}
+
+}
@@ -0,0 +1,148 @@
+package com.idosinchuk.architecturechallenge.insurancecompany;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Data source giving out at most a number of connections at a time. Virtual
+ * threads are not bounded by a thread pool, so without it every request would
+ * queue on the connection pool, and the JDBC driver keeps the carrier thread
+ * of a virtual thread while a statement runs. Beyond the limit a thread waits
+ * for a permit up to the acquire timeout, unmounted, and then fails as a pool
+ * timeout does.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+public class ConcurrencyLimitedDataSource extends DelegatingDataSource {
+
+	private final int limit;
+
+	private final Duration acquireTimeout;
+
+	private final Semaphore permits;
+
+	public ConcurrencyLimitedDataSource(DataSource targetDataSource, int limit, Duration acquireTimeout) {
+		super(targetDataSource);
+		this.limit = limit;
+		this.acquireTimeout = acquireTimeout;
+		// Fair, the longest waiting request gets the next connection
+		this.permits = new Semaphore(limit, true);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		acquire();
+		try {
+			return releasingOnClose(super.getConnection());
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		acquire();
+		try {
+			return releasingOnClose(super.getConnection(username, password));
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Threads waiting for a connection.
+	 *
+	 * @return estimated number of waiting threads
+	 */
+	public int getWaiting() {
+		return permits.getQueueLength();
+	}
+
+	private void acquire() throws SQLException {
+		try {
+			if (!permits.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+				throw new SQLTransientConnectionException(
+						"No connection available in " + acquireTimeout + ", all " + limit + " are in use");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLTransientConnectionException("Interrupted while waiting for a connection", e);
+		}
+	}
+
+	private Connection releasingOnClose(Connection connection) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new ReleasingOnClose(connection));
+	}
+
+	/**
+	 * Connection giving its permit back when closed, once however many times it
+	 * is closed. The proxy is a connection of its own: it equals itself only and
+	 * is what an unwrap to Connection returns, the rest goes to the connection of
+	 * the pool.
+	 */
+	private class ReleasingOnClose implements InvocationHandler {
+
+		private final Connection connection;
+
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		ReleasingOnClose(Connection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "unwrap":
+				if (((Class<?>) args[0]).isInstance(proxy)) {
+					return proxy;
+				}
+				break;
+			case "isWrapperFor":
+				if (((Class<?>) args[0]).isInstance(proxy)) {
+					return true;
+				}
+				break;
+			case "close":
+				if (released.compareAndSet(false, true)) {
+					try {
+						connection.close();
+					} finally {
+						permits.release();
+					}
+					return null;
+				}
+				break;
+			default:
+				break;
+			}
+
+			try {
+				return method.invoke(connection, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+	}
+}
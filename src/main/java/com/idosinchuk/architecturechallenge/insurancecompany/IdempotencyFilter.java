@@ -0,0 +1,226 @@
+package com.idosinchuk.architecturechallenge.insurancecompany;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.UrlPathHelper;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.StoredResponse;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.IdempotencyService;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.CustomErrorType;
+
+/**
+ * Idempotency-Key of the POST endpoints creating a policy, holder, vehicle or
+ * product. The first request with a key is executed and its response stored.
+ * A retry with the same key and body gets that response without reaching the
+ * controller. Keys are scoped to the user and the endpoint. Runs after the
+ * security filters, so only authenticated requests are stored.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+	public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+	// Set on the responses returned from the store
+	public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
+	private static final int MAX_KEY_LENGTH = 255;
+
+	private static final Set<String> PATHS = new HashSet<>(
+			Arrays.asList("/api/v1/policies", "/api/v1/holders", "/api/v1/vehicles", "/api/v1/products"));
+
+	@Autowired
+	private IdempotencyService idempotencyService;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !HttpMethod.POST.matches(request.getMethod()) || request.getHeader(IDEMPOTENCY_KEY) == null
+				|| !PATHS.contains(urlPathHelper.getPathWithinApplication(request));
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		String idempotencyKey = request.getHeader(IDEMPOTENCY_KEY);
+
+		if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+			sendError(response, HttpStatus.BAD_REQUEST,
+					IDEMPOTENCY_KEY + " must have between 1 and " + MAX_KEY_LENGTH + " characters");
+			return;
+		}
+
+		// The body is read here for the fingerprint and given to the controller again
+		byte[] body = StreamUtils.copyToByteArray(request.getInputStream());
+
+		String key = digest(request.getRemoteUser(), urlPathHelper.getPathWithinApplication(request), idempotencyKey);
+		String fingerprint = digest(request.getContentType(), new String(body, StandardCharsets.UTF_8));
+
+		StoredResponse stored = idempotencyService.reserve(key, fingerprint);
+
+		if (stored != null) {
+			replay(stored, fingerprint, response);
+			return;
+		}
+
+		ContentCachingResponseWrapper responseWrapper = new ContentCachingResponseWrapper(response);
+		boolean completed = false;
+
+		try {
+			filterChain.doFilter(new CachedBodyRequest(request, body), responseWrapper);
+
+			// Server errors are not stored, a retry executes the request again
+			if (responseWrapper.getStatus() < HttpStatus.INTERNAL_SERVER_ERROR.value()) {
+				idempotencyService.complete(key,
+						new StoredResponse(fingerprint, responseWrapper.getStatus(), responseWrapper.getContentType(),
+								responseWrapper.getHeader(HttpHeaders.LOCATION),
+								responseWrapper.getHeader(HttpHeaders.ETAG), responseWrapper.getContentAsByteArray(),
+								Instant.now()));
+				completed = true;
+			}
+		} finally {
+			if (!completed) {
+				idempotencyService.release(key);
+			}
+			responseWrapper.copyBodyToResponse();
+		}
+	}
+
+	private void replay(StoredResponse stored, String fingerprint, HttpServletResponse response) throws IOException {
+
+		if (!stored.getFingerprint().equals(fingerprint)) {
+			sendError(response, HttpStatus.UNPROCESSABLE_ENTITY,
+					IDEMPOTENCY_KEY + " was already used with another request");
+			return;
+		}
+
+		if (stored.isInProgress()) {
+			sendError(response, HttpStatus.CONFLICT,
+					"The request with this " + IDEMPOTENCY_KEY + " is still in progress, please retry later");
+			return;
+		}
+
+		response.setStatus(stored.getStatus());
+		response.setHeader(IDEMPOTENT_REPLAYED, "true");
+		if (stored.getContentType() != null) {
+			response.setContentType(stored.getContentType());
+		}
+		if (stored.getLocation() != null) {
+			response.setHeader(HttpHeaders.LOCATION, stored.getLocation());
+		}
+		if (stored.getEntityTag() != null) {
+			response.setHeader(HttpHeaders.ETAG, stored.getEntityTag());
+		}
+		response.setContentLength(stored.getBody().length);
+		response.getOutputStream().write(stored.getBody());
+	}
+
+	private void sendError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+		response.setStatus(status.value());
+		response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+		objectMapper.writeValue(response.getOutputStream(), new CustomErrorType(message));
+	}
+
+	private static String digest(String... values) {
+		// Values separated by a character a header or user name can not have
+		return DigestUtils.md5DigestAsHex(String.join("\n", values).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Request whose body was already read, served from memory.
+	 */
+	private static class CachedBodyRequest extends HttpServletRequestWrapper {
+
+		private final byte[] body;
+
+		CachedBodyRequest(HttpServletRequest request, byte[] body) {
+			super(request);
+			this.body = body;
+		}
+
+		@Override
+		public ServletInputStream getInputStream() {
+			ByteArrayInputStream in = new ByteArrayInputStream(body);
+
+			return new ServletInputStream() {
+
+				@Override
+				public int read() {
+					return in.read();
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) {
+					return in.read(b, off, len);
+				}
+
+				@Override
+				public boolean isFinished() {
+					return in.available() == 0;
+				}
+
+				@Override
+				public boolean isReady() {
+					return true;
+				}
+
+				@Override
+				public void setReadListener(ReadListener readListener) {
+					// The whole body is in memory, it is available at once
+					try {
+						if (!isFinished()) {
+							readListener.onDataAvailable();
+						}
+						if (isFinished()) {
+							readListener.onAllDataRead();
+						}
+					} catch (IOException | RuntimeException e) {
+						readListener.onError(e);
+					}
+				}
+			};
+		}
+
+		@Override
+		public BufferedReader getReader() {
+			String encoding = getCharacterEncoding();
+			return new BufferedReader(new InputStreamReader(getInputStream(),
+					encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8));
+		}
+	}
+}
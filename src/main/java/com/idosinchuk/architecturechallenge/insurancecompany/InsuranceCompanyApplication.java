@@ -1,11 +1,11 @@
 package com.idosinchuk.architecturechallenge.insurancecompany;
 
-import org.modelmapper.ModelMapper;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
@@ -21,6 +21,7 @@ import springfox.documentation.swagger2.annotations.EnableSwagger2;
 @Configuration
 @EnableSwagger2
 @EnableDiscoveryClient
+@EnableScheduling
 @SpringBootApplication
 public class InsuranceCompanyApplication {
 
@@ -28,11 +29,6 @@ public class InsuranceCompanyApplication {
 		SpringApplication.run(InsuranceCompanyApplication.class, args);
 	}
 
-	@Bean
-	public ModelMapper modelMapper() {
-		return new ModelMapper();
-	}
-
 	@Bean
 	public Docket api() {
 		return new Docket(DocumentationType.SWAGGER_2).apiInfo(apiInfo()).select().apis(RequestHandlerSelectors.any())
@@ -0,0 +1,193 @@
+package com.idosinchuk.architecturechallenge.insurancecompany;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.hateoas.PagedResources;
+import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.Resources;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufMapper;
+import com.fasterxml.jackson.dataformat.protobuf.schema.NativeProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchema;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.BinaryFormat;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CustomMessage;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.HolderRequestDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.HolderResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyRequestDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.ProductRequestDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.ProductResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.VehicleRequestDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.VehicleResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.BatchResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.LeanResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.SliceResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.CustomErrorType;
+
+/**
+ * Protobuf bodies of the DTOs, following the messages of {@link #SCHEMA}.
+ * Listings, batch reads and write responses are written as their page message,
+ * with the content and paging fields of the lean representation and without
+ * links.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public class JacksonProtobufHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+	public static final String SCHEMA = "proto/insurancecompany.proto";
+
+	// Message of an empty page, every page message numbers its fields the same way
+	private static final String EMPTY_PAGE = "Page";
+
+	private static final Map<Class<?>, String> MESSAGES = new HashMap<>();
+
+	// Page message by content type
+	private static final Map<Class<?>, String> PAGES = new HashMap<>();
+
+	static {
+		MESSAGES.put(PolicyResponseDTO.class, "Policy");
+		MESSAGES.put(ProductResponseDTO.class, "Product");
+		MESSAGES.put(HolderResponseDTO.class, "Holder");
+		MESSAGES.put(VehicleResponseDTO.class, "Vehicle");
+		MESSAGES.put(PolicyRequestDTO.class, "PolicyRequest");
+		MESSAGES.put(ProductRequestDTO.class, "Product");
+		MESSAGES.put(HolderRequestDTO.class, "Holder");
+		MESSAGES.put(VehicleRequestDTO.class, "Vehicle");
+		MESSAGES.put(CustomErrorType.class, "Error");
+
+		PAGES.put(PolicyResponseDTO.class, "Policies");
+		PAGES.put(ProductResponseDTO.class, "Products");
+		PAGES.put(HolderResponseDTO.class, "Holders");
+		PAGES.put(VehicleResponseDTO.class, "Vehicles");
+		PAGES.put(CustomMessage.class, "Messages");
+	}
+
+	private final ProtobufMapper mapper;
+
+	private final Map<String, ProtobufSchema> schemas = new HashMap<>();
+
+	public JacksonProtobufHttpMessageConverter() {
+		super(MediaType.valueOf(BinaryFormat.PROTOBUF_VALUE));
+
+		mapper = new ProtobufMapper();
+		// Amounts as decimal strings, a double would round them
+		mapper.configOverride(BigDecimal.class).setFormat(JsonFormat.Value.forShape(JsonFormat.Shape.STRING));
+		// Properties without a field in the schema, such as the links, are left out
+		mapper.enable(JsonGenerator.Feature.IGNORE_UNKNOWN);
+		mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+		mapper.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+		try {
+			NativeProtobufSchema schema = mapper.schemaLoader().loadNative(new ClassPathResource(SCHEMA).getURL());
+			for (String message : schema.getMessageNames()) {
+				schemas.put(message, schema.forType(message));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Can not load " + SCHEMA, e);
+		}
+	}
+
+	/**
+	 * Mapper of the Protobuf bodies, to be used with {@link #getSchema(String)}.
+	 * 
+	 * @return ProtobufMapper
+	 */
+	public ProtobufMapper getMapper() {
+		return mapper;
+	}
+
+	/**
+	 * Schema of a message of {@link #SCHEMA}.
+	 * 
+	 * @param message message name
+	 * @return ProtobufSchema, null if there is no such message
+	 */
+	public ProtobufSchema getSchema(String message) {
+		return schemas.get(message);
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return MESSAGES.containsKey(clazz) || Resources.class.isAssignableFrom(clazz)
+				|| LeanResources.class.isAssignableFrom(clazz) || Collection.class.isAssignableFrom(clazz);
+	}
+
+	@Override
+	public boolean canRead(Class<?> clazz, MediaType mediaType) {
+		return MESSAGES.containsKey(clazz) && canRead(mediaType);
+	}
+
+	@Override
+	protected Object readInternal(Class<? extends Object> clazz, HttpInputMessage inputMessage) throws IOException {
+		return mapper.readerFor(clazz).with(schemas.get(MESSAGES.get(clazz))).readValue(inputMessage.getBody());
+	}
+
+	@Override
+	protected void writeInternal(Object body, HttpOutputMessage outputMessage) throws IOException {
+		String message = MESSAGES.get(body.getClass());
+		Object value = body;
+
+		if (message == null) {
+			LeanResources<?> page = toPage(body);
+			Iterator<?> content = page.getContent().iterator();
+
+			message = content.hasNext() ? PAGES.get(content.next().getClass()) : EMPTY_PAGE;
+			value = page;
+		}
+
+		if (message == null) {
+			throw new HttpMessageNotWritableException("There is no Protobuf message for " + body.getClass());
+		}
+
+		mapper.writer(schemas.get(message)).writeValue(outputMessage.getBody(), value);
+	}
+
+	// The content and paging fields of the body, as in the lean representation
+	private static LeanResources<?> toPage(Object body) {
+		if (body instanceof LeanResources) {
+			return (LeanResources<?>) body;
+		}
+		if (body instanceof PagedResources) {
+			PagedResources<?> resources = (PagedResources<?>) body;
+			return new LeanResources<>(unwrap(resources.getContent()), resources.getMetadata(), null, null, null);
+		}
+		if (body instanceof SliceResources) {
+			SliceResources<?> resources = (SliceResources<?>) body;
+			return new LeanResources<>(resources.getContent(), null, resources.isHasNext(),
+					resources.getNextCursor(), null);
+		}
+		if (body instanceof BatchResources) {
+			BatchResources<?> resources = (BatchResources<?>) body;
+			return new LeanResources<>(resources.getContent(), null, null, null, resources.getMissing());
+		}
+		if (body instanceof Resources) {
+			return new LeanResources<>(unwrap(((Resources<?>) body).getContent()), null, null, null, null);
+		}
+
+		return new LeanResources<>((Collection<?>) body, null, null, null, null);
+	}
+
+	// The assembled pages hold each DTO in a Resource with its links
+	private static Collection<?> unwrap(Collection<?> content) {
+		return content.stream().map(element -> element instanceof Resource ? ((Resource<?>) element).getContent()
+				: element).collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.idosinchuk.architecturechallenge.insurancecompany;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.ResponseCacheService;
+
+/**
+ * Binary bodies, next to JSON and XML, for the clients reading at high rates:
+ * CBOR and Smile with the same fields as JSON, and Protobuf. The binary
+ * mappers are configured as the JSON one (spring.jackson.*).
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@Configuration
+public class MessageConverterConfig implements WebMvcConfigurer {
+
+	@Autowired
+	private ResponseCacheService responseCacheService;
+
+	// Take the place of the default CBOR and Smile converters, after JSON
+	@Bean
+	public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		return new MappingJackson2CborHttpMessageConverter(configure(builder, new ObjectMapper(new CBORFactory())));
+	}
+
+	@Bean
+	public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		return new MappingJackson2SmileHttpMessageConverter(configure(builder, new ObjectMapper(new SmileFactory())));
+	}
+
+	// The builder is shared with the JSON and XML converters, it is applied but not changed
+	private static ObjectMapper configure(Jackson2ObjectMapperBuilder builder, ObjectMapper objectMapper) {
+		builder.configure(objectMapper);
+		return objectMapper;
+	}
+
+	// After JSON, so a client accepting anything still gets JSON
+	@Override
+	public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+		converters.add(new JacksonProtobufHttpMessageConverter());
+
+		// First, the reads by key are written through it by the converter of their value
+		converters.add(0, new CacheableBodyHttpMessageConverter(responseCacheService, converters));
+	}
+
+}
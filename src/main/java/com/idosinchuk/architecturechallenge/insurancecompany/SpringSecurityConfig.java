@@ -1,15 +1,20 @@
 package com.idosinchuk.architecturechallenge.insurancecompany;
 
+import java.time.Duration;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.core.env.Environment;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 
 @Configuration
 @EnableWebSecurity
@@ -40,9 +45,10 @@ public class SpringSecurityConfig extends WebSecurityConfigurerAdapter {
 				.access("hasRole('ROLE_USER') or hasRole('ROLE_ADMIN')").anyRequest().authenticated().and().httpBasic()
 				.authenticationEntryPoint(authEntryPoint);
 
-		// Disable default cache control from Spring Security
-		http.headers().disable();
-		http.headers().cacheControl().disable();
+		// Default security headers. Spring Security only adds its no-store Cache-Control
+		// when the controller set none, so the reads keep their own policy (see
+		// insurancecompany.cache-control.*) and everything else is not stored.
+		http.headers().cacheControl();
 
 		// Allows swagger
 		http.authorizeRequests().antMatchers(AUTH_WHITELIST).permitAll();
@@ -51,10 +57,26 @@ public class SpringSecurityConfig extends WebSecurityConfigurerAdapter {
 	@Autowired
 	public void configureGlobal(AuthenticationManagerBuilder auth) throws Exception {
 
-		auth.inMemoryAuthentication().withUser(readProperty("spring.security.user.name"))
-				.password(encoder.encode(readProperty("spring.security.user.password"))).roles("USER").and()
-				.withUser(readProperty("spring.security.useradmin.name"))
-				.password(encoder.encode(readProperty("spring.security.useradmin.password"))).roles("ADMIN");
+		InMemoryUserDetailsManager users = new InMemoryUserDetailsManager(
+				User.withUsername(readProperty("spring.security.user.name"))
+						.password(encoder.encode(readProperty("spring.security.user.password"))).roles("USER").build(),
+				User.withUsername(readProperty("spring.security.useradmin.name"))
+						.password(encoder.encode(readProperty("spring.security.useradmin.password"))).roles("ADMIN")
+						.build());
+
+		DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+		provider.setUserDetailsService(users);
+		provider.setPasswordEncoder(encoder);
+
+		// The passwords are bcrypt hashes, several milliseconds of cpu per check. Basic
+		// clients send them on every request, so the verifications are cached a while.
+		Duration ttl = env.getProperty("insurancecompany.auth.cache-ttl", Duration.class, Duration.ZERO);
+		if (ttl.isZero()) {
+			auth.authenticationProvider(provider);
+		} else {
+			auth.authenticationProvider(new CachingAuthenticationProvider(provider, ttl,
+					env.getProperty("insurancecompany.auth.cache-size", Long.class, 10000L)));
+		}
 	}
 
 }
@@ -0,0 +1,30 @@
+package com.idosinchuk.architecturechallenge.insurancecompany;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.util.LongRunningRequest;
+
+/**
+ * Timeout of the streamed bulk imports and export, longer than the default
+ * async timeout kept by the other asynchronous requests.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+@Configuration
+public class StreamingConfig implements WebMvcConfigurer {
+
+	@Value("${insurancecompany.bulk.request-timeout:30m}")
+	private Duration requestTimeout;
+
+	@Override
+	public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+		configurer.registerCallableInterceptors(new LongRunningRequest(requestTimeout));
+	}
+
+}
@@ -0,0 +1,92 @@
+package com.idosinchuk.architecturechallenge.insurancecompany;
+
+import java.time.Duration;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.util.VirtualThreads;
+
+/**
+ * Requests served on virtual threads, one per request, instead of the Tomcat
+ * pool (server.tomcat.max-threads), along with the asynchronous requests and
+ * the repository calls made on their threads. The JDBC connections given out
+ * at a time to JPA and the JdbcTemplate are bounded by
+ * {@link ConcurrencyLimitedDataSource}, as the pool of platform threads did
+ * before. Flyway and the health check keep the connection pool itself, so they
+ * do not queue behind the requests. Needs Java 21 or later.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "insurancecompany.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig implements WebMvcConfigurer {
+
+	// Not a bean, an Executor bean would take the place of the task executor of
+	// Spring Boot. Not shut down either, the threads are not pooled and Tomcat
+	// stops after the beans are destroyed.
+	private final ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("http-");
+
+	@Bean
+	public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadTomcatCustomizer() {
+		return factory -> factory
+				.addConnectorCustomizers(connector -> connector.getProtocolHandler().setExecutor(executor));
+	}
+
+	@Override
+	public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+		configurer.setTaskExecutor(new ConcurrentTaskExecutor(executor));
+	}
+
+	// Static, the data source is replaced before the entity manager factory and
+	// the JdbcTemplate are initialized
+	@Bean
+	public static BeanPostProcessor concurrencyLimitedDataSourcePostProcessor(Environment environment) {
+		int limit = environment.getProperty("insurancecompany.virtual-threads.jdbc-concurrency", Integer.class, 10);
+		Duration acquireTimeout = environment.getProperty("insurancecompany.virtual-threads.jdbc-acquire-timeout",
+				Duration.class, Duration.ofSeconds(5));
+
+		return new BeanPostProcessor() {
+
+			// One limit per pool, JPA and JdbcTemplate share it as they share a transaction
+			private final Map<DataSource, ConcurrencyLimitedDataSource> limited = new IdentityHashMap<>();
+
+			@Override
+			public Object postProcessBeforeInitialization(Object bean, String beanName) {
+				if (bean instanceof LocalContainerEntityManagerFactoryBean) {
+					LocalContainerEntityManagerFactoryBean factory = (LocalContainerEntityManagerFactoryBean) bean;
+					factory.setDataSource(limit(factory.getDataSource()));
+				} else if (bean instanceof JdbcTemplate) {
+					JdbcTemplate jdbcTemplate = (JdbcTemplate) bean;
+					jdbcTemplate.setDataSource(limit(jdbcTemplate.getDataSource()));
+				}
+				return bean;
+			}
+
+			private synchronized DataSource limit(DataSource dataSource) {
+				if (dataSource == null || dataSource instanceof ConcurrencyLimitedDataSource) {
+					return dataSource;
+				}
+				return limited.computeIfAbsent(dataSource,
+						pool -> new ConcurrencyLimitedDataSource(pool, limit, acquireTimeout));
+			}
+		};
+	}
+
+}
@@ -0,0 +1,25 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.common;
+
+/**
+ * Binary media types of the DTOs, next to JSON and XML. CBOR and Smile carry
+ * the same fields as JSON. Protobuf follows the schema in
+ * proto/insurancecompany.proto.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public final class BinaryFormat {
+
+	/** Concise Binary Object Representation, RFC 7049 */
+	public static final String CBOR_VALUE = "application/cbor";
+
+	/** Binary JSON of Jackson */
+	public static final String SMILE_VALUE = "application/x-jackson-smile";
+
+	/** Protocol Buffers */
+	public static final String PROTOBUF_VALUE = "application/x-protobuf";
+
+	private BinaryFormat() {
+	}
+
+}
@@ -0,0 +1,70 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.common;
+
+import java.util.List;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Body formats of the bulk imports and exports.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public enum BulkFormat {
+
+	/** One JSON object per line */
+	NDJSON(BulkFormat.NDJSON_VALUE),
+
+	/** Comma separated values with a header line */
+	CSV(BulkFormat.CSV_VALUE);
+
+	public static final String NDJSON_VALUE = "application/x-ndjson";
+
+	public static final String CSV_VALUE = "text/csv";
+
+	private final MediaType mediaType;
+
+	BulkFormat(String mediaType) {
+		this.mediaType = MediaType.valueOf(mediaType);
+	}
+
+	/**
+	 * Format of a request body.
+	 * 
+	 * @param contentType content type of the body
+	 * @return BulkFormat
+	 * @throws IllegalArgumentException if the content type is not a bulk format
+	 */
+	public static BulkFormat fromMediaType(MediaType contentType) {
+		for (BulkFormat format : values()) {
+			if (format.mediaType.includes(contentType)) {
+				return format;
+			}
+		}
+		throw new IllegalArgumentException("Unsupported bulk format " + contentType);
+	}
+
+	/**
+	 * Format preferred by an Accept header, NDJSON if it accepts both.
+	 * 
+	 * @param accept value of the Accept header
+	 * @return BulkFormat
+	 */
+	public static BulkFormat negotiate(String accept) {
+		List<MediaType> acceptedTypes = MediaType.parseMediaTypes(accept);
+		MediaType.sortBySpecificityAndQuality(acceptedTypes);
+
+		for (MediaType acceptedType : acceptedTypes) {
+			for (BulkFormat format : values()) {
+				if (acceptedType.includes(format.mediaType)) {
+					return format;
+				}
+			}
+		}
+		return NDJSON;
+	}
+
+	public MediaType mediaType() {
+		return mediaType;
+	}
+}
@@ -0,0 +1,43 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.common;
+
+/**
+ * Response body of a read by key whose serialized form can be reused. The
+ * entity tag is the version of the value, made of the row versions of the
+ * resource and of the resources it embeds.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+public class CacheableBody {
+
+	private final String resource;
+
+	private final String key;
+
+	private final String entityTag;
+
+	private final Object value;
+
+	public CacheableBody(String resource, String key, String entityTag, Object value) {
+		this.resource = resource;
+		this.key = key;
+		this.entityTag = entityTag;
+		this.value = value;
+	}
+
+	public String getResource() {
+		return resource;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public String getEntityTag() {
+		return entityTag;
+	}
+
+	public Object getValue() {
+		return value;
+	}
+}
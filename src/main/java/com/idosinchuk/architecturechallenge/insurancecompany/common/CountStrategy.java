@@ -0,0 +1,42 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.common;
+
+/**
+ * How the total number of elements of a paged listing is produced.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public enum CountStrategy {
+
+	/** SELECT COUNT(*) on every request */
+	EXACT,
+
+	/** Exact count reused until its time to live expires */
+	CACHED,
+
+	/** Row estimate from the table statistics of the database */
+	ESTIMATED,
+
+	/** No total, only whether there is a next page */
+	NONE;
+
+	/**
+	 * Parse a strategy ignoring case.
+	 * 
+	 * @param value strategy name
+	 * @return CountStrategy
+	 * @throws IllegalArgumentException if the value is not a strategy
+	 */
+	public static CountStrategy fromValue(String value) {
+		for (CountStrategy strategy : values()) {
+			if (strategy.name().equalsIgnoreCase(value)) {
+				return strategy;
+			}
+		}
+		throw new IllegalArgumentException("Unknown count strategy " + value);
+	}
+
+	public String value() {
+		return name().toLowerCase();
+	}
+}
@@ -0,0 +1,32 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.common;
+
+import java.util.List;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * Page that knows which strategy produced its total.
+ * 
+ * @author Igor Dosinchuk
+ *
+ * @param <T> content type
+ */
+public class CountedPage<T> extends PageImpl<T> {
+
+	private static final long serialVersionUID = 1L;
+
+	// Response header reporting the strategy behind the total
+	public static final String STRATEGY_HEADER = "X-Total-Count-Strategy";
+
+	private final CountStrategy countStrategy;
+
+	public CountedPage(List<T> content, Pageable pageable, long total, CountStrategy countStrategy) {
+		super(content, pageable, total);
+		this.countStrategy = countStrategy;
+	}
+
+	public CountStrategy getCountStrategy() {
+		return countStrategy;
+	}
+}
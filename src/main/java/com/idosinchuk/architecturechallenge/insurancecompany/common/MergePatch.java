@@ -0,0 +1,93 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.common;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * JSON Merge Patch (RFC 7396) of a flat resource: the values of the request
+ * DTO and which of its fields were present in the request. Absent fields are
+ * left as they are, a null asks to remove the field.
+ * 
+ * @author Igor Dosinchuk
+ *
+ * @param <T> request DTO type
+ */
+public final class MergePatch<T> {
+
+	public static final String MEDIA_TYPE_VALUE = "application/merge-patch+json";
+
+	private final T values;
+
+	private final Set<String> fields;
+
+	private MergePatch(T values, Set<String> fields) {
+		this.values = values;
+		this.fields = Collections.unmodifiableSet(fields);
+	}
+
+	/**
+	 * Read a merge patch document.
+	 * 
+	 * @param document     fields of the request body
+	 * @param type         request DTO type
+	 * @param objectMapper mapper converting the values to the DTO
+	 * @return merge patch
+	 * @throws IllegalArgumentException if a value does not fit its field
+	 */
+	public static <T> MergePatch<T> of(Map<String, Object> document, Class<T> type, ObjectMapper objectMapper) {
+		return new MergePatch<>(objectMapper.convertValue(document, type), new LinkedHashSet<>(document.keySet()));
+	}
+
+	/**
+	 * Merge patch of some fields of a DTO.
+	 * 
+	 * @param values DTO with the values
+	 * @param fields fields present in the patch
+	 * @return merge patch
+	 */
+	public static <T> MergePatch<T> of(T values, String... fields) {
+		return new MergePatch<>(values, new LinkedHashSet<>(Arrays.asList(fields)));
+	}
+
+	public T getValues() {
+		return values;
+	}
+
+	public boolean contains(String field) {
+		return fields.contains(field);
+	}
+
+	/**
+	 * Values of the given fields that are present in the patch.
+	 * 
+	 * @param requiredFields fields that may be patched, all of them required
+	 * @return values by field name, in the given order
+	 * @throws IllegalArgumentException if one of them is null, a required field
+	 *                                  can not be removed
+	 */
+	public Map<String, Object> valuesOf(String... requiredFields) {
+		BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(values);
+		Map<String, Object> present = new LinkedHashMap<>();
+
+		for (String field : requiredFields) {
+			if (fields.contains(field)) {
+				Object value = wrapper.getPropertyValue(field);
+				if (value == null) {
+					throw new IllegalArgumentException("The field " + field + " can not be removed");
+				}
+				present.put(field, value);
+			}
+		}
+
+		return present;
+	}
+}
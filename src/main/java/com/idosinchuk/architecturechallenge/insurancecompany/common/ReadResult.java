@@ -0,0 +1,59 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.common;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Value read by key, fresh from the service or the last known one when the
+ * database could not answer.
+ * 
+ * @author Igor Dosinchuk
+ *
+ * @param <T> value type
+ */
+public class ReadResult<T> {
+
+	// RFC 7234 warning for a response served stale
+	public static final String STALE_WARNING = "110 - \"Response is Stale\"";
+
+	private final T value;
+
+	private final Instant readAt;
+
+	private final boolean stale;
+
+	public ReadResult(T value, Instant readAt, boolean stale) {
+		this.value = value;
+		this.readAt = readAt;
+		this.stale = stale;
+	}
+
+	public T getValue() {
+		return value;
+	}
+
+	public Instant getReadAt() {
+		return readAt;
+	}
+
+	public boolean isStale() {
+		return stale;
+	}
+
+	/**
+	 * Response headers marking a stale value: Warning, and Age in seconds since
+	 * it was read. None for a fresh value.
+	 * 
+	 * @return the headers
+	 */
+	public HttpHeaders headers() {
+		HttpHeaders headers = new HttpHeaders();
+		if (stale) {
+			headers.set(HttpHeaders.WARNING, STALE_WARNING);
+			headers.set(HttpHeaders.AGE, Long.toString(Duration.between(readAt, Instant.now()).getSeconds()));
+		}
+		return headers;
+	}
+}
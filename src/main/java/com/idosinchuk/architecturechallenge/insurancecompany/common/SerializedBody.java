@@ -0,0 +1,79 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Response body already serialized, with the content type it was written
+ * with. The bytes are kept in the heap or, off-heap, in a direct buffer.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+public class SerializedBody {
+
+	private final MediaType contentType;
+
+	// byte[] in the heap, read-only direct ByteBuffer off-heap
+	private final Object bytes;
+
+	private final int length;
+
+	private SerializedBody(MediaType contentType, Object bytes, int length) {
+		this.contentType = contentType;
+		this.bytes = bytes;
+		this.length = length;
+	}
+
+	/**
+	 * Body kept in the heap.
+	 *
+	 * @param contentType content type of the body
+	 * @param body        serialized body, not copied
+	 * @return SerializedBody
+	 */
+	public static SerializedBody onHeap(MediaType contentType, byte[] body) {
+		return new SerializedBody(contentType, body, body.length);
+	}
+
+	/**
+	 * Body copied out of the heap. The memory is released when the body is
+	 * collected.
+	 *
+	 * @param contentType content type of the body
+	 * @param body        serialized body
+	 * @return SerializedBody
+	 */
+	public static SerializedBody offHeap(MediaType contentType, byte[] body) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(body.length);
+		buffer.put(body).flip();
+		return new SerializedBody(contentType, buffer.asReadOnlyBuffer(), body.length);
+	}
+
+	public MediaType getContentType() {
+		return contentType;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Write the body.
+	 *
+	 * @param out stream the body is written to
+	 * @throws IOException if the stream fails
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		if (bytes instanceof byte[]) {
+			out.write((byte[]) bytes);
+		} else {
+			// A view of its own, concurrent writers do not share the position
+			Channels.newChannel(out).write(((ByteBuffer) bytes).duplicate());
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.common;
+
+import java.time.Instant;
+
+/**
+ * Response stored for an Idempotency-Key, with the fingerprint of the request
+ * that got it. The Location and ETag headers are kept too, a created resource
+ * may have a code generated by the server. While that request is being
+ * processed there is no response yet.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public class StoredResponse {
+
+	// Status of a key whose request has not completed
+	public static final int IN_PROGRESS = 0;
+
+	private final String fingerprint;
+
+	private final int status;
+
+	private final String contentType;
+
+	private final String location;
+
+	private final String entityTag;
+
+	private final byte[] body;
+
+	private final Instant storedAt;
+
+	public StoredResponse(String fingerprint, int status, String contentType, String location, String entityTag,
+			byte[] body, Instant storedAt) {
+		this.fingerprint = fingerprint;
+		this.status = status;
+		this.contentType = contentType;
+		this.location = location;
+		this.entityTag = entityTag;
+		this.body = body;
+		this.storedAt = storedAt;
+	}
+
+	/**
+	 * Reservation of a key by the request being processed.
+	 * 
+	 * @param fingerprint digest of the request
+	 * @return response without status nor body
+	 */
+	public static StoredResponse inProgress(String fingerprint) {
+		return new StoredResponse(fingerprint, IN_PROGRESS, null, null, null, new byte[0], Instant.now());
+	}
+
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public String getLocation() {
+		return location;
+	}
+
+	public String getEntityTag() {
+		return entityTag;
+	}
+
+	public byte[] getBody() {
+		return body;
+	}
+
+	public Instant getStoredAt() {
+		return storedAt;
+	}
+
+	public boolean isInProgress() {
+		return status == IN_PROGRESS;
+	}
+}
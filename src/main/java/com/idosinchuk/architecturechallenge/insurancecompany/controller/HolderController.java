@@ -1,14 +1,20 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.controller;
 
+import java.io.InputStream;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.validation.Valid;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.web.PagedResourcesAssembler;
 import org.springframework.hateoas.PagedResources;
 import org.springframework.http.HttpHeaders;
@@ -23,13 +29,35 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
-
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.BinaryFormat;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.BulkFormat;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CacheableBody;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountStrategy;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountedPage;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.MergePatch;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.ReadResult;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.HolderRequestDTO;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.HolderResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.BatchResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.LeanResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.SliceResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.BulkImportService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.GuardedReadService;
 import com.idosinchuk.architecturechallenge.insurancecompany.service.HolderService;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.BatchKeys;
 import com.idosinchuk.architecturechallenge.insurancecompany.util.CustomErrorType;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.DatabaseUnavailableException;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.EntityTags;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.KeysetCursor;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.LeanRepresentation;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.LongRunningRequest;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.NegotiatedRepresentation;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -50,27 +78,48 @@ public class HolderController {
 	@Autowired
 	HolderService holderService;
 
+	@Autowired
+	GuardedReadService guardedReadService;
+
+	@Autowired
+	ObjectMapper objectMapper;
+
+	@Value("${insurancecompany.batch.max-size:100}")
+	private int maxBatchSize;
+
+	@Value("${insurancecompany.cache-control.holders:private, no-cache}")
+	private String cacheControl;
+
+	@Autowired
+	BulkImportService bulkImportService;
+
 	/**
 	 * Retrieve list of all holders according to the search criteria.
 	 * 
-	 * @param pageable paging fields
+	 * @param pageable  paging fields
+	 * @param count     count strategy: exact, cached, estimated or none
+	 * @param userAgent user agent
 	 * @return ResponseEntity with paged list of all holders, headers and status
 	 */
-	@GetMapping(path = "/holders", produces = MediaType.APPLICATION_JSON_VALUE)
+	@GetMapping(path = "/holders", produces = { MediaType.APPLICATION_JSON_VALUE, BinaryFormat.CBOR_VALUE,
+			BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@ResponseBody
 	@ApiOperation(value = "Retrieve list of all holders according to the search criteria.")
-	public ResponseEntity<PagedResources<HolderResponseDTO>> getAllHolders(Pageable pageable,
-			PagedResourcesAssembler pagedResourcesAssembler, @RequestHeader("User-Agent") String userAgent) {
+	public ResponseEntity<?> getAllHolders(Pageable pageable, PagedResourcesAssembler pagedResourcesAssembler,
+			@RequestParam(value = "count", defaultValue = "exact") String count,
+			@RequestHeader("User-Agent") String userAgent) {
 
 		logger.info("Fetching all holders");
 
-		Page<HolderResponseDTO> holder = null;
+		Slice<HolderResponseDTO> holder = null;
 
 		try {
 			// Find holders in DB with paging filters
-			holder = holderService.getAllHolders(pageable);
+			holder = holderService.getAllHolders(pageable, CountStrategy.fromValue(count));
 
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
 		} catch (Exception e) {
 			logger.error("An error occurred! {}", e.getMessage());
 			return CustomErrorType.returnResponsEntityError(e.getMessage());
@@ -79,18 +128,139 @@ public class HolderController {
 		MultiValueMap<String, String> headers = new HttpHeaders();
 		headers.put(HttpHeaders.USER_AGENT, Arrays.asList(userAgent));
 
-		PagedResources<HolderResponseDTO> pagedResources = pagedResourcesAssembler.toResource(holder);
+		// Validator of the page in the negotiated format, If-None-Match gets 304 without the body
+		headers.add(HttpHeaders.ETAG, NegotiatedRepresentation
+				.entityTag(EntityTags.ofPage(holder, HolderResponseDTO::getId, HolderController::entityTag)));
+		headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+		headers.add(HttpHeaders.CACHE_CONTROL, cacheControl);
+
+		// Without total only the next page is known
+		if (!(holder instanceof CountedPage)) {
+			headers.add(CountedPage.STRATEGY_HEADER, CountStrategy.NONE.value());
+
+			if (LeanRepresentation.isRequested()) {
+				return new ResponseEntity<>(LeanResources.ofPage(holder), headers, HttpStatus.OK);
+			}
+
+			return new ResponseEntity<>(SliceResources.ofPage(holder), headers, HttpStatus.OK);
+		}
+
+		headers.add(CountedPage.STRATEGY_HEADER, ((CountedPage) holder).getCountStrategy().value());
+
+		// The same page and totals, without the links of the assembler
+		if (LeanRepresentation.isRequested()) {
+			return new ResponseEntity<>(LeanResources.ofPage(holder), headers, HttpStatus.OK);
+		}
+
+		PagedResources<HolderResponseDTO> pagedResources = pagedResourcesAssembler.toResource((CountedPage) holder);
 
 		return new ResponseEntity<>(pagedResources, headers, HttpStatus.OK);
 	}
 
+	/**
+	 * Retrieve holders with keyset pagination. Pass an empty cursor for the first
+	 * page and the returned nextCursor for the following ones.
+	 * 
+	 * @param cursor    cursor of the previous page, empty to start
+	 * @param size      page size
+	 * @param userAgent user agent
+	 * @return ResponseEntity with the page of holders, the next cursor, headers and
+	 *         status
+	 */
+	@GetMapping(path = "/holders", params = "cursor", produces = { MediaType.APPLICATION_JSON_VALUE,
+			BinaryFormat.CBOR_VALUE, BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
+	@ResponseBody
+	@ApiOperation(value = "Retrieve holders with keyset pagination.")
+	public ResponseEntity<?> getAllHoldersByCursor(@RequestParam("cursor") String cursor,
+			@RequestParam(value = "size", defaultValue = "" + KeysetCursor.DEFAULT_SIZE) int size,
+			@RequestHeader("User-Agent") String userAgent) {
+
+		logger.info("Fetching holders after cursor {}", cursor);
+
+		Slice<HolderResponseDTO> holder = null;
+
+		try {
+			// Find holders in DB after the last id of the previous page
+			holder = holderService.getAllHoldersAfter(KeysetCursor.decode(cursor), size);
+
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
+		} catch (Exception e) {
+			logger.error("An error occurred! {}", e.getMessage());
+			return CustomErrorType.returnResponsEntityError(e.getMessage());
+		}
+
+		MultiValueMap<String, String> headers = new HttpHeaders();
+		headers.put(HttpHeaders.USER_AGENT, Arrays.asList(userAgent));
+
+		// Validator of the page in the negotiated format, If-None-Match gets 304 without the body
+		headers.add(HttpHeaders.ETAG, NegotiatedRepresentation
+				.entityTag(EntityTags.ofPage(holder, HolderResponseDTO::getId, HolderController::entityTag)));
+		headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+		headers.add(HttpHeaders.CACHE_CONTROL, cacheControl);
+
+		if (LeanRepresentation.isRequested()) {
+			return new ResponseEntity<>(LeanResources.ofKeyset(holder, HolderResponseDTO::getId), headers,
+					HttpStatus.OK);
+		}
+
+		SliceResources<HolderResponseDTO> sliceResources = SliceResources.ofKeyset(holder, HolderResponseDTO::getId);
+
+		return new ResponseEntity<>(sliceResources, headers, HttpStatus.OK);
+	}
+
+	/**
+	 * Retrieve the holders of several passport numbers with one query.
+	 * 
+	 * @param passportNumbers passport numbers, comma separated or repeated
+	 * @return ResponseEntity with the holders found, the passport numbers not found and
+	 *         status
+	 */
+	@GetMapping(path = "/holders", params = "passportNumbers", produces = { MediaType.APPLICATION_JSON_VALUE,
+			BinaryFormat.CBOR_VALUE, BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
+	@ResponseBody
+	@ApiOperation(value = "Retrieve the holders of several passport numbers.")
+	public ResponseEntity<?> getHoldersByPassportNumbers(
+			@RequestParam("passportNumbers") List<String> passportNumbers) {
+
+		logger.info("Fetching holders with passport numbers {}", passportNumbers);
+
+		Object holders = null;
+
+		try {
+			Set<String> keys = BatchKeys.of(passportNumbers, maxBatchSize);
+
+			// Search all the holders in BD at once
+			List<HolderResponseDTO> found = holderService.getHolders(keys);
+
+			if (LeanRepresentation.isRequested()) {
+				holders = LeanResources.ofBatch(keys, found, HolderResponseDTO::getPassportNumber);
+			} else {
+				holders = BatchResources.of(keys, found, HolderResponseDTO::getPassportNumber);
+			}
+
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
+		} catch (Exception e) {
+			logger.error("An error occurred! {}", e.getMessage());
+			return CustomErrorType.returnResponsEntityError(e.getMessage());
+		}
+
+		// JSON, CBOR, Smile or Protobuf after the Accept header
+		HttpHeaders headers = new HttpHeaders();
+		headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+
+		return new ResponseEntity<>(holders, headers, HttpStatus.OK);
+	}
+
 	/**
 	 * Retrieve holder by the id.
 	 * 
 	 * @param passportNumber holder passport number
 	 * @return ResponseEntity with status and holderResponseDTO
 	 */
-	@GetMapping(path = "/holders/{passportNumber}", produces = MediaType.APPLICATION_JSON_VALUE)
+	@GetMapping(path = "/holders/{passportNumber}", produces = { MediaType.APPLICATION_JSON_VALUE,
+			BinaryFormat.CBOR_VALUE, BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
 	@ResponseBody
 	@ApiOperation(value = "Retrieve holder by the passportNumber.")
 	public ResponseEntity<?> getHolders(@PathVariable("passportNumber") String passportNumber) {
@@ -100,10 +270,28 @@ public class HolderController {
 		HolderResponseDTO holder = null;
 
 		try {
-			// Search holder in BD by passportNumber
-			holder = holderService.getHolder(passportNumber);
+			// Search holder in BD by passportNumber, or its last known value if BD does not answer
+			ReadResult<HolderResponseDTO> read = guardedReadService.read("holder", passportNumber,
+					() -> holderService.getCachedHolder(passportNumber), () -> holderService.getHolder(passportNumber));
+			holder = read.getValue();
+
+			if (holder == null) {
+				return new ResponseEntity<>(new CustomErrorType("Passport number " + passportNumber + " Not Found!"),
+						HttpStatus.NOT_FOUND);
+			}
+
+			HttpHeaders headers = read.headers();
+			headers.setETag(NegotiatedRepresentation.entityTag(entityTag(holder)));
+			headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+			headers.setCacheControl(cacheControl);
 
-			return new ResponseEntity<>(holder, HttpStatus.OK);
+			// Serialized once per version and media type
+			return new ResponseEntity<>(new CacheableBody("holder", passportNumber, headers.getETag(), holder), headers,
+					HttpStatus.OK);
+
+		} catch (DatabaseUnavailableException e) {
+			logger.warn("An error occurred! {}", e.getMessage());
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.SERVICE_UNAVAILABLE);
 
 		} catch (Exception e) {
 			logger.error("An error occurred! {}", e.getMessage());
@@ -119,7 +307,8 @@ public class HolderController {
 	 * @param holderRequestDTO object to save
 	 * @return ResponseEntity with status and holderResponseDTO
 	 */
-	@PostMapping(path = "/holders", consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+	@PostMapping(path = "/holders", consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+			BinaryFormat.CBOR_VALUE, BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
 	@ResponseBody
 	@ApiOperation(value = "Add a holder.")
 	public ResponseEntity<?> addHolders(@Valid @RequestBody HolderRequestDTO holderRequestDTO) {
@@ -130,24 +319,75 @@ public class HolderController {
 
 	}
 
+	/**
+	 * Add holders in bulk. The NDJSON or CSV body is read record by record and
+	 * the result of every record is streamed back as NDJSON.
+	 * 
+	 * @param contentType body format
+	 * @param body        holders to save
+	 * @return ResponseEntity with one result per record
+	 */
+	@PostMapping(path = "/holders/bulk", consumes = { BulkFormat.NDJSON_VALUE,
+			BulkFormat.CSV_VALUE }, produces = BulkFormat.NDJSON_VALUE)
+	@ApiOperation(value = "Add holders in bulk.")
+	public ResponseEntity<StreamingResponseBody> addHoldersInBulk(
+			@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body) {
+
+		logger.info("Process bulk import of holders");
+
+		// Streamed for as long as the body takes, not the default async timeout
+		LongRunningRequest.mark();
+		StreamingResponseBody results = out -> bulkImportService.importHolders(body, contentType, out);
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(BulkFormat.NDJSON.mediaType());
+
+		return new ResponseEntity<>(results, headers, HttpStatus.OK);
+
+	}
+
 	/**
 	 * El método PATCH solicita que se aplique un conjunto de cambios descritos en
 	 * la entidad de solicitud al recurso identificado por el URI de Solicitud.
 	 * 
-	 * @param passportNumber   holder passport number
-	 * @param holderRequestDTO object to update
+	 * @param passportNumber holder passport number
+	 * @param ifMatch        tags of the versions the holder may have, optional
+	 * @param document       fields to change, JSON Merge Patch
 	 * @return ResponseEntity with resource and status
 	 */
 	@PatchMapping(path = "/holders/{passportNumber}", consumes = { MediaType.APPLICATION_JSON_VALUE,
-			MediaType.APPLICATION_XML_VALUE })
+			MergePatch.MEDIA_TYPE_VALUE, MediaType.APPLICATION_XML_VALUE, BinaryFormat.CBOR_VALUE,
+			BinaryFormat.SMILE_VALUE })
 	@ResponseBody
 	@ApiOperation(value = "Update the holder.")
 	public ResponseEntity<?> updateHolders(@PathVariable("passportNumber") String passportNumber,
-			@RequestBody HolderRequestDTO holderRequestDTO) {
+			@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+			@RequestBody Map<String, Object> document) {
 
 		logger.info("Process patch holder");
 
-		return holderService.updateHolder(passportNumber, holderRequestDTO);
+		try {
+			// Only the fields present in the document are written
+			MergePatch<HolderRequestDTO> holderPatch = MergePatch.of(document, HolderRequestDTO.class, objectMapper);
+
+			// With If-Match a single conditional update, 412 if no tag has the version
+			return holderService.updateHolder(passportNumber, holderPatch, EntityTags.versionsOf(ifMatch));
+
+		} catch (IllegalArgumentException e) {
+			// A value does not fit its field
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
+
+		} catch (OptimisticLockingFailureException e) {
+			// Without If-Match, another update committed between the read and the write
+			logger.warn("An error occurred! {}", e.getMessage());
+			return new ResponseEntity<>(new CustomErrorType(
+					"Passport number " + passportNumber + " was modified meanwhile, please try again"),
+					HttpStatus.CONFLICT);
+		}
+
+	}
 
+	private static String entityTag(HolderResponseDTO holder) {
+		return EntityTags.of(holder.getVersion());
 	}
 }
@@ -0,0 +1,44 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.controller;
+
+import java.lang.reflect.Type;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyRequestDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PolicyCodeService;
+
+/**
+ * Sets the policy code of a new policy when the server generates them. Runs
+ * once the body is read and before it is validated, so a request without code
+ * is accepted.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@ControllerAdvice(assignableTypes = PolicyController.class)
+public class PolicyCodeAdvice extends RequestBodyAdviceAdapter {
+
+	@Autowired
+	private PolicyCodeService policyCodeService;
+
+	@Override
+	public boolean supports(MethodParameter methodParameter, Type targetType,
+			Class<? extends HttpMessageConverter<?>> converterType) {
+		return targetType == PolicyRequestDTO.class && policyCodeService.isServerAssigned();
+	}
+
+	@Override
+	public Object afterBodyRead(Object body, HttpInputMessage inputMessage, MethodParameter parameter,
+			Type targetType, Class<? extends HttpMessageConverter<?>> converterType) {
+
+		// The code sent by the client, if any, is replaced
+		((PolicyRequestDTO) body).setPolicyCode(policyCodeService.nextPolicyCode());
+
+		return body;
+	}
+}
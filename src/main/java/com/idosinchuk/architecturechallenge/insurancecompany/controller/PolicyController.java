@@ -1,16 +1,23 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.controller;
 
+import java.io.InputStream;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.validation.Valid;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.web.PagedResourcesAssembler;
 import org.springframework.hateoas.PagedResources;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -23,13 +30,36 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.BinaryFormat;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.BulkFormat;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CacheableBody;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountStrategy;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountedPage;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.MergePatch;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.ReadResult;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyRequestDTO;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.BatchResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.LeanResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.SliceResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.BulkImportService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.GuardedReadService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PolicyExportService;
 import com.idosinchuk.architecturechallenge.insurancecompany.service.PolicyService;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.BatchKeys;
 import com.idosinchuk.architecturechallenge.insurancecompany.util.CustomErrorType;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.DatabaseUnavailableException;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.EntityTags;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.KeysetCursor;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.LeanRepresentation;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.LongRunningRequest;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.NegotiatedRepresentation;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -50,27 +80,51 @@ public class PolicyController {
 	@Autowired
 	PolicyService policyService;
 
+	@Autowired
+	GuardedReadService guardedReadService;
+
+	@Autowired
+	ObjectMapper objectMapper;
+
+	@Value("${insurancecompany.batch.max-size:100}")
+	private int maxBatchSize;
+
+	@Value("${insurancecompany.cache-control.policies:private, no-cache}")
+	private String cacheControl;
+
+	@Autowired
+	BulkImportService bulkImportService;
+
+	@Autowired
+	PolicyExportService policyExportService;
+
 	/**
 	 * Retrieve list of all policies according to the search criteria.
 	 * 
-	 * @param pageable paging fields
+	 * @param pageable  paging fields
+	 * @param count     count strategy: exact, cached, estimated or none
+	 * @param userAgent user agent
 	 * @return ResponseEntity with paged list of all policies, headers and status
 	 */
-	@GetMapping(path = "/policies", produces = MediaType.APPLICATION_JSON_VALUE)
+	@GetMapping(path = "/policies", produces = { MediaType.APPLICATION_JSON_VALUE, BinaryFormat.CBOR_VALUE,
+			BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@ResponseBody
 	@ApiOperation(value = "Retrieve list of all policies according to the search criteria.")
-	public ResponseEntity<PagedResources<PolicyResponseDTO>> getAllPolicies(Pageable pageable,
-			PagedResourcesAssembler pagedResourcesAssembler, @RequestHeader("User-Agent") String userAgent) {
+	public ResponseEntity<?> getAllPolicies(Pageable pageable, PagedResourcesAssembler pagedResourcesAssembler,
+			@RequestParam(value = "count", defaultValue = "exact") String count,
+			@RequestHeader("User-Agent") String userAgent) {
 
 		logger.info("Fetching all policies");
 
-		Page<PolicyResponseDTO> policy = null;
+		Slice<PolicyResponseDTO> policy = null;
 
 		try {
 			// Find policies in DB with paging filters
-			policy = policyService.getAllPolicies(pageable);
+			policy = policyService.getAllPolicies(pageable, CountStrategy.fromValue(count));
 
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
 		} catch (Exception e) {
 			logger.error("An error occurred! {}", e.getMessage());
 			return CustomErrorType.returnResponsEntityError(e.getMessage());
@@ -79,18 +133,166 @@ public class PolicyController {
 		MultiValueMap<String, String> headers = new HttpHeaders();
 		headers.put(HttpHeaders.USER_AGENT, Arrays.asList(userAgent));
 
-		PagedResources<PolicyResponseDTO> pagedResources = pagedResourcesAssembler.toResource(policy);
+		// Validator of the page in the negotiated format, If-None-Match gets 304 without the body
+		headers.add(HttpHeaders.ETAG, NegotiatedRepresentation
+				.entityTag(EntityTags.ofPage(policy, PolicyResponseDTO::getId, PolicyController::entityTag)));
+		headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+		headers.add(HttpHeaders.CACHE_CONTROL, cacheControl);
+
+		// Without total only the next page is known
+		if (!(policy instanceof CountedPage)) {
+			headers.add(CountedPage.STRATEGY_HEADER, CountStrategy.NONE.value());
+
+			if (LeanRepresentation.isRequested()) {
+				return new ResponseEntity<>(LeanResources.ofPage(policy), headers, HttpStatus.OK);
+			}
+
+			return new ResponseEntity<>(SliceResources.ofPage(policy), headers, HttpStatus.OK);
+		}
+
+		headers.add(CountedPage.STRATEGY_HEADER, ((CountedPage) policy).getCountStrategy().value());
+
+		// The same page and totals, without the links of the assembler
+		if (LeanRepresentation.isRequested()) {
+			return new ResponseEntity<>(LeanResources.ofPage(policy), headers, HttpStatus.OK);
+		}
+
+		PagedResources<PolicyResponseDTO> pagedResources = pagedResourcesAssembler.toResource((CountedPage) policy);
 
 		return new ResponseEntity<>(pagedResources, headers, HttpStatus.OK);
 	}
 
+	/**
+	 * Retrieve policies with keyset pagination. Pass an empty cursor for the first
+	 * page and the returned nextCursor for the following ones.
+	 * 
+	 * @param cursor    cursor of the previous page, empty to start
+	 * @param size      page size
+	 * @param userAgent user agent
+	 * @return ResponseEntity with the page of policies, the next cursor, headers and
+	 *         status
+	 */
+	@GetMapping(path = "/policies", params = "cursor", produces = { MediaType.APPLICATION_JSON_VALUE,
+			BinaryFormat.CBOR_VALUE, BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
+	@ResponseBody
+	@ApiOperation(value = "Retrieve policies with keyset pagination.")
+	public ResponseEntity<?> getAllPoliciesByCursor(@RequestParam("cursor") String cursor,
+			@RequestParam(value = "size", defaultValue = "" + KeysetCursor.DEFAULT_SIZE) int size,
+			@RequestHeader("User-Agent") String userAgent) {
+
+		logger.info("Fetching policies after cursor {}", cursor);
+
+		Slice<PolicyResponseDTO> policy = null;
+
+		try {
+			// Find policies in DB after the last id of the previous page
+			policy = policyService.getAllPoliciesAfter(KeysetCursor.decode(cursor), size);
+
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
+		} catch (Exception e) {
+			logger.error("An error occurred! {}", e.getMessage());
+			return CustomErrorType.returnResponsEntityError(e.getMessage());
+		}
+
+		MultiValueMap<String, String> headers = new HttpHeaders();
+		headers.put(HttpHeaders.USER_AGENT, Arrays.asList(userAgent));
+
+		// Validator of the page in the negotiated format, If-None-Match gets 304 without the body
+		headers.add(HttpHeaders.ETAG, NegotiatedRepresentation
+				.entityTag(EntityTags.ofPage(policy, PolicyResponseDTO::getId, PolicyController::entityTag)));
+		headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+		headers.add(HttpHeaders.CACHE_CONTROL, cacheControl);
+
+		if (LeanRepresentation.isRequested()) {
+			return new ResponseEntity<>(LeanResources.ofKeyset(policy, PolicyResponseDTO::getId), headers,
+					HttpStatus.OK);
+		}
+
+		SliceResources<PolicyResponseDTO> sliceResources = SliceResources.ofKeyset(policy, PolicyResponseDTO::getId);
+
+		return new ResponseEntity<>(sliceResources, headers, HttpStatus.OK);
+	}
+
+	/**
+	 * Export every policy with its product, holder and vehicle. The policies are
+	 * streamed as NDJSON or CSV, following the Accept header.
+	 * 
+	 * @param accept accepted media types
+	 * @return ResponseEntity with the policies, headers and status
+	 */
+	@GetMapping(path = "/policies/export", produces = { BulkFormat.NDJSON_VALUE, BulkFormat.CSV_VALUE })
+	@ApiOperation(value = "Export every policy with its product, holder and vehicle.")
+	public ResponseEntity<StreamingResponseBody> exportPolicies(
+			@RequestHeader(value = HttpHeaders.ACCEPT, defaultValue = BulkFormat.NDJSON_VALUE) String accept) {
+
+		logger.info("Process export of policies");
+
+		BulkFormat format = BulkFormat.negotiate(accept);
+
+		// Streamed for as long as the export takes, not the default async timeout
+		LongRunningRequest.mark();
+		StreamingResponseBody policies = out -> policyExportService.exportPolicies(format, out);
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(format.mediaType());
+		headers.setContentDisposition(ContentDisposition.builder("attachment")
+				.filename("policies." + format.name().toLowerCase()).build());
+
+		return new ResponseEntity<>(policies, headers, HttpStatus.OK);
+	}
+
+	/**
+	 * Retrieve the policies of several policy codes with one query.
+	 * 
+	 * @param codes policy codes, comma separated or repeated
+	 * @return ResponseEntity with the policies found, the policy codes not found and
+	 *         status
+	 */
+	@GetMapping(path = "/policies", params = "codes", produces = { MediaType.APPLICATION_JSON_VALUE,
+			BinaryFormat.CBOR_VALUE, BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
+	@ResponseBody
+	@ApiOperation(value = "Retrieve the policies of several policy codes.")
+	public ResponseEntity<?> getPoliciesByCodes(@RequestParam("codes") List<String> codes) {
+
+		logger.info("Fetching policies with policy codes {}", codes);
+
+		Object policies = null;
+
+		try {
+			Set<String> keys = BatchKeys.of(codes, maxBatchSize);
+
+			// Search all the policies in BD at once
+			List<PolicyResponseDTO> found = policyService.getPolicies(keys);
+
+			if (LeanRepresentation.isRequested()) {
+				policies = LeanResources.ofBatch(keys, found, PolicyResponseDTO::getPolicyCode);
+			} else {
+				policies = BatchResources.of(keys, found, PolicyResponseDTO::getPolicyCode);
+			}
+
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
+		} catch (Exception e) {
+			logger.error("An error occurred! {}", e.getMessage());
+			return CustomErrorType.returnResponsEntityError(e.getMessage());
+		}
+
+		// JSON, CBOR, Smile or Protobuf after the Accept header
+		HttpHeaders headers = new HttpHeaders();
+		headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+
+		return new ResponseEntity<>(policies, headers, HttpStatus.OK);
+	}
+
 	/**
 	 * Retrieve policy by the policyCode.
 	 * 
 	 * @param policyCode policy code
 	 * @return ResponseEntity with status and policyResponseDTO
 	 */
-	@GetMapping(path = "/policies/{policyCode}", produces = MediaType.APPLICATION_JSON_VALUE)
+	@GetMapping(path = "/policies/{policyCode}", produces = { MediaType.APPLICATION_JSON_VALUE, BinaryFormat.CBOR_VALUE,
+			BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
 	@ResponseBody
 	@ApiOperation(value = "Retrieve policy by the policyCode.")
 	public ResponseEntity<?> getPolicies(@PathVariable("policyCode") String policyCode) {
@@ -100,10 +302,28 @@ public class PolicyController {
 		PolicyResponseDTO policyResponseDTO = null;
 
 		try {
-			// Search product in BD by policyCode
-			policyResponseDTO = policyService.getPolicies(policyCode);
+			// Search product in BD by policyCode, or its last known value if BD does not answer
+			ReadResult<PolicyResponseDTO> read = guardedReadService.read("policy", policyCode,
+					() -> policyService.getCachedPolicy(policyCode), () -> policyService.getPolicies(policyCode));
+			policyResponseDTO = read.getValue();
+
+			if (policyResponseDTO == null) {
+				return new ResponseEntity<>(new CustomErrorType("Policy code " + policyCode + " Not Found!"),
+						HttpStatus.NOT_FOUND);
+			}
+
+			HttpHeaders headers = read.headers();
+			headers.setETag(NegotiatedRepresentation.entityTag(entityTag(policyResponseDTO)));
+			headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+			headers.setCacheControl(cacheControl);
 
-			return new ResponseEntity<>(policyResponseDTO, HttpStatus.OK);
+			// Serialized once per version and media type
+			return new ResponseEntity<>(new CacheableBody("policy", policyCode, headers.getETag(), policyResponseDTO),
+					headers, HttpStatus.OK);
+
+		} catch (DatabaseUnavailableException e) {
+			logger.warn("An error occurred! {}", e.getMessage());
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.SERVICE_UNAVAILABLE);
 
 		} catch (Exception e) {
 			logger.error("An error occurred! {}", e.getMessage());
@@ -118,7 +338,8 @@ public class PolicyController {
 	 * @param policyRequestDTO object to save
 	 * @return ResponseEntity with status and policyResponseDTO
 	 */
-	@PostMapping(path = "/policies", produces = MediaType.APPLICATION_JSON_VALUE)
+	@PostMapping(path = "/policies", produces = { MediaType.APPLICATION_JSON_VALUE, BinaryFormat.CBOR_VALUE,
+			BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
 	@ResponseBody
 	@ApiOperation(value = "Add a policy.")
 	public ResponseEntity<?> addPolicies(@Valid @RequestBody PolicyRequestDTO policyRequestDTO) {
@@ -129,21 +350,78 @@ public class PolicyController {
 
 	}
 
+	/**
+	 * Add policies in bulk. The NDJSON or CSV body is read record by record and
+	 * the result of every record is streamed back as NDJSON.
+	 * 
+	 * @param contentType body format
+	 * @param body        policies to save
+	 * @return ResponseEntity with one result per record
+	 */
+	@PostMapping(path = "/policies/bulk", consumes = { BulkFormat.NDJSON_VALUE,
+			BulkFormat.CSV_VALUE }, produces = BulkFormat.NDJSON_VALUE)
+	@ApiOperation(value = "Add policies in bulk.")
+	public ResponseEntity<StreamingResponseBody> addPoliciesInBulk(
+			@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body) {
+
+		logger.info("Process bulk import of policies");
+
+		// Streamed for as long as the body takes, not the default async timeout
+		LongRunningRequest.mark();
+		StreamingResponseBody results = out -> bulkImportService.importPolicies(body, contentType, out);
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(BulkFormat.NDJSON.mediaType());
+
+		return new ResponseEntity<>(results, headers, HttpStatus.OK);
+
+	}
+
 	/**
 	 * Update a policy
 	 * 
-	 * @param policyCode       policy code
-	 * @param policyRequestDTO object to update
+	 * @param policyCode policy code
+	 * @param ifMatch    tags of the versions the policy may have, optional
+	 * @param document   fields to change, JSON Merge Patch
 	 * @return ResponseEntity with resource and status
 	 */
-	@PatchMapping(path = "/policies/{policyCode}", produces = MediaType.APPLICATION_JSON_VALUE)
+	@PatchMapping(path = "/policies/{policyCode}", consumes = { MediaType.APPLICATION_JSON_VALUE,
+			MergePatch.MEDIA_TYPE_VALUE, MediaType.APPLICATION_XML_VALUE, BinaryFormat.CBOR_VALUE,
+			BinaryFormat.SMILE_VALUE }, produces = { MediaType.APPLICATION_JSON_VALUE, BinaryFormat.CBOR_VALUE,
+			BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
 	@ResponseBody
 	@ApiOperation(value = "Update the policy.")
 	public ResponseEntity<?> updatePolicies(@PathVariable("policyCode") String policyCode,
-			@RequestBody PolicyRequestDTO policyRequestDTO) {
+			@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+			@RequestBody Map<String, Object> document) {
 
 		logger.info("Process patch policy");
 
-		return policyService.updatePolicy(policyCode, policyRequestDTO);
+		try {
+			// Only the fields present in the document are written
+			MergePatch<PolicyRequestDTO> policyPatch = MergePatch.of(document, PolicyRequestDTO.class, objectMapper);
+
+			// With If-Match a single conditional update, 412 if no tag has the version
+			return policyService.updatePolicy(policyCode, policyPatch, EntityTags.versionsOf(ifMatch));
+
+		} catch (IllegalArgumentException e) {
+			// A value does not fit its field
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
+
+		} catch (OptimisticLockingFailureException e) {
+			// Without If-Match, another update committed between the read and the write
+			logger.warn("An error occurred! {}", e.getMessage());
+			return new ResponseEntity<>(new CustomErrorType(
+					"Policy code " + policyCode + " was modified meanwhile, please try again"),
+					HttpStatus.CONFLICT);
+		}
+	}
+
+	// A policy embeds its product, holder and vehicle, their versions are part of its tag
+	private static String entityTag(PolicyResponseDTO policy) {
+		return EntityTags.of(policy.getVersion(),
+				policy.getProduct() == null ? EntityTags.NO_VERSION : policy.getProduct().getVersion(),
+				policy.getHolder() == null ? EntityTags.NO_VERSION : policy.getHolder().getVersion(),
+				policy.getVehicle() == null ? EntityTags.NO_VERSION : policy.getVehicle().getVersion());
 	}
 }
@@ -1,14 +1,19 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.controller;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.validation.Valid;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.web.PagedResourcesAssembler;
 import org.springframework.hateoas.PagedResources;
 import org.springframework.http.HttpHeaders;
@@ -23,13 +28,31 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.BinaryFormat;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CacheableBody;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountStrategy;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountedPage;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.MergePatch;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.ReadResult;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.ProductRequestDTO;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.ProductResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.BatchResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.LeanResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.SliceResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.GuardedReadService;
 import com.idosinchuk.architecturechallenge.insurancecompany.service.ProductService;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.BatchKeys;
 import com.idosinchuk.architecturechallenge.insurancecompany.util.CustomErrorType;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.DatabaseUnavailableException;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.EntityTags;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.KeysetCursor;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.LeanRepresentation;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.NegotiatedRepresentation;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -50,27 +73,45 @@ public class ProductController {
 	@Autowired
 	ProductService productService;
 
+	@Autowired
+	GuardedReadService guardedReadService;
+
+	@Autowired
+	ObjectMapper objectMapper;
+
+	@Value("${insurancecompany.batch.max-size:100}")
+	private int maxBatchSize;
+
+	@Value("${insurancecompany.cache-control.products:public, max-age=300}")
+	private String cacheControl;
+
 	/**
 	 * Retrieve list of all products according to the search criteria.
 	 * 
-	 * @param pageable paging fields
+	 * @param pageable  paging fields
+	 * @param count     count strategy: exact, cached, estimated or none
+	 * @param userAgent user agent
 	 * @return ResponseEntity with paged list of all products, headers and status
 	 */
-	@GetMapping(path = "/products", produces = MediaType.APPLICATION_JSON_VALUE)
+	@GetMapping(path = "/products", produces = { MediaType.APPLICATION_JSON_VALUE, BinaryFormat.CBOR_VALUE,
+			BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@ResponseBody
 	@ApiOperation(value = "Retrieve list of all products according to the search criteria.")
-	public ResponseEntity<PagedResources<ProductResponseDTO>> getAllProducts(Pageable pageable,
-			PagedResourcesAssembler pagedResourcesAssembler, @RequestHeader("User-Agent") String userAgent) {
+	public ResponseEntity<?> getAllProducts(Pageable pageable, PagedResourcesAssembler pagedResourcesAssembler,
+			@RequestParam(value = "count", defaultValue = "exact") String count,
+			@RequestHeader("User-Agent") String userAgent) {
 
 		logger.info("Fetching all products");
 
-		Page<ProductResponseDTO> product = null;
+		Slice<ProductResponseDTO> product = null;
 
 		try {
 			// Find products in DB with paging filters
-			product = productService.getAllProducts(pageable);
+			product = productService.getAllProducts(pageable, CountStrategy.fromValue(count));
 
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
 		} catch (Exception e) {
 			logger.error("An error occurred! {}", e.getMessage());
 			return CustomErrorType.returnResponsEntityError(e.getMessage());
@@ -79,18 +120,138 @@ public class ProductController {
 		MultiValueMap<String, String> headers = new HttpHeaders();
 		headers.put(HttpHeaders.USER_AGENT, Arrays.asList(userAgent));
 
-		PagedResources<ProductResponseDTO> pagedResources = pagedResourcesAssembler.toResource(product);
+		// Validator of the page in the negotiated format, If-None-Match gets 304 without the body
+		headers.add(HttpHeaders.ETAG, NegotiatedRepresentation
+				.entityTag(EntityTags.ofPage(product, ProductResponseDTO::getId, ProductController::entityTag)));
+		headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+		headers.add(HttpHeaders.CACHE_CONTROL, cacheControl);
+
+		// Without total only the next page is known
+		if (!(product instanceof CountedPage)) {
+			headers.add(CountedPage.STRATEGY_HEADER, CountStrategy.NONE.value());
+
+			if (LeanRepresentation.isRequested()) {
+				return new ResponseEntity<>(LeanResources.ofPage(product), headers, HttpStatus.OK);
+			}
+
+			return new ResponseEntity<>(SliceResources.ofPage(product), headers, HttpStatus.OK);
+		}
+
+		headers.add(CountedPage.STRATEGY_HEADER, ((CountedPage) product).getCountStrategy().value());
+
+		// The same page and totals, without the links of the assembler
+		if (LeanRepresentation.isRequested()) {
+			return new ResponseEntity<>(LeanResources.ofPage(product), headers, HttpStatus.OK);
+		}
+
+		PagedResources<ProductResponseDTO> pagedResources = pagedResourcesAssembler.toResource((CountedPage) product);
 
 		return new ResponseEntity<>(pagedResources, headers, HttpStatus.OK);
 	}
 
+	/**
+	 * Retrieve products with keyset pagination. Pass an empty cursor for the first
+	 * page and the returned nextCursor for the following ones.
+	 * 
+	 * @param cursor    cursor of the previous page, empty to start
+	 * @param size      page size
+	 * @param userAgent user agent
+	 * @return ResponseEntity with the page of products, the next cursor, headers and
+	 *         status
+	 */
+	@GetMapping(path = "/products", params = "cursor", produces = { MediaType.APPLICATION_JSON_VALUE,
+			BinaryFormat.CBOR_VALUE, BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
+	@ResponseBody
+	@ApiOperation(value = "Retrieve products with keyset pagination.")
+	public ResponseEntity<?> getAllProductsByCursor(@RequestParam("cursor") String cursor,
+			@RequestParam(value = "size", defaultValue = "" + KeysetCursor.DEFAULT_SIZE) int size,
+			@RequestHeader("User-Agent") String userAgent) {
+
+		logger.info("Fetching products after cursor {}", cursor);
+
+		Slice<ProductResponseDTO> product = null;
+
+		try {
+			// Find products in DB after the last id of the previous page
+			product = productService.getAllProductsAfter(KeysetCursor.decode(cursor), size);
+
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
+		} catch (Exception e) {
+			logger.error("An error occurred! {}", e.getMessage());
+			return CustomErrorType.returnResponsEntityError(e.getMessage());
+		}
+
+		MultiValueMap<String, String> headers = new HttpHeaders();
+		headers.put(HttpHeaders.USER_AGENT, Arrays.asList(userAgent));
+
+		// Validator of the page in the negotiated format, If-None-Match gets 304 without the body
+		headers.add(HttpHeaders.ETAG, NegotiatedRepresentation
+				.entityTag(EntityTags.ofPage(product, ProductResponseDTO::getId, ProductController::entityTag)));
+		headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+		headers.add(HttpHeaders.CACHE_CONTROL, cacheControl);
+
+		if (LeanRepresentation.isRequested()) {
+			return new ResponseEntity<>(LeanResources.ofKeyset(product, ProductResponseDTO::getId), headers,
+					HttpStatus.OK);
+		}
+
+		SliceResources<ProductResponseDTO> sliceResources = SliceResources.ofKeyset(product, ProductResponseDTO::getId);
+
+		return new ResponseEntity<>(sliceResources, headers, HttpStatus.OK);
+	}
+
+	/**
+	 * Retrieve the products of several product codes with one query.
+	 * 
+	 * @param codes product codes, comma separated or repeated
+	 * @return ResponseEntity with the products found, the product codes not found and
+	 *         status
+	 */
+	@GetMapping(path = "/products", params = "codes", produces = { MediaType.APPLICATION_JSON_VALUE,
+			BinaryFormat.CBOR_VALUE, BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
+	@ResponseBody
+	@ApiOperation(value = "Retrieve the products of several product codes.")
+	public ResponseEntity<?> getProductsByCodes(@RequestParam("codes") List<String> codes) {
+
+		logger.info("Fetching products with product codes {}", codes);
+
+		Object products = null;
+
+		try {
+			Set<String> keys = BatchKeys.of(codes, maxBatchSize);
+
+			// Search all the products in BD at once
+			List<ProductResponseDTO> found = productService.getProducts(keys);
+
+			if (LeanRepresentation.isRequested()) {
+				products = LeanResources.ofBatch(keys, found, ProductResponseDTO::getProductCode);
+			} else {
+				products = BatchResources.of(keys, found, ProductResponseDTO::getProductCode);
+			}
+
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
+		} catch (Exception e) {
+			logger.error("An error occurred! {}", e.getMessage());
+			return CustomErrorType.returnResponsEntityError(e.getMessage());
+		}
+
+		// JSON, CBOR, Smile or Protobuf after the Accept header
+		HttpHeaders headers = new HttpHeaders();
+		headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+
+		return new ResponseEntity<>(products, headers, HttpStatus.OK);
+	}
+
 	/**
 	 * Retrieve product by the productCode.
 	 * 
 	 * @param productCode product code
 	 * @return ResponseEntity with status and productResponseDTO
 	 */
-	@GetMapping(path = "/products/{productCode}", produces = MediaType.APPLICATION_JSON_VALUE)
+	@GetMapping(path = "/products/{productCode}", produces = { MediaType.APPLICATION_JSON_VALUE,
+			BinaryFormat.CBOR_VALUE, BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
 	@ResponseBody
 	@ApiOperation(value = "Retrieve product by the productCode.")
 	public ResponseEntity<?> getProducts(@PathVariable("productCode") String productCode) {
@@ -100,10 +261,28 @@ public class ProductController {
 		ProductResponseDTO product = null;
 
 		try {
-			// Search product in BD by productCode
-			product = productService.getProduct(productCode);
+			// Search product in BD by productCode, or its last known value if BD does not answer
+			ReadResult<ProductResponseDTO> read = guardedReadService.read("product", productCode,
+					() -> productService.getCachedProduct(productCode), () -> productService.getProduct(productCode));
+			product = read.getValue();
+
+			if (product == null) {
+				return new ResponseEntity<>(new CustomErrorType("Product code " + productCode + " Not Found!"),
+						HttpStatus.NOT_FOUND);
+			}
+
+			HttpHeaders headers = read.headers();
+			headers.setETag(NegotiatedRepresentation.entityTag(entityTag(product)));
+			headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+			headers.setCacheControl(cacheControl);
+
+			// Serialized once per version and media type
+			return new ResponseEntity<>(new CacheableBody("product", productCode, headers.getETag(), product), headers,
+					HttpStatus.OK);
 
-			return new ResponseEntity<>(product, HttpStatus.OK);
+		} catch (DatabaseUnavailableException e) {
+			logger.warn("An error occurred! {}", e.getMessage());
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.SERVICE_UNAVAILABLE);
 
 		} catch (Exception e) {
 			logger.error("An error occurred! {}", e.getMessage());
@@ -119,7 +298,8 @@ public class ProductController {
 	 * @param productRequestDTO object to save
 	 * @return ResponseEntity with status and productResponseDTO
 	 */
-	@PostMapping(path = "/products", consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+	@PostMapping(path = "/products", consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+			BinaryFormat.CBOR_VALUE, BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
 	@ResponseBody
 	@ApiOperation(value = "Add a product.")
 	public ResponseEntity<?> addProducts(@Valid @RequestBody ProductRequestDTO productRequestDTO) {
@@ -134,19 +314,43 @@ public class ProductController {
 	 * El método PATCH solicita que se aplique un conjunto de cambios descritos en
 	 * la entidad de solicitud al recurso identificado por el URI de Solicitud.
 	 * 
-	 * @param productCode       product code
-	 * @param productRequestDTO object to update
+	 * @param productCode product code
+	 * @param ifMatch     tags of the versions the product may have, optional
+	 * @param document    fields to change, JSON Merge Patch
 	 * @return ResponseEntity with resource and status
 	 */
 	@PatchMapping(path = "/products/{productCode}", consumes = { MediaType.APPLICATION_JSON_VALUE,
-			MediaType.APPLICATION_XML_VALUE })
+			MergePatch.MEDIA_TYPE_VALUE, MediaType.APPLICATION_XML_VALUE, BinaryFormat.CBOR_VALUE,
+			BinaryFormat.SMILE_VALUE })
 	@ResponseBody
 	@ApiOperation(value = "Update the product.")
 	public ResponseEntity<?> updateProducts(@PathVariable("productCode") String productCode,
-			@RequestBody ProductRequestDTO productRequestDTO) {
+			@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+			@RequestBody Map<String, Object> document) {
 
 		logger.info("Process patch product");
 
-		return productService.updateProduct(productCode, productRequestDTO);
+		try {
+			// Only the fields present in the document are written
+			MergePatch<ProductRequestDTO> productPatch = MergePatch.of(document, ProductRequestDTO.class, objectMapper);
+
+			// With If-Match a single conditional update, 412 if no tag has the version
+			return productService.updateProduct(productCode, productPatch, EntityTags.versionsOf(ifMatch));
+
+		} catch (IllegalArgumentException e) {
+			// A value does not fit its field
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
+
+		} catch (OptimisticLockingFailureException e) {
+			// Without If-Match, another update committed between the read and the write
+			logger.warn("An error occurred! {}", e.getMessage());
+			return new ResponseEntity<>(new CustomErrorType(
+					"Product code " + productCode + " was modified meanwhile, please try again"),
+					HttpStatus.CONFLICT);
+		}
+	}
+
+	private static String entityTag(ProductResponseDTO product) {
+		return EntityTags.of(product.getVersion());
 	}
 }
@@ -1,14 +1,20 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.controller;
 
+import java.io.InputStream;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.validation.Valid;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.web.PagedResourcesAssembler;
 import org.springframework.hateoas.PagedResources;
 import org.springframework.http.HttpHeaders;
@@ -23,13 +29,35 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.BinaryFormat;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.BulkFormat;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CacheableBody;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountStrategy;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountedPage;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.MergePatch;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.ReadResult;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.VehicleRequestDTO;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.VehicleResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.BatchResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.LeanResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.SliceResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.BulkImportService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.GuardedReadService;
 import com.idosinchuk.architecturechallenge.insurancecompany.service.VehicleService;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.BatchKeys;
 import com.idosinchuk.architecturechallenge.insurancecompany.util.CustomErrorType;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.DatabaseUnavailableException;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.EntityTags;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.KeysetCursor;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.LeanRepresentation;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.LongRunningRequest;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.NegotiatedRepresentation;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -50,27 +78,48 @@ public class VehicleController {
 	@Autowired
 	VehicleService vehicleService;
 
+	@Autowired
+	GuardedReadService guardedReadService;
+
+	@Autowired
+	ObjectMapper objectMapper;
+
+	@Value("${insurancecompany.batch.max-size:100}")
+	private int maxBatchSize;
+
+	@Value("${insurancecompany.cache-control.vehicles:private, no-cache}")
+	private String cacheControl;
+
+	@Autowired
+	BulkImportService bulkImportService;
+
 	/**
 	 * Retrieve list of all vehicles according to the search criteria.
 	 * 
-	 * @param pageable paging fields
+	 * @param pageable  paging fields
+	 * @param count     count strategy: exact, cached, estimated or none
+	 * @param userAgent user agent
 	 * @return ResponseEntity with paged list of all vehicles, headers and status
 	 */
-	@GetMapping(path = "/vehicles", produces = MediaType.APPLICATION_JSON_VALUE)
+	@GetMapping(path = "/vehicles", produces = { MediaType.APPLICATION_JSON_VALUE, BinaryFormat.CBOR_VALUE,
+			BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@ResponseBody
 	@ApiOperation(value = "Retrieve list of all vehicles according to the search criteria.")
-	public ResponseEntity<PagedResources<VehicleResponseDTO>> getAllVehicles(Pageable pageable,
-			PagedResourcesAssembler pagedResourcesAssembler, @RequestHeader("User-Agent") String userAgent) {
+	public ResponseEntity<?> getAllVehicles(Pageable pageable, PagedResourcesAssembler pagedResourcesAssembler,
+			@RequestParam(value = "count", defaultValue = "exact") String count,
+			@RequestHeader("User-Agent") String userAgent) {
 
 		logger.info("Fetching all vehicles");
 
-		Page<VehicleResponseDTO> vehicle = null;
+		Slice<VehicleResponseDTO> vehicle = null;
 
 		try {
 			// Find vehicles in DB with paging filters
-			vehicle = vehicleService.getAllVehicles(pageable);
+			vehicle = vehicleService.getAllVehicles(pageable, CountStrategy.fromValue(count));
 
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
 		} catch (Exception e) {
 			logger.error("An error occurred! {}", e.getMessage());
 			return CustomErrorType.returnResponsEntityError(e.getMessage());
@@ -79,18 +128,138 @@ public class VehicleController {
 		MultiValueMap<String, String> headers = new HttpHeaders();
 		headers.put(HttpHeaders.USER_AGENT, Arrays.asList(userAgent));
 
-		PagedResources<VehicleResponseDTO> pagedResources = pagedResourcesAssembler.toResource(vehicle);
+		// Validator of the page in the negotiated format, If-None-Match gets 304 without the body
+		headers.add(HttpHeaders.ETAG, NegotiatedRepresentation
+				.entityTag(EntityTags.ofPage(vehicle, VehicleResponseDTO::getId, VehicleController::entityTag)));
+		headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+		headers.add(HttpHeaders.CACHE_CONTROL, cacheControl);
+
+		// Without total only the next page is known
+		if (!(vehicle instanceof CountedPage)) {
+			headers.add(CountedPage.STRATEGY_HEADER, CountStrategy.NONE.value());
+
+			if (LeanRepresentation.isRequested()) {
+				return new ResponseEntity<>(LeanResources.ofPage(vehicle), headers, HttpStatus.OK);
+			}
+
+			return new ResponseEntity<>(SliceResources.ofPage(vehicle), headers, HttpStatus.OK);
+		}
+
+		headers.add(CountedPage.STRATEGY_HEADER, ((CountedPage) vehicle).getCountStrategy().value());
+
+		// The same page and totals, without the links of the assembler
+		if (LeanRepresentation.isRequested()) {
+			return new ResponseEntity<>(LeanResources.ofPage(vehicle), headers, HttpStatus.OK);
+		}
+
+		PagedResources<VehicleResponseDTO> pagedResources = pagedResourcesAssembler.toResource((CountedPage) vehicle);
 
 		return new ResponseEntity<>(pagedResources, headers, HttpStatus.OK);
 	}
 
+	/**
+	 * Retrieve vehicles with keyset pagination. Pass an empty cursor for the first
+	 * page and the returned nextCursor for the following ones.
+	 * 
+	 * @param cursor    cursor of the previous page, empty to start
+	 * @param size      page size
+	 * @param userAgent user agent
+	 * @return ResponseEntity with the page of vehicles, the next cursor, headers and
+	 *         status
+	 */
+	@GetMapping(path = "/vehicles", params = "cursor", produces = { MediaType.APPLICATION_JSON_VALUE,
+			BinaryFormat.CBOR_VALUE, BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
+	@ResponseBody
+	@ApiOperation(value = "Retrieve vehicles with keyset pagination.")
+	public ResponseEntity<?> getAllVehiclesByCursor(@RequestParam("cursor") String cursor,
+			@RequestParam(value = "size", defaultValue = "" + KeysetCursor.DEFAULT_SIZE) int size,
+			@RequestHeader("User-Agent") String userAgent) {
+
+		logger.info("Fetching vehicles after cursor {}", cursor);
+
+		Slice<VehicleResponseDTO> vehicle = null;
+
+		try {
+			// Find vehicles in DB after the last id of the previous page
+			vehicle = vehicleService.getAllVehiclesAfter(KeysetCursor.decode(cursor), size);
+
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
+		} catch (Exception e) {
+			logger.error("An error occurred! {}", e.getMessage());
+			return CustomErrorType.returnResponsEntityError(e.getMessage());
+		}
+
+		MultiValueMap<String, String> headers = new HttpHeaders();
+		headers.put(HttpHeaders.USER_AGENT, Arrays.asList(userAgent));
+
+		// Validator of the page in the negotiated format, If-None-Match gets 304 without the body
+		headers.add(HttpHeaders.ETAG, NegotiatedRepresentation
+				.entityTag(EntityTags.ofPage(vehicle, VehicleResponseDTO::getId, VehicleController::entityTag)));
+		headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+		headers.add(HttpHeaders.CACHE_CONTROL, cacheControl);
+
+		if (LeanRepresentation.isRequested()) {
+			return new ResponseEntity<>(LeanResources.ofKeyset(vehicle, VehicleResponseDTO::getId), headers,
+					HttpStatus.OK);
+		}
+
+		SliceResources<VehicleResponseDTO> sliceResources = SliceResources.ofKeyset(vehicle, VehicleResponseDTO::getId);
+
+		return new ResponseEntity<>(sliceResources, headers, HttpStatus.OK);
+	}
+
+	/**
+	 * Retrieve the vehicles of several license plates with one query.
+	 * 
+	 * @param licensePlates license plates, comma separated or repeated
+	 * @return ResponseEntity with the vehicles found, the license plates not found and
+	 *         status
+	 */
+	@GetMapping(path = "/vehicles", params = "licensePlates", produces = { MediaType.APPLICATION_JSON_VALUE,
+			BinaryFormat.CBOR_VALUE, BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
+	@ResponseBody
+	@ApiOperation(value = "Retrieve the vehicles of several license plates.")
+	public ResponseEntity<?> getVehiclesByLicensePlates(@RequestParam("licensePlates") List<String> licensePlates) {
+
+		logger.info("Fetching vehicles with license plates {}", licensePlates);
+
+		Object vehicles = null;
+
+		try {
+			Set<String> keys = BatchKeys.of(licensePlates, maxBatchSize);
+
+			// Search all the vehicles in BD at once
+			List<VehicleResponseDTO> found = vehicleService.getVehicles(keys);
+
+			if (LeanRepresentation.isRequested()) {
+				vehicles = LeanResources.ofBatch(keys, found, VehicleResponseDTO::getLicensePlate);
+			} else {
+				vehicles = BatchResources.of(keys, found, VehicleResponseDTO::getLicensePlate);
+			}
+
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
+		} catch (Exception e) {
+			logger.error("An error occurred! {}", e.getMessage());
+			return CustomErrorType.returnResponsEntityError(e.getMessage());
+		}
+
+		// JSON, CBOR, Smile or Protobuf after the Accept header
+		HttpHeaders headers = new HttpHeaders();
+		headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+
+		return new ResponseEntity<>(vehicles, headers, HttpStatus.OK);
+	}
+
 	/**
 	 * Retrieve vehicle by the id.
 	 * 
 	 * @param licensePlate vehicle license plate
 	 * @return ResponseEntity with status and vehicleResponseDTO
 	 */
-	@GetMapping(path = "/vehicles/{licensePlate}", produces = MediaType.APPLICATION_JSON_VALUE)
+	@GetMapping(path = "/vehicles/{licensePlate}", produces = { MediaType.APPLICATION_JSON_VALUE,
+			BinaryFormat.CBOR_VALUE, BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
 	@ResponseBody
 	@ApiOperation(value = "Retrieve vehicle by the licensePlate.")
 	public ResponseEntity<?> getVehicles(@PathVariable("licensePlate") String licensePlate) {
@@ -100,10 +269,28 @@ public class VehicleController {
 		VehicleResponseDTO vehicle = null;
 
 		try {
-			// Search vehicle in BD by licensePlate
-			vehicle = vehicleService.getVehicle(licensePlate);
+			// Search vehicle in BD by licensePlate, or its last known value if BD does not answer
+			ReadResult<VehicleResponseDTO> read = guardedReadService.read("vehicle", licensePlate,
+					() -> vehicleService.getCachedVehicle(licensePlate), () -> vehicleService.getVehicle(licensePlate));
+			vehicle = read.getValue();
+
+			if (vehicle == null) {
+				return new ResponseEntity<>(new CustomErrorType("License plate " + licensePlate + " Not Found!"),
+						HttpStatus.NOT_FOUND);
+			}
+
+			HttpHeaders headers = read.headers();
+			headers.setETag(NegotiatedRepresentation.entityTag(entityTag(vehicle)));
+			headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+			headers.setCacheControl(cacheControl);
 
-			return new ResponseEntity<>(vehicle, HttpStatus.OK);
+			// Serialized once per version and media type
+			return new ResponseEntity<>(new CacheableBody("vehicle", licensePlate, headers.getETag(), vehicle), headers,
+					HttpStatus.OK);
+
+		} catch (DatabaseUnavailableException e) {
+			logger.warn("An error occurred! {}", e.getMessage());
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.SERVICE_UNAVAILABLE);
 
 		} catch (Exception e) {
 			logger.error("An error occurred! {}", e.getMessage());
@@ -119,7 +306,8 @@ public class VehicleController {
 	 * @param vehicleRequestDTO object to save
 	 * @return ResponseEntity with status and vehicleResponseDTO
 	 */
-	@PostMapping(path = "/vehicles", consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE })
+	@PostMapping(path = "/vehicles", consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+			BinaryFormat.CBOR_VALUE, BinaryFormat.SMILE_VALUE, BinaryFormat.PROTOBUF_VALUE })
 	@ResponseBody
 	@ApiOperation(value = "Add a vehicle.")
 	public ResponseEntity<?> addVehicles(@Valid @RequestBody VehicleRequestDTO vehicleRequestDTO) {
@@ -130,23 +318,74 @@ public class VehicleController {
 
 	}
 
+	/**
+	 * Add vehicles in bulk. The NDJSON or CSV body is read record by record and
+	 * the result of every record is streamed back as NDJSON.
+	 * 
+	 * @param contentType body format
+	 * @param body        vehicles to save
+	 * @return ResponseEntity with one result per record
+	 */
+	@PostMapping(path = "/vehicles/bulk", consumes = { BulkFormat.NDJSON_VALUE,
+			BulkFormat.CSV_VALUE }, produces = BulkFormat.NDJSON_VALUE)
+	@ApiOperation(value = "Add vehicles in bulk.")
+	public ResponseEntity<StreamingResponseBody> addVehiclesInBulk(
+			@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body) {
+
+		logger.info("Process bulk import of vehicles");
+
+		// Streamed for as long as the body takes, not the default async timeout
+		LongRunningRequest.mark();
+		StreamingResponseBody results = out -> bulkImportService.importVehicles(body, contentType, out);
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(BulkFormat.NDJSON.mediaType());
+
+		return new ResponseEntity<>(results, headers, HttpStatus.OK);
+
+	}
+
 	/**
 	 * El método PATCH solicita que se aplique un conjunto de cambios descritos en
 	 * la entidad de solicitud al recurso identificado por el URI de Solicitud.
 	 * 
-	 * @param licensePlate      vehicle license plate
-	 * @param vehicleRequestDTO object to update
+	 * @param licensePlate vehicle license plate
+	 * @param ifMatch      tags of the versions the vehicle may have, optional
+	 * @param document     fields to change, JSON Merge Patch
 	 * @return ResponseEntity with resource and status
 	 */
 	@PatchMapping(path = "/vehicles/{licensePlate}", consumes = { MediaType.APPLICATION_JSON_VALUE,
-			MediaType.APPLICATION_XML_VALUE })
+			MergePatch.MEDIA_TYPE_VALUE, MediaType.APPLICATION_XML_VALUE, BinaryFormat.CBOR_VALUE,
+			BinaryFormat.SMILE_VALUE })
 	@ResponseBody
 	@ApiOperation(value = "Update the vehicle.")
 	public ResponseEntity<?> updateVehicles(@PathVariable("licensePlate") String licensePlate,
-			@RequestBody VehicleRequestDTO vehicleRequestDTO) {
+			@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+			@RequestBody Map<String, Object> document) {
 
 		logger.info("Process patch vehicle");
 
-		return vehicleService.updateVehicle(licensePlate, vehicleRequestDTO);
+		try {
+			// Only the fields present in the document are written
+			MergePatch<VehicleRequestDTO> vehiclePatch = MergePatch.of(document, VehicleRequestDTO.class, objectMapper);
+
+			// With If-Match a single conditional update, 412 if no tag has the version
+			return vehicleService.updateVehicle(licensePlate, vehiclePatch, EntityTags.versionsOf(ifMatch));
+
+		} catch (IllegalArgumentException e) {
+			// A value does not fit its field
+			return new ResponseEntity<>(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
+
+		} catch (OptimisticLockingFailureException e) {
+			// Without If-Match, another update committed between the read and the write
+			logger.warn("An error occurred! {}", e.getMessage());
+			return new ResponseEntity<>(new CustomErrorType(
+					"License plate " + licensePlate + " was modified meanwhile, please try again"),
+					HttpStatus.CONFLICT);
+		}
+	}
+
+	private static String entityTag(VehicleResponseDTO vehicle) {
+		return EntityTags.of(vehicle.getVersion());
 	}
 }
@@ -0,0 +1,31 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+/**
+ * Response DTO for one record of a bulk import
+ * 
+ * @author Igor Dosinchuk
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Data
+@ApiModel(reference = "BulkRowResult", description = "Model response for one record of a bulk import.")
+public class BulkRowResultDTO {
+
+	@ApiModelProperty(value = "Number of the record in the body, starting at 1", example = "1")
+	private int record;
+
+	@ApiModelProperty(value = "Business key of the record", example = "PS9393474S")
+	private String key;
+
+	@ApiModelProperty(value = "Status", example = "201")
+	private int status;
+
+	@ApiModelProperty(value = "Message", example = "Created new holder")
+	private String message;
+
+}
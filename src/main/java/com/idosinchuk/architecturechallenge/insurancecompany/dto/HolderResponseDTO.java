@@ -2,6 +2,7 @@ package com.idosinchuk.architecturechallenge.insurancecompany.dto;
 
 import org.springframework.data.annotation.Id;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
 import io.swagger.annotations.ApiModel;
@@ -36,4 +37,8 @@ public class HolderResponseDTO {
 
 	@ApiModelProperty(value = "Passport number", example = "PS9393474S")
 	private String passportNumber;
+
+	// Sent in the ETag header, not in the body
+	@JsonIgnore
+	private int version;
 }
@@ -4,6 +4,7 @@ import java.math.BigDecimal;
 
 import javax.persistence.Id;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
 import io.swagger.annotations.ApiModel;
@@ -39,4 +40,7 @@ public class PolicyResponseDTO {
 	@ApiModelProperty(value = "License Plate", example = "6846JNR")
 	private VehicleResponseDTO vehicle;
 
+	// Sent in the ETag header, not in the body
+	@JsonIgnore
+	private int version;
 }
@@ -2,6 +2,7 @@ package com.idosinchuk.architecturechallenge.insurancecompany.dto;
 
 import org.springframework.data.annotation.Id;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
 import io.swagger.annotations.ApiModel;
@@ -28,4 +29,7 @@ public class ProductResponseDTO {
 	@ApiModelProperty(value = "Code of the product", example = "S6DHD78S")
 	private String productCode;
 
+	// Sent in the ETag header, not in the body
+	@JsonIgnore
+	private int version;
 }
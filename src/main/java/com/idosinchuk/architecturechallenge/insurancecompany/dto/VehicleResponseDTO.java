@@ -4,6 +4,7 @@ import javax.validation.constraints.NotNull;
 
 import org.springframework.data.annotation.Id;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
 import io.swagger.annotations.ApiModel;
@@ -32,4 +33,7 @@ public class VehicleResponseDTO {
 	@ApiModelProperty(value = "License plate", example = "6846JNR")
 	private String licensePlate;
 
+	// Sent in the ETag header, not in the body
+	@JsonIgnore
+	private int version;
 }
@@ -1,11 +1,19 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.entity;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 
@@ -22,11 +30,22 @@ import lombok.NoArgsConstructor;
 @Entity
 @NoArgsConstructor
 @Data
-@Table(name = "holder")
+@Cacheable
+@DynamicUpdate
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = HolderEntity.CACHE_REGION)
+@Table(name = "holder", uniqueConstraints = @UniqueConstraint(name = HolderEntity.UK_PASSPORT_NUMBER,
+		columnNames = "passport_number"))
 public class HolderEntity {
 
+	public static final String CACHE_REGION = "holder";
+
+	public static final String UK_PASSPORT_NUMBER = "uk_holder_passport_number";
+
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.TABLE, generator = "holder_id")
+	@TableGenerator(name = "holder_id", table = IdGenerator.TABLE, pkColumnName = IdGenerator.NAME_COLUMN,
+			valueColumnName = IdGenerator.VALUE_COLUMN, pkColumnValue = "holder",
+			allocationSize = IdGenerator.ALLOCATION_SIZE)
 	@Column(name = "id")
 	private int id;
 
@@ -45,4 +64,9 @@ public class HolderEntity {
 	@Column(name = "passport_number", nullable = false)
 	private String passportNumber;
 
+	// Incremented by every update, sent as the ETag of the holder
+	@Version
+	@Column(name = "version", nullable = false)
+	private int version;
+
 }
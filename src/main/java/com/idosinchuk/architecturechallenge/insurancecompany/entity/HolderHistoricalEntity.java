@@ -5,7 +5,9 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 
@@ -22,11 +24,15 @@ import lombok.NoArgsConstructor;
 @Entity
 @NoArgsConstructor
 @Data
-@Table(name = "holder_historical")
+@Table(name = "holder_historical",
+		indexes = @Index(name = "idx_holder_historical_passport_number", columnList = "passport_number"))
 public class HolderHistoricalEntity {
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.TABLE, generator = "holder_historical_id")
+	@TableGenerator(name = "holder_historical_id", table = IdGenerator.TABLE, pkColumnName = IdGenerator.NAME_COLUMN,
+			valueColumnName = IdGenerator.VALUE_COLUMN, pkColumnValue = "holder_historical",
+			allocationSize = IdGenerator.ALLOCATION_SIZE)
 	@Column(name = "id")
 	private int id;
 
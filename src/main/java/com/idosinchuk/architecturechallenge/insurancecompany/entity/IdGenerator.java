@@ -0,0 +1,24 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.entity;
+
+/**
+ * Settings of the table-based id allocator. Ids are handed out in blocks of
+ * {@link #ALLOCATION_SIZE} (pooled-lo optimizer), so inserts do not need the
+ * database to generate the key and can be sent in JDBC batches. Keep the
+ * allocation size aligned with hibernate.jdbc.batch_size.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public final class IdGenerator {
+
+	public static final String TABLE = "id_generator";
+
+	public static final String NAME_COLUMN = "sequence_name";
+
+	public static final String VALUE_COLUMN = "next_val";
+
+	public static final int ALLOCATION_SIZE = 50;
+
+	private IdGenerator() {
+	}
+}
@@ -2,15 +2,21 @@ package com.idosinchuk.architecturechallenge.insurancecompany.entity;
 
 import java.math.BigDecimal;
 
-import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.DynamicUpdate;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 
@@ -27,11 +33,23 @@ import lombok.NoArgsConstructor;
 @Entity
 @NoArgsConstructor
 @Data
-@Table(name = "policy")
+@DynamicUpdate
+@Table(name = "policy", uniqueConstraints = @UniqueConstraint(name = PolicyEntity.UK_POLICY_CODE,
+		columnNames = "policy_code"))
+@NamedEntityGraph(name = PolicyEntity.WITH_REFERENCES, attributeNodes = { @NamedAttributeNode("product"),
+		@NamedAttributeNode("holder"), @NamedAttributeNode("vehicle") })
 public class PolicyEntity {
 
+	public static final String UK_POLICY_CODE = "uk_policy_policy_code";
+
+	// Fetches product, holder and vehicle in the same select as the policy
+	public static final String WITH_REFERENCES = "PolicyEntity.withReferences";
+
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.TABLE, generator = "policy_id")
+	@TableGenerator(name = "policy_id", table = IdGenerator.TABLE, pkColumnName = IdGenerator.NAME_COLUMN,
+			valueColumnName = IdGenerator.VALUE_COLUMN, pkColumnValue = "policy",
+			allocationSize = IdGenerator.ALLOCATION_SIZE)
 	@Column(name = "id")
 	private int id;
 
@@ -41,16 +59,22 @@ public class PolicyEntity {
 	@Column(name = "cost", nullable = false)
 	private BigDecimal cost;
 
-	@OneToOne(cascade = CascadeType.ALL)
+	// No cascade: a policy only points to existing product, holder and vehicle
+	@OneToOne
 	@JoinColumn(name = "product_id", referencedColumnName = "id")
 	private ProductEntity product;
 
-	@OneToOne(cascade = CascadeType.ALL)
+	@OneToOne
 	@JoinColumn(name = "holder_id", referencedColumnName = "id")
 	private HolderEntity holder;
 
-	@OneToOne(cascade = CascadeType.ALL)
+	@OneToOne
 	@JoinColumn(name = "vehicle_id", referencedColumnName = "id")
 	private VehicleEntity vehicle;
 
+	// Incremented by every update, sent as the ETag of the policy
+	@Version
+	@Column(name = "version", nullable = false)
+	private int version;
+
 }
@@ -1,11 +1,18 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.entity;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 
@@ -22,9 +29,18 @@ import lombok.NoArgsConstructor;
 @Entity
 @NoArgsConstructor
 @Data
-@Table(name = "product")
+@Cacheable
+@DynamicUpdate
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ProductEntity.CACHE_REGION)
+@Table(name = "product", uniqueConstraints = @UniqueConstraint(name = ProductEntity.UK_PRODUCT_CODE,
+		columnNames = "product_code"))
 public class ProductEntity {
 
+	// Second-level cache region, sized in ehcache.xml
+	public static final String CACHE_REGION = "product";
+
+	public static final String UK_PRODUCT_CODE = "uk_product_product_code";
+
 	@Id
 	@GeneratedValue(strategy = GenerationType.IDENTITY)
 	@Column(name = "id")
@@ -36,4 +52,9 @@ public class ProductEntity {
 	@Column(name = "product_code", nullable = false)
 	private String productCode;
 
+	// Incremented by every update, sent as the ETag of the product
+	@Version
+	@Column(name = "version", nullable = false)
+	private int version;
+
 }
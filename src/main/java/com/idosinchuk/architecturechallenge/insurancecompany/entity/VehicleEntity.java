@@ -1,11 +1,19 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.entity;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 
@@ -22,11 +30,22 @@ import lombok.NoArgsConstructor;
 @Entity
 @NoArgsConstructor
 @Data
-@Table(name = "vehicle")
+@Cacheable
+@DynamicUpdate
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = VehicleEntity.CACHE_REGION)
+@Table(name = "vehicle", uniqueConstraints = @UniqueConstraint(name = VehicleEntity.UK_LICENSE_PLATE,
+		columnNames = "license_plate"))
 public class VehicleEntity {
 
+	public static final String CACHE_REGION = "vehicle";
+
+	public static final String UK_LICENSE_PLATE = "uk_vehicle_license_plate";
+
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.TABLE, generator = "vehicle_id")
+	@TableGenerator(name = "vehicle_id", table = IdGenerator.TABLE, pkColumnName = IdGenerator.NAME_COLUMN,
+			valueColumnName = IdGenerator.VALUE_COLUMN, pkColumnValue = "vehicle",
+			allocationSize = IdGenerator.ALLOCATION_SIZE)
 	@Column(name = "id")
 	private int id;
 
@@ -36,4 +55,9 @@ public class VehicleEntity {
 	@Column(name = "license_plate", nullable = false)
 	private String licensePlate;
 
+	// Incremented by every update, sent as the ETag of the vehicle
+	@Version
+	@Column(name = "version", nullable = false)
+	private int version;
+
 }
@@ -0,0 +1,32 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.mapper;
+
+import org.mapstruct.InjectionStrategy;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.HolderRequestDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.HolderResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.HolderEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.HolderHistoricalEntity;
+
+/**
+ * Mapper between holder entities and DTOs. Implementation is generated at
+ * compile time.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@Mapper(componentModel = "spring", injectionStrategy = InjectionStrategy.CONSTRUCTOR)
+public interface HolderMapper {
+
+	// The version is taken from the stored row or from If-Match
+	@Mapping(target = "version", ignore = true)
+	HolderEntity toEntity(HolderRequestDTO holderRequestDTO);
+
+	HolderResponseDTO toResponse(HolderEntity holderEntity);
+
+	// Historical rows get their own id, never the id of the holder
+	@Mapping(target = "id", ignore = true)
+	HolderHistoricalEntity toHistorical(HolderEntity holderEntity);
+
+}
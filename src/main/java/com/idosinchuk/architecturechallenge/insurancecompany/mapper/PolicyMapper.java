@@ -0,0 +1,32 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.mapper;
+
+import org.mapstruct.InjectionStrategy;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyRequestDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.PolicyEntity;
+
+/**
+ * Mapper between policy entity and DTOs. Implementation is generated at
+ * compile time.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@Mapper(componentModel = "spring", injectionStrategy = InjectionStrategy.CONSTRUCTOR, uses = {
+		ProductMapper.class, HolderMapper.class, VehicleMapper.class })
+public interface PolicyMapper {
+
+	// Product, holder and vehicle are resolved by code in the service. The version
+	// is taken from the stored row or from If-Match.
+	@Mapping(target = "version", ignore = true)
+	@Mapping(target = "product", ignore = true)
+	@Mapping(target = "holder", ignore = true)
+	@Mapping(target = "vehicle", ignore = true)
+	PolicyEntity toEntity(PolicyRequestDTO policyRequestDTO);
+
+	PolicyResponseDTO toResponse(PolicyEntity policyEntity);
+
+}
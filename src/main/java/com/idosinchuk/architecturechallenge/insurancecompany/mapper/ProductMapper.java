@@ -0,0 +1,30 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.mapper;
+
+import org.mapstruct.InjectionStrategy;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.ProductRequestDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.ProductResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.ProductEntity;
+
+/**
+ * Mapper between product entity and DTOs. Implementation is generated at
+ * compile time.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@Mapper(componentModel = "spring", injectionStrategy = InjectionStrategy.CONSTRUCTOR)
+public interface ProductMapper {
+
+	// The version is taken from the stored row or from If-Match
+	@Mapping(target = "version", ignore = true)
+	ProductEntity toEntity(ProductRequestDTO productRequestDTO);
+
+	ProductResponseDTO toResponse(ProductEntity productEntity);
+
+	// Product of the catalog, to be patched without reading it
+	ProductEntity toEntity(ProductResponseDTO productResponseDTO);
+
+}
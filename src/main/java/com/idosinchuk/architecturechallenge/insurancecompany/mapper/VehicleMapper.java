@@ -0,0 +1,27 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.mapper;
+
+import org.mapstruct.InjectionStrategy;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.VehicleRequestDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.VehicleResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.VehicleEntity;
+
+/**
+ * Mapper between vehicle entity and DTOs. Implementation is generated at
+ * compile time.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@Mapper(componentModel = "spring", injectionStrategy = InjectionStrategy.CONSTRUCTOR)
+public interface VehicleMapper {
+
+	// The version is taken from the stored row or from If-Match
+	@Mapping(target = "version", ignore = true)
+	VehicleEntity toEntity(VehicleRequestDTO vehicleRequestDTO);
+
+	VehicleResponseDTO toResponse(VehicleEntity vehicleEntity);
+
+}
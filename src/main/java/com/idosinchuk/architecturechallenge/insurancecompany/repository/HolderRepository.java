@@ -1,6 +1,15 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.repository;
 
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 import com.idosinchuk.architecturechallenge.insurancecompany.entity.HolderEntity;
 
@@ -12,6 +21,15 @@ import com.idosinchuk.architecturechallenge.insurancecompany.entity.HolderEntity
  */
 public interface HolderRepository extends JpaRepository<HolderEntity, Integer> {
 
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
 	HolderEntity findByPassportNumber(String passportNumber);
 
+	List<HolderEntity> findByPassportNumberIn(Collection<String> passportNumbers);
+
+	Slice<HolderEntity> findAllBy(Pageable pageable);
+
+	Slice<HolderEntity> findByIdGreaterThan(int id, Pageable pageable);
+
+	boolean existsByPassportNumber(String passportNumber);
+
 }
@@ -0,0 +1,16 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.repository;
+
+/**
+ * Ids of the holder and vehicle of a policy, the product comes from the
+ * catalog
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public interface PolicyReferences {
+
+	int getHolderId();
+
+	int getVehicleId();
+
+}
@@ -1,6 +1,16 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.idosinchuk.architecturechallenge.insurancecompany.entity.PolicyEntity;
 
@@ -12,6 +22,38 @@ import com.idosinchuk.architecturechallenge.insurancecompany.entity.PolicyEntity
  */
 public interface PolicyRepository extends JpaRepository<PolicyEntity, Integer> {
 
+	@Override
+	@EntityGraph(PolicyEntity.WITH_REFERENCES)
+	Page<PolicyEntity> findAll(Pageable pageable);
+
+	// Listings select the policy columns only. Product, holder and vehicle are taken
+	// from the second-level cache and the misses are loaded in batches.
+	Slice<PolicyEntity> findAllBy(Pageable pageable);
+
+	@EntityGraph(PolicyEntity.WITH_REFERENCES)
 	PolicyEntity findByPolicyCode(String policyCode);
 
+	@EntityGraph(PolicyEntity.WITH_REFERENCES)
+	List<PolicyEntity> findByPolicyCodeIn(Collection<String> policyCodes);
+
+	// Holder and vehicle of a new policy in one select, empty if one of them does not exist
+	@Query("select h.id as holderId, v.id as vehicleId from HolderEntity h, VehicleEntity v "
+			+ "where h.passportNumber = :passportNumber and v.licensePlate = :licensePlate")
+	Optional<PolicyReferences> findReferences(@Param("passportNumber") String passportNumber,
+			@Param("licensePlate") String licensePlate);
+
+	// Only the codes, loading the policies would also load their references
+	@Query("select p.policyCode from PolicyEntity p where p.policyCode in :policyCodes")
+	List<String> findPolicyCodesIn(@Param("policyCodes") Collection<String> policyCodes);
+
+	@Query("select p.policyCode from PolicyEntity p where p.holder.passportNumber = :passportNumber")
+	List<String> findPolicyCodesByPassportNumber(@Param("passportNumber") String passportNumber);
+
+	@Query("select p.policyCode from PolicyEntity p where p.vehicle.licensePlate = :licensePlate")
+	List<String> findPolicyCodesByLicensePlate(@Param("licensePlate") String licensePlate);
+
+	Slice<PolicyEntity> findByIdGreaterThan(int id, Pageable pageable);
+
+	boolean existsByPolicyCode(String policyCode);
+
 }
@@ -1,6 +1,15 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.repository;
 
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 import com.idosinchuk.architecturechallenge.insurancecompany.entity.ProductEntity;
 
@@ -12,6 +21,14 @@ import com.idosinchuk.architecturechallenge.insurancecompany.entity.ProductEntit
  */
 public interface ProductRepository extends JpaRepository<ProductEntity, Integer> {
 
+	// Query cache: the id by business key, the entity then comes from its region
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
 	ProductEntity findByProductCode(String productCode);
 
+	List<ProductEntity> findByProductCodeIn(Collection<String> productCodes);
+
+	Slice<ProductEntity> findAllBy(Pageable pageable);
+
+	Slice<ProductEntity> findByIdGreaterThan(int id, Pageable pageable);
+
 }
@@ -1,6 +1,15 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.repository;
 
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 import com.idosinchuk.architecturechallenge.insurancecompany.entity.VehicleEntity;
 
@@ -12,6 +21,15 @@ import com.idosinchuk.architecturechallenge.insurancecompany.entity.VehicleEntit
  */
 public interface VehicleRepository extends JpaRepository<VehicleEntity, Integer> {
 
+	@QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
 	VehicleEntity findByLicensePlate(String licensePlate);
 
+	List<VehicleEntity> findByLicensePlateIn(Collection<String> licensePlates);
+
+	Slice<VehicleEntity> findAllBy(Pageable pageable);
+
+	Slice<VehicleEntity> findByIdGreaterThan(int id, Pageable pageable);
+
+	boolean existsByLicensePlate(String licensePlate);
+
 }
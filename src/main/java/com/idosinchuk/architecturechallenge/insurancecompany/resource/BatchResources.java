@@ -0,0 +1,69 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.resource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.Resources;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+/**
+ * Resources of a batch read by business keys. Carries the keys that were not
+ * found.
+ * 
+ * @author Igor Dosinchuk
+ *
+ * @param <T> content type
+ */
+public class BatchResources<T> extends Resources<T> {
+
+	private final List<String> missing;
+
+	public BatchResources(Iterable<T> content, List<String> missing) {
+		super(content);
+		this.missing = missing;
+	}
+
+	/**
+	 * Build the resources of a batch read, in the order of the keys, with a self
+	 * link.
+	 * 
+	 * @param keys  requested keys
+	 * @param found elements found, in any order
+	 * @param key   business key of an element
+	 * @return BatchResources
+	 */
+	public static <T> BatchResources<T> of(Collection<String> keys, List<T> found, Function<T, String> key) {
+		BatchResources<T> resources = ordered(keys, found, key);
+		resources.add(new Link(ServletUriComponentsBuilder.fromCurrentRequest().toUriString()).withSelfRel());
+
+		return resources;
+	}
+
+	// In the order of the keys, without links
+	static <T> BatchResources<T> ordered(Collection<String> keys, List<T> found, Function<T, String> key) {
+		Map<String, T> byKey = found.stream().collect(Collectors.toMap(key, Function.identity()));
+
+		List<T> content = new ArrayList<>(found.size());
+		List<String> missing = new ArrayList<>();
+
+		for (String requestedKey : keys) {
+			T element = byKey.get(requestedKey);
+			if (element != null) {
+				content.add(element);
+			} else {
+				missing.add(requestedKey);
+			}
+		}
+
+		return new BatchResources<>(content, missing);
+	}
+
+	public List<String> getMissing() {
+		return missing;
+	}
+}
@@ -0,0 +1,110 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.resource;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.hateoas.PagedResources.PageMetadata;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountedPage;
+
+/**
+ * Lean representation of the listings and batch reads: the same content and
+ * paging fields as {@link SliceResources}, {@link BatchResources} and the paged
+ * resources, without links nor HAL wrapping.
+ * 
+ * @author Igor Dosinchuk
+ *
+ * @param <T> content type
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LeanResources<T> {
+
+	private final Collection<T> content;
+
+	private final PageMetadata page;
+
+	private final Boolean hasNext;
+
+	private final String nextCursor;
+
+	private final List<String> missing;
+
+	public LeanResources(Collection<T> content, PageMetadata page, Boolean hasNext, String nextCursor,
+			List<String> missing) {
+		this.content = content;
+		this.page = page;
+		this.hasNext = hasNext;
+		this.nextCursor = nextCursor;
+		this.missing = missing;
+	}
+
+	/**
+	 * Build the lean resources of an offset page, with its total if it was
+	 * counted.
+	 * 
+	 * @param slice page read
+	 * @return LeanResources
+	 */
+	public static <T> LeanResources<T> ofPage(Slice<T> slice) {
+		if (slice instanceof CountedPage) {
+			Page<T> page = (Page<T>) slice;
+
+			return new LeanResources<>(page.getContent(), new PageMetadata(page.getSize(), page.getNumber(),
+					page.getTotalElements(), page.getTotalPages()), null, null, null);
+		}
+
+		return new LeanResources<>(slice.getContent(), null, slice.hasNext(), null, null);
+	}
+
+	/**
+	 * Build the lean resources of a keyset page.
+	 * 
+	 * @param slice page read after a cursor
+	 * @param id    id of an element, used for the next cursor
+	 * @return LeanResources
+	 */
+	public static <T> LeanResources<T> ofKeyset(Slice<T> slice, ToIntFunction<T> id) {
+		return new LeanResources<>(slice.getContent(), null, slice.hasNext(), SliceResources.nextCursor(slice, id),
+				null);
+	}
+
+	/**
+	 * Build the lean resources of a batch read, in the order of the keys.
+	 * 
+	 * @param keys  requested keys
+	 * @param found elements found, in any order
+	 * @param key   business key of an element
+	 * @return LeanResources
+	 */
+	public static <T> LeanResources<T> ofBatch(Collection<String> keys, List<T> found, Function<T, String> key) {
+		BatchResources<T> batch = BatchResources.ordered(keys, found, key);
+
+		return new LeanResources<>(batch.getContent(), null, null, null, batch.getMissing());
+	}
+
+	public Collection<T> getContent() {
+		return content;
+	}
+
+	public PageMetadata getPage() {
+		return page;
+	}
+
+	public Boolean getHasNext() {
+		return hasNext;
+	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public List<String> getMissing() {
+		return missing;
+	}
+
+}
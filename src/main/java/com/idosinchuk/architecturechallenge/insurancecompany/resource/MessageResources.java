@@ -0,0 +1,42 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.resource;
+
+import java.util.List;
+
+import org.springframework.hateoas.Resources;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CustomMessage;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.LeanRepresentation;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.Links;
+
+/**
+ * Body of the write responses: the messages with a self link, or the messages
+ * alone in the lean representation.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public final class MessageResources {
+
+	private MessageResources() {
+	}
+
+	/**
+	 * Build the body of a write response.
+	 * 
+	 * @param customMessageList messages
+	 * @param controller        controller of the self link
+	 * @param path              path segments of the self link below the controller
+	 * @return Resources with the self link, or the list of messages if lean
+	 */
+	public static Object of(List<CustomMessage> customMessageList, Class<?> controller, Object... path) {
+		if (LeanRepresentation.isRequested()) {
+			return customMessageList;
+		}
+
+		Resources<CustomMessage> resource = new Resources<>(customMessageList);
+		resource.add(Links.self(controller, path));
+
+		return resource;
+	}
+
+}
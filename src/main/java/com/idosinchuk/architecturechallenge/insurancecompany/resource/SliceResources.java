@@ -0,0 +1,90 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.resource;
+
+import java.util.function.ToIntFunction;
+
+import org.springframework.data.domain.Slice;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.Resources;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.KeysetCursor;
+
+/**
+ * Resources for a page read without a total count. Carries the cursor of the
+ * following page, if any.
+ * 
+ * @author Igor Dosinchuk
+ *
+ * @param <T> content type
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SliceResources<T> extends Resources<T> {
+
+	private final boolean hasNext;
+
+	private final String nextCursor;
+
+	public SliceResources(Iterable<T> content, boolean hasNext, String nextCursor) {
+		super(content);
+		this.hasNext = hasNext;
+		this.nextCursor = nextCursor;
+	}
+
+	/**
+	 * Build the resources of a keyset page, with self and next links.
+	 * 
+	 * @param slice page read after a cursor
+	 * @param id    id of an element, used for the next cursor
+	 * @return SliceResources
+	 */
+	public static <T> SliceResources<T> ofKeyset(Slice<T> slice, ToIntFunction<T> id) {
+		String nextCursor = nextCursor(slice, id);
+
+		SliceResources<T> resources = new SliceResources<>(slice.getContent(), slice.hasNext(), nextCursor);
+		resources.add(new Link(ServletUriComponentsBuilder.fromCurrentRequest().toUriString()).withSelfRel());
+
+		if (nextCursor != null) {
+			resources.add(new Link(ServletUriComponentsBuilder.fromCurrentRequest()
+					.replaceQueryParam("cursor", nextCursor).toUriString()).withRel(Link.REL_NEXT));
+		}
+
+		return resources;
+	}
+
+	/**
+	 * Build the resources of an offset page read without total count, with self
+	 * and next links.
+	 * 
+	 * @param slice page read without count
+	 * @return SliceResources
+	 */
+	public static <T> SliceResources<T> ofPage(Slice<T> slice) {
+		SliceResources<T> resources = new SliceResources<>(slice.getContent(), slice.hasNext(), null);
+		resources.add(new Link(ServletUriComponentsBuilder.fromCurrentRequest().toUriString()).withSelfRel());
+
+		if (slice.hasNext()) {
+			resources.add(new Link(ServletUriComponentsBuilder.fromCurrentRequest()
+					.replaceQueryParam("page", slice.getNumber() + 1).toUriString()).withRel(Link.REL_NEXT));
+		}
+
+		return resources;
+	}
+
+	// Cursor after the last element, if there is a following page
+	static <T> String nextCursor(Slice<T> slice, ToIntFunction<T> id) {
+		if (slice.hasNext() && slice.hasContent()) {
+			return KeysetCursor.encode(id.applyAsInt(slice.getContent().get(slice.getNumberOfElements() - 1)));
+		}
+
+		return null;
+	}
+
+	public boolean isHasNext() {
+		return hasNext;
+	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+}
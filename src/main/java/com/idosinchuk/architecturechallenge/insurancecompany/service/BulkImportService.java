@@ -0,0 +1,54 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.springframework.http.MediaType;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.BulkRowResultDTO;
+
+/**
+ * 
+ * Service for bulk imports
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public interface BulkImportService {
+
+	/**
+	 * Add the holders of an NDJSON or CSV body. Writes one
+	 * {@link BulkRowResultDTO} per record as NDJSON, in the order of the body.
+	 * 
+	 * @param body      holders to save
+	 * @param mediaType body format
+	 * @param results   where the results are written
+	 * @throws IOException if the body can not be read or the results written
+	 */
+	void importHolders(InputStream body, MediaType mediaType, OutputStream results) throws IOException;
+
+	/**
+	 * Add the vehicles of an NDJSON or CSV body. Writes one
+	 * {@link BulkRowResultDTO} per record as NDJSON, in the order of the body.
+	 * 
+	 * @param body      vehicles to save
+	 * @param mediaType body format
+	 * @param results   where the results are written
+	 * @throws IOException if the body can not be read or the results written
+	 */
+	void importVehicles(InputStream body, MediaType mediaType, OutputStream results) throws IOException;
+
+	/**
+	 * Add the policies of an NDJSON or CSV body. Product, holder and vehicle must
+	 * exist already. Writes one {@link BulkRowResultDTO} per record as NDJSON, in
+	 * the order of the body.
+	 * 
+	 * @param body      policies to save
+	 * @param mediaType body format
+	 * @param results   where the results are written
+	 * @throws IOException if the body can not be read or the results written
+	 */
+	void importPolicies(InputStream body, MediaType mediaType, OutputStream results) throws IOException;
+
+}
@@ -0,0 +1,49 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service;
+
+import java.util.function.Supplier;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.common.ReadResult;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.DatabaseUnavailableException;
+
+/**
+ * 
+ * Service for the reads by key that must keep answering while the database
+ * stalls
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public interface GuardedReadService {
+
+	/**
+	 * Read a resource by key, waiting at most the read timeout and only while
+	 * the database circuit breaker is closed. Otherwise the last value read for
+	 * the key is returned, marked stale, while a read refreshes it in the
+	 * background.
+	 * 
+	 * @param resource type of resource, for example policy
+	 * @param key      key of the resource
+	 * @param reader   lookup of the resource, returning null if it does not exist
+	 * @return the value read, with a null value if the resource does not exist
+	 * @throws DatabaseUnavailableException if the database did not answer and
+	 *                                      the key was never read before
+	 */
+	<T> ReadResult<T> read(String resource, String key, Supplier<T> reader);
+
+	/**
+	 * Read a resource by key as {@link #read(String, String, Supplier)}, unless
+	 * it is found in memory first. Values found in memory are returned fresh,
+	 * without waiting on the read executor or asking the circuit breaker.
+	 * 
+	 * @param resource type of resource, for example policy
+	 * @param key      key of the resource
+	 * @param cached   lookup of the resource in memory, never reading the
+	 *                 database, returning null if it is not there
+	 * @param reader   lookup of the resource, returning null if it does not exist
+	 * @return the value read, with a null value if the resource does not exist
+	 * @throws DatabaseUnavailableException if the database did not answer and
+	 *                                      the key was never read before
+	 */
+	<T> ReadResult<T> read(String resource, String key, Supplier<T> cached, Supplier<T> reader);
+
+}
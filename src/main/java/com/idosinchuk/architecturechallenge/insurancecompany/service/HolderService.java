@@ -1,9 +1,16 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.service;
 
-import org.springframework.data.domain.Page;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.ResponseEntity;
 
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountStrategy;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountedPage;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.MergePatch;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.HolderRequestDTO;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.HolderResponseDTO;
 
@@ -19,10 +26,21 @@ public interface HolderService {
 	/**
 	 * Retrieve list of all holders according to the search criteria.
 	 * 
-	 * @param pageable object for pagination
-	 * @return Page of {@link HolderResponseDTO}
+	 * @param pageable      object for pagination
+	 * @param countStrategy how to produce the total number of holders
+	 * @return {@link CountedPage} of {@link HolderResponseDTO}, or a Slice without
+	 *         total for {@link CountStrategy#NONE}
+	 */
+	Slice<HolderResponseDTO> getAllHolders(Pageable pageable, CountStrategy countStrategy);
+
+	/**
+	 * Retrieve the holders following the given id, ordered by id.
+	 * 
+	 * @param afterId id of the last holder already read, 0 to start
+	 * @param size    maximum number of holders
+	 * @return Slice of {@link HolderResponseDTO}
 	 */
-	Page<HolderResponseDTO> getAllHolders(Pageable pageable);
+	Slice<HolderResponseDTO> getAllHoldersAfter(int afterId, int size);
 
 	/**
 	 * Find holder by the id.
@@ -32,6 +50,22 @@ public interface HolderService {
 	 */
 	HolderResponseDTO getHolder(String passportNumber);
 
+	/**
+	 * Find a holder in the cache only, without reading the database.
+	 * 
+	 * @param passportNumber holder passport number
+	 * @return {@link HolderResponseDTO}, null if it is not cached
+	 */
+	HolderResponseDTO getCachedHolder(String passportNumber);
+
+	/**
+	 * Find the holders of several passport numbers with one query.
+	 * 
+	 * @param passportNumbers passport numbers
+	 * @return List of {@link HolderResponseDTO} found, in any order
+	 */
+	List<HolderResponseDTO> getHolders(Collection<String> passportNumbers);
+
 	/**
 	 * Add a holder..
 	 * 
@@ -42,12 +76,15 @@ public interface HolderService {
 	ResponseEntity<?> addHolder(HolderRequestDTO holderRequestDTO);
 
 	/**
-	 * Update the holder.
+	 * Update the fields of the holder present in the patch, the others are left as
+	 * they are.
 	 * 
-	 * @param passportNumber   holder passport number
-	 * @param holderRequestDTO object to save
+	 * @param passportNumber holder passport number
+	 * @param holderPatch    holder fields to change (JSON Merge Patch)
+	 * @param versions       versions the holder may have (If-Match), null for any
 	 * 
 	 * @return ResponseEntity
 	 */
-	ResponseEntity<?> updateHolder(String passportNumber, HolderRequestDTO holderRequestDTO);
+	ResponseEntity<?> updateHolder(String passportNumber, MergePatch<HolderRequestDTO> holderPatch,
+			Set<Integer> versions);
 }
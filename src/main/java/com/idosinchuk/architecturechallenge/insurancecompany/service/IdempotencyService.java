@@ -0,0 +1,42 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.common.StoredResponse;
+
+/**
+ * 
+ * Service storing the responses of the POST endpoints by Idempotency-Key, so
+ * a retried request gets the original response instead of being executed
+ * again. Keys are kept for a limited time.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public interface IdempotencyService {
+
+	/**
+	 * Reserve a key for the request about to be processed.
+	 * 
+	 * @param key         idempotency key, scoped to the caller and the endpoint
+	 * @param fingerprint digest of the request
+	 * @return null if reserved for this request, otherwise what the key already
+	 *         has: the stored response or the reservation of another request
+	 */
+	StoredResponse reserve(String key, String fingerprint);
+
+	/**
+	 * Store the response of the request that reserved the key.
+	 * 
+	 * @param key      idempotency key
+	 * @param response response to return to the retries
+	 */
+	void complete(String key, StoredResponse response);
+
+	/**
+	 * Free a reserved key without response, the next request with it is
+	 * executed.
+	 * 
+	 * @param key idempotency key
+	 */
+	void release(String key);
+
+}
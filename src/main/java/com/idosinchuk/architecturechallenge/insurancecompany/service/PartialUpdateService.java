@@ -0,0 +1,40 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 
+ * Service writing only some columns of a row, for the PATCH endpoints
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public interface PartialUpdateService {
+
+	/**
+	 * Update the given attributes of a row found by business key, in one
+	 * statement generated for them and without reading the row. The version is
+	 * incremented.
+	 * 
+	 * @param entityClass  entity of the row
+	 * @param keyAttribute attribute holding the business key
+	 * @param key          business key of the row
+	 * @param attributes   new values by attribute name
+	 * @param versions     versions the row may have
+	 * @return 1 if updated, 0 if the row does not exist or has another version
+	 */
+	<T> int update(Class<T> entityClass, String keyAttribute, Object key, Map<String, Object> attributes,
+			Collection<Integer> versions);
+
+	/**
+	 * Set the attributes whose value changes on a managed entity. On flush
+	 * Hibernate updates only those columns (the entities are dynamic-update).
+	 * 
+	 * @param entity     managed entity
+	 * @param attributes new values by attribute name
+	 * @return true if at least one attribute changed
+	 */
+	boolean apply(Object entity, Map<String, Object> attributes);
+
+}
@@ -0,0 +1,35 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service;
+
+/**
+ * 
+ * Service for the cached policy responses, which embed their product, holder
+ * and vehicle
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public interface PolicyCacheService {
+
+	/**
+	 * Evict the cached policies of a product. Every cached policy is evicted, a
+	 * product is shared by too many policies to look them up.
+	 * 
+	 * @param productCode code of the product that changed
+	 */
+	void evictPoliciesOfProduct(String productCode);
+
+	/**
+	 * Evict the cached policies of a holder.
+	 * 
+	 * @param passportNumber passport number of the holder that changed
+	 */
+	void evictPoliciesOfHolder(String passportNumber);
+
+	/**
+	 * Evict the cached policies of a vehicle.
+	 * 
+	 * @param licensePlate license plate of the vehicle that changed
+	 */
+	void evictPoliciesOfVehicle(String licensePlate);
+
+}
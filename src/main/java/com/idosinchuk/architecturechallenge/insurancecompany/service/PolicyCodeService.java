@@ -0,0 +1,30 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service;
+
+/**
+ * 
+ * Service assigning the policy codes when the server generates them
+ * (insurancecompany.policy-code.server-assigned)
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public interface PolicyCodeService {
+
+	/**
+	 * Whether the policy codes are generated by the server. If so, a code sent by
+	 * the client is replaced.
+	 * 
+	 * @return true if generated by the server
+	 */
+	boolean isServerAssigned();
+
+	/**
+	 * Generate a policy code, unique across the instances without asking the
+	 * database.
+	 * 
+	 * @return new policy code
+	 * @throws IllegalStateException if the codes are not generated by the server
+	 */
+	String nextPolicyCode();
+
+}
@@ -0,0 +1,27 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.common.BulkFormat;
+
+/**
+ * 
+ * Service for policy exports
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public interface PolicyExportService {
+
+	/**
+	 * Write every policy with its product, holder and vehicle, ordered by id. The
+	 * rows are written while they are read, whatever the size of the table.
+	 * 
+	 * @param format NDJSON or CSV
+	 * @param out    where the policies are written
+	 * @throws IOException if the policies can not be written
+	 */
+	void exportPolicies(BulkFormat format, OutputStream out) throws IOException;
+
+}
@@ -1,9 +1,16 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.service;
 
-import org.springframework.data.domain.Page;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.ResponseEntity;
 
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountStrategy;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountedPage;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.MergePatch;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyRequestDTO;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyResponseDTO;
 
@@ -19,10 +26,21 @@ public interface PolicyService {
 	/**
 	 * Retrieve list of all policies according to the search criteria.
 	 * 
-	 * @param pageable object for pagination
-	 * @return Page of {@link PolicyResponseDTO}
+	 * @param pageable      object for pagination
+	 * @param countStrategy how to produce the total number of policies
+	 * @return {@link CountedPage} of {@link PolicyResponseDTO}, or a Slice without
+	 *         total for {@link CountStrategy#NONE}
+	 */
+	Slice<PolicyResponseDTO> getAllPolicies(Pageable pageable, CountStrategy countStrategy);
+
+	/**
+	 * Retrieve the policies following the given id, ordered by id.
+	 * 
+	 * @param afterId id of the last policy already read, 0 to start
+	 * @param size    maximum number of policies
+	 * @return Slice of {@link PolicyResponseDTO}
 	 */
-	Page<PolicyResponseDTO> getAllPolicies(Pageable pageable);
+	Slice<PolicyResponseDTO> getAllPoliciesAfter(int afterId, int size);
 
 	/**
 	 * Find policies by the policyCode.
@@ -32,6 +50,22 @@ public interface PolicyService {
 	 */
 	PolicyResponseDTO getPolicies(String policyCode);
 
+	/**
+	 * Find a policy in the cache only, without reading the database.
+	 * 
+	 * @param policyCode policy code
+	 * @return {@link PolicyResponseDTO}, null if it is not cached
+	 */
+	PolicyResponseDTO getCachedPolicy(String policyCode);
+
+	/**
+	 * Find the policies of several policy codes with one query.
+	 * 
+	 * @param policyCodes policy codes
+	 * @return List of {@link PolicyResponseDTO} found, in any order
+	 */
+	List<PolicyResponseDTO> getPolicies(Collection<String> policyCodes);
+
 	/**
 	 * Add a policy..
 	 * 
@@ -42,12 +76,14 @@ public interface PolicyService {
 	ResponseEntity<?> addPolicy(PolicyRequestDTO policyRequestDTO);
 
 	/**
-	 * Update the policy.
+	 * Update the fields of the policy present in the patch, the others are left as
+	 * they are.
 	 * 
-	 * @param policyCode       policy code
-	 * @param policyRequestDTO object to save
+	 * @param policyCode  policy code
+	 * @param policyPatch policy fields to change (JSON Merge Patch)
+	 * @param versions    versions the policy may have (If-Match), null for any
 	 * 
 	 * @return ResponseEntity
 	 */
-	ResponseEntity<?> updatePolicy(String policyCode, PolicyRequestDTO policyRequestDTO);
+	ResponseEntity<?> updatePolicy(String policyCode, MergePatch<PolicyRequestDTO> policyPatch, Set<Integer> versions);
 }
@@ -0,0 +1,47 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.ProductResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.ProductEntity;
+
+/**
+ * 
+ * Service for the product catalog, an in-memory snapshot of all the products
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public interface ProductCatalogService {
+
+	/**
+	 * Retrieve a product from the catalog.
+	 * 
+	 * @param productCode code of the product
+	 * @return the product, null if it does not exist. The same instance is
+	 *         returned to every caller, it must not be modified.
+	 */
+	ProductResponseDTO getProduct(String productCode);
+
+	/**
+	 * Retrieve a product from the catalog, without looking for products created
+	 * since the last refresh.
+	 * 
+	 * @param productCode code of the product
+	 * @return the product, null if it is not in the catalog. It must not be
+	 *         modified.
+	 */
+	ProductResponseDTO getCachedProduct(String productCode);
+
+	/**
+	 * Put a created or changed product in the catalog once the current
+	 * transaction commits, at once without transaction.
+	 * 
+	 * @param productEntity product saved
+	 */
+	void putAfterCommit(ProductEntity productEntity);
+
+	/**
+	 * Reload the whole catalog from the database.
+	 */
+	void refresh();
+
+}
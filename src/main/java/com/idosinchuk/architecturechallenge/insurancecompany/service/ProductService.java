@@ -1,9 +1,16 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.service;
 
-import org.springframework.data.domain.Page;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.ResponseEntity;
 
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountStrategy;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountedPage;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.MergePatch;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.ProductRequestDTO;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.ProductResponseDTO;
 
@@ -19,10 +26,21 @@ public interface ProductService {
 	/**
 	 * Retrieve list of all products according to the search criteria.
 	 * 
-	 * @param pageable object for pagination
-	 * @return Page of {@link ProductResponseDTO}
+	 * @param pageable      object for pagination
+	 * @param countStrategy how to produce the total number of products
+	 * @return {@link CountedPage} of {@link ProductResponseDTO}, or a Slice without
+	 *         total for {@link CountStrategy#NONE}
+	 */
+	Slice<ProductResponseDTO> getAllProducts(Pageable pageable, CountStrategy countStrategy);
+
+	/**
+	 * Retrieve the products following the given id, ordered by id.
+	 * 
+	 * @param afterId id of the last product already read, 0 to start
+	 * @param size    maximum number of products
+	 * @return Slice of {@link ProductResponseDTO}
 	 */
-	Page<ProductResponseDTO> getAllProducts(Pageable pageable);
+	Slice<ProductResponseDTO> getAllProductsAfter(int afterId, int size);
 
 	/**
 	 * Find product by the id.
@@ -32,6 +50,22 @@ public interface ProductService {
 	 */
 	ProductResponseDTO getProduct(String productCode);
 
+	/**
+	 * Find a product in the catalog only, without reading the database.
+	 * 
+	 * @param productCode product code
+	 * @return {@link ProductResponseDTO}, null if it is not in the catalog
+	 */
+	ProductResponseDTO getCachedProduct(String productCode);
+
+	/**
+	 * Find the products of several product codes with one query.
+	 * 
+	 * @param productCodes product codes
+	 * @return List of {@link ProductResponseDTO} found, in any order
+	 */
+	List<ProductResponseDTO> getProducts(Collection<String> productCodes);
+
 	/**
 	 * Add a product..
 	 * 
@@ -42,12 +76,15 @@ public interface ProductService {
 	ResponseEntity<?> addProduct(ProductRequestDTO productRequestDTO);
 
 	/**
-	 * Update the product.
+	 * Update the fields of the product present in the patch, the others are left as
+	 * they are.
 	 * 
-	 * @param productCode       product code
-	 * @param productRequestDTO object to save
+	 * @param productCode  product code
+	 * @param productPatch product fields to change (JSON Merge Patch)
+	 * @param versions     versions the product may have (If-Match), null for any
 	 * 
 	 * @return ResponseEntity
 	 */
-	ResponseEntity<?> updateProduct(String productCode, ProductRequestDTO productRequestDTO);
+	ResponseEntity<?> updateProduct(String productCode, MergePatch<ProductRequestDTO> productPatch,
+			Set<Integer> versions);
 }
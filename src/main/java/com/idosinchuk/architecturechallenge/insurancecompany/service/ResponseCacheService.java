@@ -0,0 +1,64 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service;
+
+import org.springframework.http.MediaType;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.common.SerializedBody;
+
+/**
+ *
+ * Service for the serialized bodies of the reads by key, by resource, key,
+ * version and media type
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+public interface ResponseCacheService {
+
+	/**
+	 * Whether bodies are stored, insurancecompany.response-cache.max-size is not
+	 * zero.
+	 *
+	 * @return true if enabled
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Find a stored body.
+	 *
+	 * @param resource  type of resource, for example policy
+	 * @param key       key of the resource
+	 * @param entityTag version of the resource
+	 * @param mediaType media type negotiated for the response
+	 * @return the body, null if there is none of that version and media type
+	 */
+	SerializedBody get(String resource, String key, String entityTag, MediaType mediaType);
+
+	/**
+	 * Store a body. The bodies of another version of the resource are replaced.
+	 *
+	 * @param resource    type of resource, for example policy
+	 * @param key         key of the resource
+	 * @param entityTag   version of the resource
+	 * @param mediaType   media type negotiated for the response
+	 * @param contentType content type written with the body
+	 * @param body        serialized body
+	 */
+	void put(String resource, String key, String entityTag, MediaType mediaType, MediaType contentType,
+			byte[] body);
+
+	/**
+	 * Evict the bodies of a resource that changed.
+	 *
+	 * @param resource type of resource, for example policy
+	 * @param key      key of the resource
+	 */
+	void evict(String resource, String key);
+
+	/**
+	 * Evict the bodies of every resource of a type.
+	 *
+	 * @param resource type of resource, for example policy
+	 */
+	void evictAll(String resource);
+
+}
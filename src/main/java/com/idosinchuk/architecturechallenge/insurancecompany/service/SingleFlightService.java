@@ -0,0 +1,28 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service;
+
+import java.util.function.Supplier;
+
+/**
+ * 
+ * Service to share one database load between the concurrent requests for the
+ * same resource
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public interface SingleFlightService {
+
+	/**
+	 * Load a resource, or wait for the load of another caller asking for the
+	 * same key at the same time. A caller waits at most
+	 * insurancecompany.single-flight.max-wait, then loads by itself.
+	 * 
+	 * @param resource type of resource, for example policy
+	 * @param key      key of the resource
+	 * @param loader   load from the database, run by the first caller only
+	 * @return the loaded resource, the same instance for every caller of the
+	 *         shared load
+	 */
+	<T> T load(String resource, String key, Supplier<T> loader);
+
+}
@@ -0,0 +1,31 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service;
+
+import java.util.function.LongSupplier;
+
+import org.springframework.data.domain.Slice;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountStrategy;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountedPage;
+
+/**
+ * 
+ * Service for the total counts of paged listings
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public interface TotalCountService {
+
+	/**
+	 * Add a total to a slice read without count query.
+	 * 
+	 * @param slice      slice read from the database
+	 * @param table      table the slice was read from
+	 * @param strategy   requested count strategy
+	 * @param exactCount exact count of the table
+	 * @return {@link CountedPage} with the strategy that actually produced the
+	 *         total, or the slice itself for {@link CountStrategy#NONE}
+	 */
+	<T> Slice<T> withTotal(Slice<T> slice, String table, CountStrategy strategy, LongSupplier exactCount);
+
+}
@@ -1,9 +1,16 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.service;
 
-import org.springframework.data.domain.Page;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.ResponseEntity;
 
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountStrategy;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountedPage;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.MergePatch;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.VehicleRequestDTO;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.VehicleResponseDTO;
 
@@ -19,10 +26,21 @@ public interface VehicleService {
 	/**
 	 * Retrieve list of all vehicles according to the search criteria.
 	 * 
-	 * @param pageable object for pagination
-	 * @return Page of {@link VehicleResponseDTO}
+	 * @param pageable      object for pagination
+	 * @param countStrategy how to produce the total number of vehicles
+	 * @return {@link CountedPage} of {@link VehicleResponseDTO}, or a Slice without
+	 *         total for {@link CountStrategy#NONE}
+	 */
+	Slice<VehicleResponseDTO> getAllVehicles(Pageable pageable, CountStrategy countStrategy);
+
+	/**
+	 * Retrieve the vehicles following the given id, ordered by id.
+	 * 
+	 * @param afterId id of the last vehicle already read, 0 to start
+	 * @param size    maximum number of vehicles
+	 * @return Slice of {@link VehicleResponseDTO}
 	 */
-	Page<VehicleResponseDTO> getAllVehicles(Pageable pageable);
+	Slice<VehicleResponseDTO> getAllVehiclesAfter(int afterId, int size);
 
 	/**
 	 * Find vehicle by the licensePlate.
@@ -32,6 +50,22 @@ public interface VehicleService {
 	 */
 	VehicleResponseDTO getVehicle(String licensePlate);
 
+	/**
+	 * Find a vehicle in the cache only, without reading the database.
+	 * 
+	 * @param licensePlate vehicle license plate
+	 * @return {@link VehicleResponseDTO}, null if it is not cached
+	 */
+	VehicleResponseDTO getCachedVehicle(String licensePlate);
+
+	/**
+	 * Find the vehicles of several license plates with one query.
+	 * 
+	 * @param licensePlates license plates
+	 * @return List of {@link VehicleResponseDTO} found, in any order
+	 */
+	List<VehicleResponseDTO> getVehicles(Collection<String> licensePlates);
+
 	/**
 	 * Add a vehicle..
 	 * 
@@ -42,12 +76,15 @@ public interface VehicleService {
 	ResponseEntity<?> addVehicle(VehicleRequestDTO vehicleRequestDTO);
 
 	/**
-	 * Update the vehicle.
+	 * Update the fields of the vehicle present in the patch, the others are left as
+	 * they are.
 	 * 
-	 * @param licensePlate      vehicle license plate
-	 * @param vehicleRequestDTO object to save
+	 * @param licensePlate vehicle license plate
+	 * @param vehiclePatch vehicle fields to change (JSON Merge Patch)
+	 * @param versions     versions the vehicle may have (If-Match), null for any
 	 * 
 	 * @return ResponseEntity
 	 */
-	ResponseEntity<?> updateVehicle(String licensePlate, VehicleRequestDTO vehicleRequestDTO);
+	ResponseEntity<?> updateVehicle(String licensePlate, MergePatch<VehicleRequestDTO> vehiclePatch,
+			Set<Integer> versions);
 }
@@ -0,0 +1,412 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.validation.Validator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.BulkRowResultDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.HolderRequestDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyRequestDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.VehicleRequestDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.HolderEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.PolicyEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.ProductEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.VehicleEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.mapper.HolderMapper;
+import com.idosinchuk.architecturechallenge.insurancecompany.mapper.PolicyMapper;
+import com.idosinchuk.architecturechallenge.insurancecompany.mapper.VehicleMapper;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.HolderRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.PolicyRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.ProductRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.VehicleRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.BulkImportService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PolicyCodeService;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.BulkRecordReader;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.ConstraintViolation;
+
+/**
+ * Implementation for bulk import service. Records are read one at a time and
+ * saved in chunks: one transaction per chunk, set-based lookups of the keys and
+ * references of the chunk and batched inserts.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@Service("BulkImportService")
+public class BulkImportServiceImpl implements BulkImportService {
+
+	@Autowired
+	private HolderRepository holderRepository;
+
+	@Autowired
+	private VehicleRepository vehicleRepository;
+
+	@Autowired
+	private PolicyRepository policyRepository;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private HolderMapper holderMapper;
+
+	@Autowired
+	private VehicleMapper vehicleMapper;
+
+	@Autowired
+	private PolicyMapper policyMapper;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private Validator validator;
+
+	@Autowired
+	private PolicyCodeService policyCodeService;
+
+	@Value("${insurancecompany.bulk.chunk-size:500}")
+	private int chunkSize;
+
+	public static final Logger logger = LoggerFactory.getLogger(BulkImportServiceImpl.class);
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void importHolders(InputStream body, MediaType mediaType, OutputStream results) throws IOException {
+
+		importRecords(body, mediaType, HolderRequestDTO.class, HolderRequestDTO::getPassportNumber,
+				this::writeHolders, HolderEntity.UK_PASSPORT_NUMBER, results);
+
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void importVehicles(InputStream body, MediaType mediaType, OutputStream results) throws IOException {
+
+		importRecords(body, mediaType, VehicleRequestDTO.class, VehicleRequestDTO::getLicensePlate,
+				this::writeVehicles, VehicleEntity.UK_LICENSE_PLATE, results);
+
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void importPolicies(InputStream body, MediaType mediaType, OutputStream results) throws IOException {
+
+		importRecords(body, mediaType, PolicyRequestDTO.class, this::policyCode, this::writePolicies,
+				PolicyEntity.UK_POLICY_CODE, results);
+
+	}
+
+	private void writeHolders(List<BulkRow<HolderRequestDTO>> rows) {
+
+		Set<String> existing = holderRepository.findByPassportNumberIn(keys(rows)).stream()
+				.map(HolderEntity::getPassportNumber).collect(toSet());
+
+		List<HolderEntity> entities = new ArrayList<>();
+
+		for (BulkRow<HolderRequestDTO> row : rows) {
+			if (existing.contains(row.getKey())) {
+				row.reject("Passport number " + row.getKey() + " already exists.");
+			} else {
+				row.record.setId(0);
+				entities.add(holderMapper.toEntity(row.record));
+				row.created("Created new holder");
+			}
+		}
+
+		holderRepository.saveAll(entities);
+		holderRepository.flush();
+
+	}
+
+	private void writeVehicles(List<BulkRow<VehicleRequestDTO>> rows) {
+
+		Set<String> existing = vehicleRepository.findByLicensePlateIn(keys(rows)).stream()
+				.map(VehicleEntity::getLicensePlate).collect(toSet());
+
+		List<VehicleEntity> entities = new ArrayList<>();
+
+		for (BulkRow<VehicleRequestDTO> row : rows) {
+			if (existing.contains(row.getKey())) {
+				row.reject("Vehicle license plate " + row.getKey() + " already exists.");
+			} else {
+				row.record.setId(0);
+				entities.add(vehicleMapper.toEntity(row.record));
+				row.created("Created new vehicle");
+			}
+		}
+
+		vehicleRepository.saveAll(entities);
+		vehicleRepository.flush();
+
+	}
+
+	private void writePolicies(List<BulkRow<PolicyRequestDTO>> rows) {
+
+		// One query per reference type for the whole chunk
+		Map<String, ProductEntity> products = productRepository
+				.findByProductCodeIn(values(rows, PolicyRequestDTO::getProductCode)).stream()
+				.collect(toMap(ProductEntity::getProductCode, Function.identity()));
+
+		Map<String, HolderEntity> holders = holderRepository
+				.findByPassportNumberIn(values(rows, PolicyRequestDTO::getPassportNumber)).stream()
+				.collect(toMap(HolderEntity::getPassportNumber, Function.identity()));
+
+		Map<String, VehicleEntity> vehicles = vehicleRepository
+				.findByLicensePlateIn(values(rows, PolicyRequestDTO::getLicensePlate)).stream()
+				.collect(toMap(VehicleEntity::getLicensePlate, Function.identity()));
+
+		// Generated codes are new, only the codes sent by the clients may exist
+		Set<String> existing = policyCodeService.isServerAssigned() ? Collections.emptySet()
+				: new HashSet<>(policyRepository.findPolicyCodesIn(keys(rows)));
+
+		List<PolicyEntity> entities = new ArrayList<>();
+
+		for (BulkRow<PolicyRequestDTO> row : rows) {
+			PolicyRequestDTO policyRequestDTO = row.record;
+
+			ProductEntity productEntity = products.get(policyRequestDTO.getProductCode());
+			HolderEntity holderEntity = holders.get(policyRequestDTO.getPassportNumber());
+			VehicleEntity vehicleEntity = vehicles.get(policyRequestDTO.getLicensePlate());
+
+			if (existing.contains(row.getKey())) {
+				row.reject("The requested policy actually exists. Please change policyCode.");
+			} else if (productEntity == null) {
+				row.reject("Product code " + policyRequestDTO.getProductCode() + " does not exist!");
+			} else if (holderEntity == null) {
+				row.reject("Holder passport number " + policyRequestDTO.getPassportNumber() + " does not exist!");
+			} else if (vehicleEntity == null) {
+				row.reject("Vehicle license plate " + policyRequestDTO.getLicensePlate() + " does not exist!");
+			} else {
+				policyRequestDTO.setId(0);
+
+				PolicyEntity entityRequest = policyMapper.toEntity(policyRequestDTO);
+				entityRequest.setProduct(productEntity);
+				entityRequest.setHolder(holderEntity);
+				entityRequest.setVehicle(vehicleEntity);
+
+				entities.add(entityRequest);
+				row.created("Created new policy");
+			}
+		}
+
+		policyRepository.saveAll(entities);
+		policyRepository.flush();
+
+	}
+
+	// Set before the record is validated, so records without code are accepted
+	private String policyCode(PolicyRequestDTO policyRequestDTO) {
+
+		if (policyCodeService.isServerAssigned()) {
+			policyRequestDTO.setPolicyCode(policyCodeService.nextPolicyCode());
+		}
+		return policyRequestDTO.getPolicyCode();
+
+	}
+
+	/**
+	 * Read the body in chunks of {@code chunkSize} records. Invalid records are
+	 * answered without touching the database, the rest of the chunk is handed to
+	 * the writer in one transaction.
+	 */
+	private <T> void importRecords(InputStream body, MediaType mediaType, Class<T> type, Function<T, String> key,
+			Consumer<List<BulkRow<T>>> writer, String uniqueConstraint, OutputStream results) throws IOException {
+
+		try (BulkRecordReader<T> reader = BulkRecordReader.of(body, mediaType, type, objectMapper)) {
+
+			List<BulkRow<T>> chunk = new ArrayList<>(chunkSize);
+			Set<String> chunkKeys = new HashSet<>();
+			boolean end = false;
+
+			while (!end) {
+				BulkRow<T> row = null;
+
+				try {
+					T record = reader.next();
+
+					if (record == null) {
+						end = true;
+					} else {
+						row = new BulkRow<>(reader.getRecordNumber(), record, key.apply(record));
+						validate(row, chunkKeys);
+					}
+				} catch (JsonMappingException e) {
+					row = new BulkRow<>(reader.getRecordNumber(), null, null);
+					row.reject(e.getOriginalMessage());
+				} catch (IOException e) {
+					// The rest of the body can not be read
+					row = new BulkRow<>(reader.getRecordNumber() + 1, null, null);
+					row.reject(e instanceof JsonProcessingException ? ((JsonProcessingException) e).getOriginalMessage()
+							: e.getMessage());
+					end = true;
+				}
+
+				if (row != null) {
+					chunk.add(row);
+				}
+
+				if (chunk.size() >= chunkSize || (end && !chunk.isEmpty())) {
+					writeChunk(pending(chunk), writer, uniqueConstraint);
+					writeResults(chunk, results);
+
+					chunk.clear();
+					chunkKeys.clear();
+				}
+			}
+		}
+
+	}
+
+	private <T> void validate(BulkRow<T> row, Set<String> chunkKeys) {
+
+		String violations = validator.validate(row.record).stream()
+				.map(v -> v.getPropertyPath() + " " + v.getMessage()).sorted().collect(Collectors.joining(", "));
+
+		if (!violations.isEmpty()) {
+			row.reject(violations);
+		} else if (!chunkKeys.add(row.getKey())) {
+			row.reject(row.getKey() + " appears more than once in the import.");
+		}
+
+	}
+
+	/**
+	 * Save the rows in one transaction. If the batch breaks a unique index, for
+	 * example because the same key was inserted meanwhile, every row is retried in
+	 * its own transaction so only the conflicting ones fail.
+	 */
+	private <T> void writeChunk(List<BulkRow<T>> rows, Consumer<List<BulkRow<T>>> writer,
+			String uniqueConstraint) {
+
+		if (rows.isEmpty()) {
+			return;
+		}
+
+		try {
+			transactionTemplate.execute(status -> {
+				writer.accept(rows);
+				return null;
+			});
+		} catch (DataIntegrityViolationException e) {
+
+			if (rows.size() > 1) {
+				entityManager.clear();
+				rows.forEach(row -> writeChunk(Collections.singletonList(row), writer, uniqueConstraint));
+				return;
+			}
+
+			BulkRow<T> row = rows.get(0);
+			if (ConstraintViolation.isViolationOf(e, uniqueConstraint)) {
+				row.reject(row.getKey() + " already exists.");
+			} else {
+				logger.error("An error occurred! {}", e.getMessage());
+				row.fail(e.getMessage());
+			}
+		} catch (Exception e) {
+			logger.error("An error occurred! {}", e.getMessage());
+			rows.forEach(row -> row.fail(e.getMessage()));
+		} finally {
+			// Keep the persistence context from growing with the upload
+			entityManager.clear();
+		}
+
+	}
+
+	private <T> void writeResults(List<BulkRow<T>> rows, OutputStream results) throws IOException {
+
+		for (BulkRow<T> row : rows) {
+			results.write(objectMapper.writeValueAsBytes(row.result));
+			results.write('\n');
+		}
+		results.flush();
+
+	}
+
+	private static <T> List<BulkRow<T>> pending(List<BulkRow<T>> rows) {
+		return rows.stream().filter(row -> row.result.getStatus() == 0).collect(Collectors.toList());
+	}
+
+	private static <T> Set<String> keys(List<BulkRow<T>> rows) {
+		return rows.stream().map(BulkRow::getKey).collect(toSet());
+	}
+
+	private static <T> Set<String> values(List<BulkRow<T>> rows, Function<T, String> value) {
+		return rows.stream().map(row -> value.apply(row.record)).collect(toSet());
+	}
+
+	/**
+	 * A record of the body with its result.
+	 */
+	private static class BulkRow<T> {
+
+		private final T record;
+
+		private final BulkRowResultDTO result = new BulkRowResultDTO();
+
+		BulkRow(int recordNumber, T record, String key) {
+			this.record = record;
+			result.setRecord(recordNumber);
+			result.setKey(key);
+		}
+
+		String getKey() {
+			return result.getKey();
+		}
+
+		void created(String message) {
+			setResult(HttpStatus.CREATED, message);
+		}
+
+		void reject(String message) {
+			setResult(HttpStatus.BAD_REQUEST, message);
+		}
+
+		void fail(String message) {
+			setResult(HttpStatus.INTERNAL_SERVER_ERROR, message);
+		}
+
+		private void setResult(HttpStatus status, String message) {
+			result.setStatus(status.value());
+			result.setMessage(message);
+		}
+	}
+}
@@ -0,0 +1,304 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.PersistenceException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.ReadResult;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.GuardedReadService;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.CircuitBreaker;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.DatabaseUnavailableException;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.VirtualThreads;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Implementation for guarded read service. Reads run on a small pool of their
+ * own, so a request thread never waits on the database longer than the read
+ * timeout, and a stalled database fills the pool and queue instead of the web
+ * server threads.
+ * <p>
+ * A last value is served stale while a read refreshes it in the background,
+ * one per key at a time. A read that times out goes on as that refresh. While
+ * the circuit is not closed the reads of a key with a last value do not wait at
+ * all, they start a refresh once the circuit breaker lets one through: the
+ * trial read of the half open circuit is such a refresh. A read that failed is
+ * not repeated at once, the next read of the key tries again. Only data access,
+ * transaction, connection and timeout failures count against the database, any
+ * other exception of the reader is a bug of the caller and is thrown to it.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@Service("GuardedReadService")
+public class GuardedReadServiceImpl implements GuardedReadService {
+
+	// Tagged with resource and result (fresh, stale or unavailable)
+	public static final String READS_METRIC = "insurancecompany.guarded.reads";
+
+	// 0 closed, 1 open, 2 half open
+	public static final String CIRCUIT_STATE_METRIC = "insurancecompany.db.circuit.state";
+
+	// Tagged with the state entered
+	public static final String CIRCUIT_TRANSITIONS_METRIC = "insurancecompany.db.circuit.transitions";
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private TaskScheduler taskScheduler;
+
+	@Value("${insurancecompany.guarded-read.timeout:PT1S}")
+	private Duration timeout;
+
+	@Value("${insurancecompany.guarded-read.failure-threshold:5}")
+	private int failureThreshold;
+
+	@Value("${insurancecompany.guarded-read.open-duration:PT30S}")
+	private Duration openDuration;
+
+	@Value("${insurancecompany.guarded-read.threads:20}")
+	private int threads;
+
+	@Value("${insurancecompany.guarded-read.queue-size:100}")
+	private int queueSize;
+
+	@Value("${insurancecompany.guarded-read.last-values:10000}")
+	private long lastValuesSize;
+
+	@Value("${insurancecompany.guarded-read.max-stale:PT1H}")
+	private Duration maxStale;
+
+	@Value("${insurancecompany.virtual-threads.enabled:false}")
+	private boolean virtualThreads;
+
+	private CircuitBreaker circuitBreaker;
+
+	private ThreadPoolExecutor executor;
+
+	private Cache<List<String>, ReadResult<?>> lastValues;
+
+	// Keys whose last value is being refreshed in the background
+	private final Set<List<String>> refreshing = ConcurrentHashMap.newKeySet();
+
+	public static final Logger logger = LoggerFactory.getLogger(GuardedReadServiceImpl.class);
+
+	@PostConstruct
+	public void init() {
+		circuitBreaker = new CircuitBreaker(failureThreshold, openDuration, this::onTransition);
+		Gauge.builder(CIRCUIT_STATE_METRIC, circuitBreaker, c -> c.getState().ordinal()).register(meterRegistry);
+
+		// Same bound on the reads in flight either way, the queue still sheds the load
+		ThreadFactory threadFactory;
+		if (virtualThreads) {
+			threadFactory = VirtualThreads.factory("guarded-read-");
+		} else {
+			CustomizableThreadFactory platformThreadFactory = new CustomizableThreadFactory("guarded-read-");
+			platformThreadFactory.setDaemon(true);
+			threadFactory = platformThreadFactory;
+		}
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize), threadFactory);
+
+		lastValues = Caffeine.newBuilder().maximumSize(lastValuesSize).expireAfterWrite(maxStale).build();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public <T> ReadResult<T> read(String resource, String key, Supplier<T> reader) {
+
+		return read(resource, key, () -> null, reader);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public <T> ReadResult<T> read(String resource, String key, Supplier<T> cached, Supplier<T> reader) {
+
+		// Cache and catalog hits do not touch the database, they skip the executor
+		T cachedValue = cached.get();
+		if (cachedValue != null) {
+			count(resource, "fresh");
+			return new ReadResult<>(cachedValue, Instant.now(), false);
+		}
+
+		List<String> readKey = Arrays.asList(resource, key);
+
+		// Degraded: a last value is served at once, the database is read in the background
+		if (circuitBreaker.getState() != CircuitBreaker.State.CLOSED
+				&& lastValues.getIfPresent(readKey) != null) {
+			refresh(readKey, reader);
+			return lastValue(resource, readKey, null);
+		}
+
+		if (!circuitBreaker.tryAcquire()) {
+			return lastValue(resource, readKey, null);
+		}
+
+		CompletableFuture<T> read;
+		try {
+			read = CompletableFuture.supplyAsync(reader, executor);
+		} catch (RejectedExecutionException e) {
+			// Every reader is busy and the queue is full: shed the load. A burst of reads
+			// is not a database failure, the reads in flight report how it is doing.
+			circuitBreaker.onIgnored();
+			return lastValue(resource, readKey, e);
+		}
+
+		// Also when the caller stopped waiting, so a late answer refreshes the last value
+		read.thenAccept(value -> keep(readKey, value));
+
+		try {
+			T value = read.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+			circuitBreaker.onSuccess();
+			count(resource, "fresh");
+			return new ReadResult<>(value, Instant.now(), false);
+		} catch (TimeoutException e) {
+			circuitBreaker.onFailure();
+			// The read goes on, it is the refresh of the last value
+			if (refreshing.add(readKey)) {
+				read.whenComplete((value, failure) -> refreshing.remove(readKey));
+			}
+			return lastValue(resource, readKey, e);
+		} catch (ExecutionException e) {
+			if (!isDatabaseFailure(e.getCause())) {
+				circuitBreaker.onIgnored();
+				throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+						: new IllegalStateException(e.getCause());
+			}
+			circuitBreaker.onFailure();
+			return lastValue(resource, readKey, e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			circuitBreaker.onFailure();
+			return lastValue(resource, readKey, e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> ReadResult<T> lastValue(String resource, List<String> readKey, Throwable cause) {
+
+		ReadResult<T> lastValue = (ReadResult<T>) lastValues.getIfPresent(readKey);
+
+		if (lastValue == null) {
+			count(resource, "unavailable");
+			throw new DatabaseUnavailableException(
+					"The " + resource + " " + readKey.get(1) + " can not be read right now, please try again later",
+					cause);
+		}
+
+		count(resource, "stale");
+		return lastValue;
+	}
+
+	// Read again in the background, if no read of the key is running and the circuit allows it
+	private <T> void refresh(List<String> readKey, Supplier<T> reader) {
+
+		if (!refreshing.add(readKey)) {
+			return;
+		}
+		if (!circuitBreaker.tryAcquire()) {
+			refreshing.remove(readKey);
+			return;
+		}
+
+		CompletableFuture<T> read;
+		try {
+			read = CompletableFuture.supplyAsync(reader, executor);
+		} catch (RejectedExecutionException e) {
+			refreshing.remove(readKey);
+			circuitBreaker.onIgnored();
+			return;
+		}
+
+		// Reported once, by the read or by the timeout, whichever comes first
+		AtomicBoolean reported = new AtomicBoolean();
+
+		taskScheduler.schedule(() -> {
+			if (reported.compareAndSet(false, true)) {
+				circuitBreaker.onFailure();
+			}
+		}, Instant.now().plus(timeout));
+
+		read.whenComplete((value, failure) -> {
+			refreshing.remove(readKey);
+
+			if (failure == null) {
+				keep(readKey, value);
+				if (reported.compareAndSet(false, true)) {
+					circuitBreaker.onSuccess();
+				}
+			} else if (reported.compareAndSet(false, true)) {
+				if (isDatabaseFailure(failure)) {
+					circuitBreaker.onFailure();
+				} else {
+					logger.error("An error occurred! {}", failure.getMessage());
+					circuitBreaker.onIgnored();
+				}
+			}
+		});
+	}
+
+	private void keep(List<String> readKey, Object value) {
+		if (value != null) {
+			lastValues.put(readKey, new ReadResult<>(value, Instant.now(), true));
+		}
+	}
+
+	// Anywhere in the causes, the repositories and the transactions wrap the driver exceptions
+	private static boolean isDatabaseFailure(Throwable exception) {
+		for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+			if (cause instanceof DataAccessException || cause instanceof TransactionException
+					|| cause instanceof PersistenceException || cause instanceof SQLException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void onTransition(CircuitBreaker.State state) {
+		logger.warn("Database circuit breaker is now {}", state);
+		meterRegistry.counter(CIRCUIT_TRANSITIONS_METRIC, "state", state.name()).increment();
+	}
+
+	private void count(String resource, String result) {
+		meterRegistry.counter(READS_METRIC, "resource", resource, "result", result).increment();
+	}
+}
@@ -1,34 +1,48 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
 
-import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
-
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
-import org.modelmapper.ModelMapper;
-import org.modelmapper.TypeToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Pageable;
-import org.springframework.hateoas.Resources;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.idosinchuk.architecturechallenge.insurancecompany.CacheConfig;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountStrategy;
 import com.idosinchuk.architecturechallenge.insurancecompany.common.CustomMessage;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.MergePatch;
 import com.idosinchuk.architecturechallenge.insurancecompany.controller.HolderController;
-import com.idosinchuk.architecturechallenge.insurancecompany.controller.ProductController;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.HolderRequestDTO;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.HolderResponseDTO;
 import com.idosinchuk.architecturechallenge.insurancecompany.entity.HolderEntity;
 import com.idosinchuk.architecturechallenge.insurancecompany.entity.HolderHistoricalEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.mapper.HolderMapper;
 import com.idosinchuk.architecturechallenge.insurancecompany.repository.HolderHistoricalRepository;
 import com.idosinchuk.architecturechallenge.insurancecompany.repository.HolderRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.MessageResources;
 import com.idosinchuk.architecturechallenge.insurancecompany.service.HolderService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PartialUpdateService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PolicyCacheService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.ResponseCacheService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.SingleFlightService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.TotalCountService;
 import com.idosinchuk.architecturechallenge.insurancecompany.util.ArrayListCustomMessage;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.ConstraintViolation;
 import com.idosinchuk.architecturechallenge.insurancecompany.util.CustomErrorType;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.KeysetCursor;
 
 /**
  * Implementation for holder service
@@ -39,6 +53,9 @@ import com.idosinchuk.architecturechallenge.insurancecompany.util.CustomErrorTyp
 @Service("HolderService")
 public class HolderServiceImpl implements HolderService {
 
+	// The passport number identifies the holder and is never updated
+	private static final String[] UPDATABLE_FIELDS = { "holderName", "holderSurname", "phoneNumber", "email" };
+
 	@Autowired
 	private HolderRepository holderRepository;
 
@@ -46,68 +63,120 @@ public class HolderServiceImpl implements HolderService {
 	private HolderHistoricalRepository holderHistoricalRepository;
 
 	@Autowired
-	private ModelMapper modelMapper;
+	private PolicyCacheService policyCacheService;
+
+	@Autowired
+	private ResponseCacheService responseCacheService;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Autowired
+	private HolderMapper holderMapper;
+
+	@Autowired
+	private SingleFlightService singleFlightService;
+
+	@Autowired
+	private TotalCountService totalCountService;
+
+	@Autowired
+	private PartialUpdateService partialUpdateService;
 
-	public static final Logger logger = LoggerFactory.getLogger(ProductServiceImpl.class);
+	public static final Logger logger = LoggerFactory.getLogger(HolderServiceImpl.class);
 
 	/**
 	 * {@inheritDoc}
 	 */
-	public Page<HolderResponseDTO> getAllHolders(Pageable pageable) {
+	public Slice<HolderResponseDTO> getAllHolders(Pageable pageable, CountStrategy countStrategy) {
 
-		Page<HolderEntity> entityResponse = holderRepository.findAll(pageable);
+		// Read the page without count query, the total depends on the strategy
+		Slice<HolderEntity> entityResponse = holderRepository.findAllBy(pageable);
 
 		// Convert Entity response to DTO
-		return modelMapper.map(entityResponse, new TypeToken<Page<HolderResponseDTO>>() {
-		}.getType());
+		return totalCountService.withTotal(entityResponse.map(holderMapper::toResponse), "holder", countStrategy,
+				holderRepository::count);
 
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
+	public Slice<HolderResponseDTO> getAllHoldersAfter(int afterId, int size) {
+
+		Slice<HolderEntity> entityResponse = holderRepository.findByIdGreaterThan(afterId,
+				KeysetCursor.pageRequest(size));
+
+		// Convert Entity response to DTO
+		return entityResponse.map(holderMapper::toResponse);
+
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public HolderResponseDTO getCachedHolder(String passportNumber) {
+
+		return cacheManager.getCache(CacheConfig.HOLDERS).get(passportNumber, HolderResponseDTO.class);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Cacheable(cacheNames = CacheConfig.HOLDERS, key = "#passportNumber", unless = "#result == null")
 	public HolderResponseDTO getHolder(String passportNumber) {
 
-		HolderEntity entityResponse = holderRepository.findByPassportNumber(passportNumber);
+		return singleFlightService.load("holder", passportNumber,
+				() -> holderMapper.toResponse(holderRepository.findByPassportNumber(passportNumber)));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public List<HolderResponseDTO> getHolders(Collection<String> passportNumbers) {
+
+		List<HolderEntity> entityResponse = holderRepository.findByPassportNumberIn(passportNumbers);
+
+		// Convert Entity response to DTO
+		return entityResponse.stream().map(holderMapper::toResponse).collect(Collectors.toList());
 
-		return modelMapper.map(entityResponse, HolderResponseDTO.class);
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
-	@Transactional
 	public ResponseEntity<?> addHolder(HolderRequestDTO holderRequestDTO) {
 
-		Resources<CustomMessage> resource = null;
+		Object resource = null;
 
 		try {
 			List<CustomMessage> customMessageList = null;
 
-			// Check if productCode exists in DB
-			HolderEntity holderEntity = holderRepository.findByPassportNumber(holderRequestDTO.getPassportNumber());
+			HolderEntity entityRequest = holderMapper.toEntity(holderRequestDTO);
+
+			// No read first: the unique index on passport number rejects duplicates.
+			// The insert runs in its own transaction so the violation can be answered.
+			holderRepository.saveAndFlush(entityRequest);
+
+			customMessageList = ArrayListCustomMessage.setMessage("Created new holder", HttpStatus.CREATED);
+
+			resource = MessageResources.of(customMessageList, HolderController.class);
+
+		} catch (DataIntegrityViolationException e) {
 
 			// If exists
-			if (holderEntity != null) {
-				customMessageList = ArrayListCustomMessage.setMessage(
+			if (ConstraintViolation.isViolationOf(e, HolderEntity.UK_PASSPORT_NUMBER)) {
+				List<CustomMessage> customMessageList = ArrayListCustomMessage.setMessage(
 						"Passport number" + holderRequestDTO.getPassportNumber() + " already exists.",
 						HttpStatus.BAD_REQUEST);
 
-				resource = new Resources<>(customMessageList);
-				resource.add(linkTo(HolderController.class).withSelfRel());
+				resource = MessageResources.of(customMessageList, HolderController.class);
 
 				return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
 			}
 
-			HolderEntity entityRequest = modelMapper.map(holderRequestDTO, HolderEntity.class);
-
-			holderRepository.save(entityRequest);
-
-			customMessageList = ArrayListCustomMessage.setMessage("Created new holder", HttpStatus.CREATED);
-
-			resource = new Resources<>(customMessageList);
-			resource.add(linkTo(ProductController.class).withSelfRel());
-
+			logger.error("An error occurred! {}", e.getMessage());
+			return CustomErrorType.returnResponsEntityError(e.getMessage());
 		} catch (Exception e) {
 			logger.error("An error occurred! {}", e.getMessage());
 			return CustomErrorType.returnResponsEntityError(e.getMessage());
@@ -121,12 +190,26 @@ public class HolderServiceImpl implements HolderService {
 	 * {@inheritDoc}
 	 */
 	@Transactional
-	public ResponseEntity<?> updateHolder(String passportNumber, HolderRequestDTO holderRequestDTO) {
+	@CacheEvict(cacheNames = CacheConfig.HOLDERS, key = "#passportNumber")
+	public ResponseEntity<?> updateHolder(String passportNumber, MergePatch<HolderRequestDTO> holderPatch,
+			Set<Integer> versions) {
 
-		Resources<CustomMessage> resource = null;
+		Object resource = null;
 
 		try {
 
+			// Only the fields present in the patch are written. The passport number will
+			// always be the same, so it is not one of them.
+			Map<String, Object> changes = holderPatch.valuesOf(UPDATABLE_FIELDS);
+
+			if (changes.isEmpty()) {
+				return badRequest("There are no changes, please try again");
+			}
+
+			if (versions != null) {
+				return updateHolderIfVersion(passportNumber, changes, versions);
+			}
+
 			List<CustomMessage> customMessageList = null;
 
 			// Find product by passportNumber for check if exists in DB
@@ -137,43 +220,29 @@ public class HolderServiceImpl implements HolderService {
 
 				customMessageList = ArrayListCustomMessage.setMessage("Patch holder process", HttpStatus.OK);
 
-				// The passport number will always be the same, so we do not allow it to be
-				// updated, for them we overwrite the field with the original value.
-				holderRequestDTO.setPassportNumber(passportNumber);
-				holderRequestDTO.setId(holderEntity.getId());
-
-				HolderEntity entityRequest = modelMapper.map(holderRequestDTO, HolderEntity.class);
+				// Check if there are changes. The holder is dynamic-update, the flush writes
+				// the changed columns only and fails if another update commits meanwhile.
+				if (partialUpdateService.apply(holderEntity, changes)) {
+					// The stored bodies are of the old version
+					responseCacheService.evict("holder", passportNumber);
 
-				// Check if there are changes
-				if (!holderEntity.equals(entityRequest)) {
-					holderRepository.save(entityRequest);
+					// Cached policies embed this holder
+					policyCacheService.evictPoliciesOfHolder(passportNumber);
 
 					// Save the holder information in a historical table
-					HolderHistoricalEntity holderHistoricalEntity = modelMapper.map(holderRequestDTO,
-							HolderHistoricalEntity.class);
+					HolderHistoricalEntity holderHistoricalEntity = holderMapper.toHistorical(holderEntity);
 					holderHistoricalRepository.save(holderHistoricalEntity);
 				} else {
-					customMessageList = ArrayListCustomMessage.setMessage("There are no changes, please try again",
-							HttpStatus.BAD_REQUEST);
-
-					resource = new Resources<>(customMessageList);
-					resource.add(linkTo(HolderController.class).withSelfRel());
-
-					return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
+					return badRequest("There are no changes, please try again");
 				}
 			} else {
-				customMessageList = ArrayListCustomMessage
-						.setMessage("Passport number " + passportNumber + " Not Found!", HttpStatus.BAD_REQUEST);
-
-				resource = new Resources<>(customMessageList);
-				resource.add(linkTo(HolderController.class).withSelfRel());
-
-				return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
+				return badRequest("Passport number " + passportNumber + " Not Found!");
 			}
 
-			resource = new Resources<>(customMessageList);
-			resource.add(linkTo(HolderController.class).slash(passportNumber).withSelfRel());
+			resource = MessageResources.of(customMessageList, HolderController.class, passportNumber);
 
+		} catch (IllegalArgumentException e) {
+			return badRequest(e.getMessage());
 		} catch (Exception e) {
 			logger.error("An error occurred! {}", e.getMessage());
 			return CustomErrorType.returnResponsEntityError(e.getMessage());
@@ -183,4 +252,55 @@ public class HolderServiceImpl implements HolderService {
 		return new ResponseEntity<>(resource, HttpStatus.OK);
 
 	}
+
+	private ResponseEntity<?> updateHolderIfVersion(String passportNumber, Map<String, Object> changes,
+			Set<Integer> versions) {
+
+		Object resource = null;
+
+		List<CustomMessage> customMessageList = null;
+
+		// No read first: one update of the patched columns, only for the given versions
+		if (partialUpdateService.update(HolderEntity.class, "passportNumber", passportNumber, changes,
+				versions) == 0) {
+
+			if (!holderRepository.existsByPassportNumber(passportNumber)) {
+				return badRequest("Passport number " + passportNumber + " Not Found!");
+			}
+
+			customMessageList = ArrayListCustomMessage.setMessage(
+					"Passport number " + passportNumber + " was modified, please read it again",
+					HttpStatus.PRECONDITION_FAILED);
+
+			resource = MessageResources.of(customMessageList, HolderController.class, passportNumber);
+
+			return new ResponseEntity<>(resource, HttpStatus.PRECONDITION_FAILED);
+		}
+
+		// The stored bodies are of the old version
+		responseCacheService.evict("holder", passportNumber);
+
+		// Cached policies embed this holder
+		policyCacheService.evictPoliciesOfHolder(passportNumber);
+
+		// The historical row has every column, so the updated holder is read back
+		holderHistoricalRepository
+				.save(holderMapper.toHistorical(holderRepository.findByPassportNumber(passportNumber)));
+
+		customMessageList = ArrayListCustomMessage.setMessage("Patch holder process", HttpStatus.OK);
+
+		resource = MessageResources.of(customMessageList, HolderController.class, passportNumber);
+
+		return new ResponseEntity<>(resource, HttpStatus.OK);
+
+	}
+
+	private static ResponseEntity<?> badRequest(String message) {
+
+		Object resource = MessageResources.of(ArrayListCustomMessage.setMessage(message, HttpStatus.BAD_REQUEST),
+				HolderController.class);
+
+		return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
+
+	}
 }
@@ -0,0 +1,64 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import java.time.Duration;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.StoredResponse;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.IdempotencyService;
+
+/**
+ * Implementation for idempotency service keeping the keys in process. A retry
+ * reaching another instance is executed again, see
+ * {@link JdbcIdempotencyServiceImpl} to share them.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@Service("IdempotencyService")
+@ConditionalOnProperty(name = "insurancecompany.idempotency.store", havingValue = "memory", matchIfMissing = true)
+public class IdempotencyServiceImpl implements IdempotencyService {
+
+	@Value("${insurancecompany.idempotency.ttl:PT24H}")
+	private Duration ttl;
+
+	@Value("${insurancecompany.idempotency.max-keys:10000}")
+	private long maxKeys;
+
+	private Cache<String, StoredResponse> responses;
+
+	@PostConstruct
+	public void init() {
+		responses = Caffeine.newBuilder().maximumSize(maxKeys).expireAfterWrite(ttl).build();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public StoredResponse reserve(String key, String fingerprint) {
+
+		return responses.asMap().putIfAbsent(key, StoredResponse.inProgress(fingerprint));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void complete(String key, StoredResponse response) {
+
+		responses.put(key, response);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void release(String key) {
+
+		responses.invalidate(key);
+	}
+}
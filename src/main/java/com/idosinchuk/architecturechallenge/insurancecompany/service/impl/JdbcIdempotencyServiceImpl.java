@@ -0,0 +1,120 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.common.StoredResponse;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.IdempotencyService;
+
+/**
+ * Implementation for idempotency service keeping the keys in the
+ * idempotency_key table, shared by all the instances. The primary key decides
+ * which request reserves a key. Every statement commits on its own, so a
+ * reservation is seen by the other instances at once.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@Service("IdempotencyService")
+@ConditionalOnProperty(name = "insurancecompany.idempotency.store", havingValue = "jdbc")
+public class JdbcIdempotencyServiceImpl implements IdempotencyService {
+
+	private static final RowMapper<StoredResponse> STORED_RESPONSE = (rs, rowNum) -> new StoredResponse(
+			rs.getString("fingerprint"), rs.getInt("status"), rs.getString("content_type"), rs.getString("location"),
+			rs.getString("entity_tag"), rs.getBytes("body"), rs.getTimestamp("stored_at").toInstant());
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Value("${insurancecompany.idempotency.ttl:PT24H}")
+	private Duration ttl;
+
+	@Value("${insurancecompany.idempotency.in-progress-timeout:PT1M}")
+	private Duration inProgressTimeout;
+
+	public static final Logger logger = LoggerFactory.getLogger(JdbcIdempotencyServiceImpl.class);
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public StoredResponse reserve(String key, String fingerprint) {
+
+		try {
+			jdbcTemplate.update(
+					"INSERT INTO idempotency_key (idempotency_key, fingerprint, status, stored_at) VALUES (?, ?, ?, ?)",
+					key, fingerprint, StoredResponse.IN_PROGRESS, Timestamp.from(Instant.now()));
+			return null;
+
+		} catch (DuplicateKeyException e) {
+			List<StoredResponse> stored = jdbcTemplate.query(
+					"SELECT fingerprint, status, content_type, location, entity_tag, body, stored_at "
+							+ "FROM idempotency_key WHERE idempotency_key = ?",
+					STORED_RESPONSE, key);
+
+			if (stored.isEmpty()) {
+				// Released meanwhile
+				return reserve(key, fingerprint);
+			}
+
+			if (isStale(stored.get(0))) {
+				// Expired and not purged yet, or left in progress by an instance that
+				// stopped. Only one of the requests deleting this row reserves the key.
+				jdbcTemplate.update("DELETE FROM idempotency_key WHERE idempotency_key = ? AND stored_at = ?", key,
+						Timestamp.from(stored.get(0).getStoredAt()));
+				return reserve(key, fingerprint);
+			}
+
+			return stored.get(0);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void complete(String key, StoredResponse response) {
+
+		jdbcTemplate.update(
+				"UPDATE idempotency_key SET status = ?, content_type = ?, location = ?, entity_tag = ?, body = ?, "
+						+ "stored_at = ? WHERE idempotency_key = ?",
+				response.getStatus(), response.getContentType(), response.getLocation(), response.getEntityTag(),
+				response.getBody(), Timestamp.from(response.getStoredAt()), key);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void release(String key) {
+
+		jdbcTemplate.update("DELETE FROM idempotency_key WHERE idempotency_key = ?", key);
+	}
+
+	/**
+	 * Delete the keys older than the TTL, so the table stays bounded.
+	 */
+	@Scheduled(fixedDelayString = "${insurancecompany.idempotency.purge-interval:PT10M}")
+	public void purge() {
+
+		int purged = jdbcTemplate.update("DELETE FROM idempotency_key WHERE stored_at < ?",
+				Timestamp.from(Instant.now().minus(ttl)));
+
+		logger.debug("Purged {} idempotency keys", purged);
+	}
+
+	private boolean isStale(StoredResponse stored) {
+		Duration age = Duration.between(stored.getStoredAt(), Instant.now());
+		return age.compareTo(stored.isInProgress() ? inProgressTimeout : ttl) > 0;
+	}
+}
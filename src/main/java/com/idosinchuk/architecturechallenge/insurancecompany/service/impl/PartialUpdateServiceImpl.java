@@ -0,0 +1,78 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Root;
+
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.stereotype.Service;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PartialUpdateService;
+
+/**
+ * Implementation for partial update service. Every entity has its version in
+ * the version attribute.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@Service("PartialUpdateService")
+public class PartialUpdateServiceImpl implements PartialUpdateService {
+
+	private static final String VERSION = "version";
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public <T> int update(Class<T> entityClass, String keyAttribute, Object key, Map<String, Object> attributes,
+			Collection<Integer> versions) {
+
+		// No row has none of the versions
+		if (versions.isEmpty()) {
+			return 0;
+		}
+
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CriteriaUpdate<T> update = criteriaBuilder.createCriteriaUpdate(entityClass);
+		Root<T> root = update.from(entityClass);
+
+		attributes.forEach(update::set);
+
+		Path<Integer> versionPath = root.get(VERSION);
+		update.set(versionPath, criteriaBuilder.sum(versionPath, 1));
+
+		update.where(criteriaBuilder.equal(root.get(keyAttribute), key),
+				versionPath.in(versions));
+
+		return entityManager.createQuery(update).executeUpdate();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean apply(Object entity, Map<String, Object> attributes) {
+
+		BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(entity);
+		boolean changed = false;
+
+		for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+			if (!Objects.equals(wrapper.getPropertyValue(attribute.getKey()), attribute.getValue())) {
+				wrapper.setPropertyValue(attribute.getKey(), attribute.getValue());
+				changed = true;
+			}
+		}
+
+		return changed;
+	}
+}
@@ -0,0 +1,65 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.CacheConfig;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.PolicyRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PolicyCacheService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.ResponseCacheService;
+
+/**
+ * Implementation for policy cache service. Only the policies pointing to the
+ * changed holder or vehicle are evicted, a few each. A product is shared by a
+ * large part of the policies, so a product change clears the policies without
+ * looking them up.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@Service("PolicyCacheService")
+public class PolicyCacheServiceImpl implements PolicyCacheService {
+
+	@Autowired
+	private PolicyRepository policyRepository;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Autowired
+	private ResponseCacheService responseCacheService;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void evictPoliciesOfProduct(String productCode) {
+		cacheManager.getCache(CacheConfig.POLICIES).clear();
+		responseCacheService.evictAll("policy");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void evictPoliciesOfHolder(String passportNumber) {
+		evict(policyRepository.findPolicyCodesByPassportNumber(passportNumber));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void evictPoliciesOfVehicle(String licensePlate) {
+		evict(policyRepository.findPolicyCodesByLicensePlate(licensePlate));
+	}
+
+	private void evict(List<String> policyCodes) {
+		Cache policies = cacheManager.getCache(CacheConfig.POLICIES);
+		for (String policyCode : policyCodes) {
+			policies.evict(policyCode);
+			responseCacheService.evict("policy", policyCode);
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.IdGenerator;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PolicyCodeService;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.SnowflakeIdGenerator;
+
+/**
+ * Implementation for policy code service. Codes are Snowflake ids, the node of
+ * the instance is allocated once at startup and every code after that is
+ * generated in memory.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@Service("PolicyCodeService")
+public class PolicyCodeServiceImpl implements PolicyCodeService {
+
+	// Row of the id generator table counting the instances started
+	private static final String NODE_SEQUENCE = "policy_code_node";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Value("${insurancecompany.policy-code.server-assigned:false}")
+	private boolean serverAssigned;
+
+	// Negative to allocate it from the database
+	@Value("${insurancecompany.policy-code.node:-1}")
+	private int node;
+
+	private SnowflakeIdGenerator generator;
+
+	public static final Logger logger = LoggerFactory.getLogger(PolicyCodeServiceImpl.class);
+
+	@PostConstruct
+	public void init() {
+		if (serverAssigned) {
+			if (node < 0) {
+				node = allocateNode();
+			}
+			generator = new SnowflakeIdGenerator(node);
+
+			logger.info("Policy codes are generated as node {}", node);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean isServerAssigned() {
+
+		return serverAssigned;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String nextPolicyCode() {
+
+		if (generator == null) {
+			throw new IllegalStateException("Policy codes are assigned by the clients");
+		}
+		return generator.nextCode();
+	}
+
+	/**
+	 * Every startup takes the next node, round robin. Two instances only share a
+	 * node if one of them keeps running while {@link SnowflakeIdGenerator#MAX_NODES}
+	 * others start.
+	 */
+	private int allocateNode() {
+
+		return transactionTemplate.execute(status -> {
+			// The update locks the row until the commit, so the value read is ours
+			jdbcTemplate.update("UPDATE " + IdGenerator.TABLE + " SET " + IdGenerator.VALUE_COLUMN + " = "
+					+ IdGenerator.VALUE_COLUMN + " + 1 WHERE " + IdGenerator.NAME_COLUMN + " = ?", NODE_SEQUENCE);
+
+			long started = jdbcTemplate.queryForObject("SELECT " + IdGenerator.VALUE_COLUMN + " FROM "
+					+ IdGenerator.TABLE + " WHERE " + IdGenerator.NAME_COLUMN + " = ?", Long.class, NODE_SEQUENCE);
+
+			return (int) (started % SnowflakeIdGenerator.MAX_NODES);
+		});
+	}
+}
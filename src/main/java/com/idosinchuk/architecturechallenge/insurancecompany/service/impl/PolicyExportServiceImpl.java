@@ -0,0 +1,190 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvFactory;
+import com.fasterxml.jackson.dataformat.csv.CsvGenerator;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.BulkFormat;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PolicyExportService;
+
+/**
+ * Implementation for policy export service. One forward-only, read-only cursor
+ * over the policies joined with their references, every row is written to the
+ * output as soon as it is read and nothing is kept.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@Service("PolicyExportService")
+public class PolicyExportServiceImpl implements PolicyExportService {
+
+	// The CSV columns follow the order of the select
+	private static final String EXPORT_QUERY = "SELECT p.id, p.policy_code, p.cost, "
+			+ "pr.id, pr.product_name, pr.product_code, "
+			+ "h.id, h.holder_name, h.holder_surname, h.phone_number, h.email, h.passport_number, "
+			+ "v.id, v.brand, v.license_plate FROM policy p "
+			+ "LEFT JOIN product pr ON pr.id = p.product_id LEFT JOIN holder h ON h.id = p.holder_id "
+			+ "LEFT JOIN vehicle v ON v.id = p.vehicle_id ORDER BY p.id";
+
+	private static final CsvSchema CSV_SCHEMA = CsvSchema.builder().addColumn("id").addColumn("policyCode")
+			.addColumn("cost").addColumn("productId").addColumn("productName").addColumn("productCode")
+			.addColumn("holderId").addColumn("holderName").addColumn("holderSurname").addColumn("phoneNumber")
+			.addColumn("email").addColumn("passportNumber").addColumn("vehicleId").addColumn("brand")
+			.addColumn("licensePlate").build().withHeader();
+
+	private static final CsvFactory CSV_FACTORY = new CsvFactory();
+
+	private static final String MYSQL = "MySQL";
+
+	private static final String CURSOR_FETCH = "usecursorfetch=true";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Value("${insurancecompany.export.fetch-size:1000}")
+	private int fetchSize;
+
+	public static final Logger logger = LoggerFactory.getLogger(PolicyExportServiceImpl.class);
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void exportPolicies(BulkFormat format, OutputStream out) throws IOException {
+
+		try (JsonGenerator generator = createGenerator(format, out)) {
+
+			RowCallbackHandler rowWriter = format == BulkFormat.CSV ? rs -> writeCsvRow(rs, generator)
+					: rs -> writeJsonRow(rs, generator);
+
+			jdbcTemplate.query(this::openCursor, rowWriter);
+
+		} catch (UncheckedIOException e) {
+			// The client went away, the cursor is already closed
+			throw e.getCause();
+		}
+
+	}
+
+	PreparedStatement openCursor(Connection connection) throws SQLException {
+
+		PreparedStatement statement = connection.prepareStatement(EXPORT_QUERY, ResultSet.TYPE_FORWARD_ONLY,
+				ResultSet.CONCUR_READ_ONLY);
+
+		// Rows fetched per round trip instead of the whole result at once
+		statement.setFetchSize(fetchSizeOf(connection.getMetaData()));
+
+		return statement;
+	}
+
+	// MySQL Connector/J reads the whole result into memory whatever the fetch size,
+	// unless the url asks for a server cursor. Otherwise it streams row by row only
+	// with Integer.MIN_VALUE.
+	private int fetchSizeOf(DatabaseMetaData metaData) throws SQLException {
+
+		if (fetchSize > 0 && MYSQL.equals(metaData.getDatabaseProductName())
+				&& !metaData.getURL().toLowerCase().contains(CURSOR_FETCH)) {
+			return Integer.MIN_VALUE;
+		}
+
+		return fetchSize;
+	}
+
+	private JsonGenerator createGenerator(BulkFormat format, OutputStream out) throws IOException {
+
+		JsonGenerator generator;
+
+		if (format == BulkFormat.CSV) {
+			CsvGenerator csvGenerator = CSV_FACTORY.createGenerator(out);
+			csvGenerator.setSchema(CSV_SCHEMA);
+			generator = csvGenerator;
+		} else {
+			generator = objectMapper.getFactory().createGenerator(out);
+			generator.setRootValueSeparator(null);
+		}
+
+		// The response stream is closed by the container
+		return generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+	}
+
+	private void writeCsvRow(ResultSet rs, JsonGenerator generator) throws SQLException {
+
+		try {
+			generator.writeStartArray();
+			for (int column = 1; column <= CSV_SCHEMA.size(); column++) {
+				generator.writeString(rs.getString(column));
+			}
+			generator.writeEndArray();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+	}
+
+	private void writeJsonRow(ResultSet rs, JsonGenerator generator) throws SQLException {
+
+		// Same fields as PolicyResponseDTO
+		try {
+			generator.writeStartObject();
+			generator.writeNumberField("id", rs.getInt(1));
+			generator.writeStringField("policyCode", rs.getString(2));
+			generator.writeNumberField("cost", rs.getBigDecimal(3));
+
+			int productId = rs.getInt(4);
+			if (!rs.wasNull()) {
+				generator.writeObjectFieldStart("product");
+				generator.writeNumberField("id", productId);
+				generator.writeStringField("productName", rs.getString(5));
+				generator.writeStringField("productCode", rs.getString(6));
+				generator.writeEndObject();
+			}
+
+			int holderId = rs.getInt(7);
+			if (!rs.wasNull()) {
+				generator.writeObjectFieldStart("holder");
+				generator.writeNumberField("id", holderId);
+				generator.writeStringField("holderName", rs.getString(8));
+				generator.writeStringField("holderSurname", rs.getString(9));
+				generator.writeStringField("phoneNumber", rs.getString(10));
+				generator.writeStringField("email", rs.getString(11));
+				generator.writeStringField("passportNumber", rs.getString(12));
+				generator.writeEndObject();
+			}
+
+			int vehicleId = rs.getInt(13);
+			if (!rs.wasNull()) {
+				generator.writeObjectFieldStart("vehicle");
+				generator.writeNumberField("id", vehicleId);
+				generator.writeStringField("brand", rs.getString(14));
+				generator.writeStringField("licensePlate", rs.getString(15));
+				generator.writeEndObject();
+			}
+
+			generator.writeEndObject();
+			generator.writeRaw('\n');
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+	}
+}
@@ -1,38 +1,59 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
 
-import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
-
+import java.net.URI;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
-import org.modelmapper.ModelMapper;
-import org.modelmapper.TypeToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Pageable;
-import org.springframework.hateoas.Resources;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.idosinchuk.architecturechallenge.insurancecompany.CacheConfig;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountStrategy;
 import com.idosinchuk.architecturechallenge.insurancecompany.common.CustomMessage;
-import com.idosinchuk.architecturechallenge.insurancecompany.controller.HolderController;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.MergePatch;
 import com.idosinchuk.architecturechallenge.insurancecompany.controller.PolicyController;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyRequestDTO;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.ProductResponseDTO;
 import com.idosinchuk.architecturechallenge.insurancecompany.entity.HolderEntity;
 import com.idosinchuk.architecturechallenge.insurancecompany.entity.PolicyEntity;
-import com.idosinchuk.architecturechallenge.insurancecompany.entity.ProductEntity;
 import com.idosinchuk.architecturechallenge.insurancecompany.entity.VehicleEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.mapper.PolicyMapper;
 import com.idosinchuk.architecturechallenge.insurancecompany.repository.HolderRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.PolicyReferences;
 import com.idosinchuk.architecturechallenge.insurancecompany.repository.PolicyRepository;
 import com.idosinchuk.architecturechallenge.insurancecompany.repository.ProductRepository;
 import com.idosinchuk.architecturechallenge.insurancecompany.repository.VehicleRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.MessageResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PartialUpdateService;
 import com.idosinchuk.architecturechallenge.insurancecompany.service.PolicyService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.ProductCatalogService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.ResponseCacheService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.SingleFlightService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.TotalCountService;
 import com.idosinchuk.architecturechallenge.insurancecompany.util.ArrayListCustomMessage;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.ConstraintViolation;
 import com.idosinchuk.architecturechallenge.insurancecompany.util.CustomErrorType;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.KeysetCursor;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.Links;
 
 /**
  * Implementation for policy service
@@ -43,12 +64,18 @@ import com.idosinchuk.architecturechallenge.insurancecompany.util.CustomErrorTyp
 @Service("PolicyService")
 public class PolicyServiceImpl implements PolicyService {
 
+	// The policy code identifies the policy and is never updated
+	private static final String[] UPDATABLE_FIELDS = { "cost", "productCode", "passportNumber", "licensePlate" };
+
 	@Autowired
 	private PolicyRepository policyRepository;
 
 	@Autowired
 	private ProductRepository productRepository;
 
+	@Autowired
+	private ProductCatalogService productCatalogService;
+
 	@Autowired
 	private VehicleRepository vehicleRepository;
 
@@ -56,92 +83,162 @@ public class PolicyServiceImpl implements PolicyService {
 	private HolderRepository holderRepository;
 
 	@Autowired
-	private ModelMapper modelMapper;
+	private PolicyMapper policyMapper;
+
+	@Autowired
+	private SingleFlightService singleFlightService;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private TotalCountService totalCountService;
+
+	@Autowired
+	private PartialUpdateService partialUpdateService;
+
+	@Autowired
+	private ResponseCacheService responseCacheService;
+
+	@Autowired
+	private CacheManager cacheManager;
 
 	public static final Logger logger = LoggerFactory.getLogger(PolicyServiceImpl.class);
 
 	/**
 	 * {@inheritDoc}
 	 */
-	public Page<PolicyResponseDTO> getAllPolicies(Pageable pageable) {
+	public Slice<PolicyResponseDTO> getAllPolicies(Pageable pageable, CountStrategy countStrategy) {
 
-		Page<PolicyEntity> entityResponse = policyRepository.findAll(pageable);
+		// Read the page without count query, the total depends on the strategy
+		Slice<PolicyEntity> entityResponse = policyRepository.findAllBy(pageable);
 
 		// Convert Entity response to DTO
-		return modelMapper.map(entityResponse, new TypeToken<Page<PolicyResponseDTO>>() {
-		}.getType());
+		return totalCountService.withTotal(entityResponse.map(policyMapper::toResponse), "policy", countStrategy,
+				policyRepository::count);
 
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
+	public Slice<PolicyResponseDTO> getAllPoliciesAfter(int afterId, int size) {
+
+		Slice<PolicyEntity> entityResponse = policyRepository.findByIdGreaterThan(afterId,
+				KeysetCursor.pageRequest(size));
+
+		// Convert Entity response to DTO
+		return entityResponse.map(policyMapper::toResponse);
+
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public PolicyResponseDTO getCachedPolicy(String policyCode) {
+
+		return cacheManager.getCache(CacheConfig.POLICIES).get(policyCode, PolicyResponseDTO.class);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Cacheable(cacheNames = CacheConfig.POLICIES, key = "#policyCode", unless = "#result == null")
 	public PolicyResponseDTO getPolicies(String policyCode) {
 
-		PolicyEntity entityResponse = policyRepository.findByPolicyCode(policyCode);
+		// Concurrent requests for the same policy share one query and one DTO
+		return singleFlightService.load("policy", policyCode,
+				() -> policyMapper.toResponse(policyRepository.findByPolicyCode(policyCode)));
+
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public List<PolicyResponseDTO> getPolicies(Collection<String> policyCodes) {
 
-		return modelMapper.map(entityResponse, PolicyResponseDTO.class);
+		List<PolicyEntity> entityResponse = policyRepository.findByPolicyCodeIn(policyCodes);
+
+		// Convert Entity response to DTO
+		return entityResponse.stream().map(policyMapper::toResponse).collect(Collectors.toList());
 
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
-	@Transactional
 	public ResponseEntity<?> addPolicy(PolicyRequestDTO policyRequestDTO) {
 
-		Resources<CustomMessage> resource = null;
+		Object resource = null;
+
+		HttpHeaders headers = new HttpHeaders();
 
 		try {
 			List<CustomMessage> customMessageList = null;
 
-			PolicyEntity entityRequest = modelMapper.map(policyRequestDTO, PolicyEntity.class);
+			PolicyEntity entityRequest = policyMapper.toEntity(policyRequestDTO);
 
-			PolicyEntity policyEntity = policyRepository.findByPolicyCode(policyRequestDTO.getPolicyCode());
+			// From the in-memory catalog, no query
+			ProductResponseDTO product = productCatalogService.getProduct(policyRequestDTO.getProductCode());
 
-			// Check if policyCode exists in the database
-			if (policyEntity != null) {
-				customMessageList = ArrayListCustomMessage.setMessage(
-						"The requested policy actually exists. Please change policyCode.", HttpStatus.BAD_REQUEST);
-				resource = new Resources<>(customMessageList);
-				resource.add(linkTo(PolicyController.class).withSelfRel());
+			// No read of the policy code first: the unique index rejects duplicates. The
+			// transaction is handled here so the violation can be answered below.
+			Boolean created = transactionTemplate.execute(status -> {
 
-				return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
-			}
+				if (product == null) {
+					return false;
+				}
 
-			// Check if product exists in the database
-			ProductEntity productEntity = productRepository.findByProductCode(policyRequestDTO.getProductCode());
+				// Check in one query that holder and vehicle exist
+				Optional<PolicyReferences> references = policyRepository
+						.findReferences(policyRequestDTO.getPassportNumber(), policyRequestDTO.getLicensePlate());
 
-			// Check if holder exists in the database
-			HolderEntity holderEntity = holderRepository.findByPassportNumber(policyRequestDTO.getPassportNumber());
+				if (!references.isPresent()) {
+					return false;
+				}
 
-			// Check if vehicle exists in the database
-			VehicleEntity vehicleEntity = vehicleRepository.findByLicensePlate(policyRequestDTO.getLicensePlate());
+				// Only the ids are needed for the foreign keys, the references are not loaded
+				entityRequest.setProduct(productRepository.getOne(product.getId()));
+				entityRequest.setHolder(holderRepository.getOne(references.get().getHolderId()));
+				entityRequest.setVehicle(vehicleRepository.getOne(references.get().getVehicleId()));
 
-			if (productEntity != null && holderEntity != null && vehicleEntity != null) {
-				entityRequest.setProduct(productEntity);
-				entityRequest.setHolder(holderEntity);
-				entityRequest.setVehicle(vehicleEntity);
-			} else {
+				policyRepository.saveAndFlush(entityRequest);
+				return true;
+			});
+
+			if (!Boolean.TRUE.equals(created)) {
 				customMessageList = ArrayListCustomMessage.setMessage("Some of the requested data are not correct",
 						HttpStatus.BAD_REQUEST);
-				resource = new Resources<>(customMessageList);
-				resource.add(linkTo(PolicyController.class).withSelfRel());
+				resource = MessageResources.of(customMessageList, PolicyController.class);
 				return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
 			}
 
-			policyRepository.save(entityRequest);
-
 			customMessageList = ArrayListCustomMessage.setMessage("Created new policy", HttpStatus.CREATED);
 
-			resource = new Resources<>(customMessageList);
-			resource.add(linkTo(PolicyController.class).withSelfRel());
+			resource = MessageResources.of(customMessageList, PolicyController.class);
+
+			// Where to read the new policy, its code may have been generated
+			headers.setLocation(URI.create(
+					Links.self(PolicyController.class, "policies", policyRequestDTO.getPolicyCode()).getHref()));
+		} catch (DataIntegrityViolationException e) {
+
+			// Check if policyCode exists in the database
+			if (ConstraintViolation.isViolationOf(e, PolicyEntity.UK_POLICY_CODE)) {
+				List<CustomMessage> customMessageList = ArrayListCustomMessage.setMessage(
+						"The requested policy actually exists. Please change policyCode.", HttpStatus.BAD_REQUEST);
+				resource = MessageResources.of(customMessageList, PolicyController.class);
+
+				return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
+			}
+
+			logger.error("An error occurred! {}", e.getMessage());
+			return CustomErrorType.returnResponsEntityError(e.getMessage());
 		} catch (Exception e) {
 			logger.error("An error occurred! {}", e.getMessage());
 			return CustomErrorType.returnResponsEntityError(e.getMessage());
 		}
 
-		return new ResponseEntity<>(resource, HttpStatus.OK);
+		return new ResponseEntity<>(resource, headers, HttpStatus.OK);
 
 	}
 
@@ -149,12 +246,27 @@ public class PolicyServiceImpl implements PolicyService {
 	 * {@inheritDoc}
 	 */
 	@Transactional
-	public ResponseEntity<?> updatePolicy(String policyCode, PolicyRequestDTO policyRequestDTO) {
+	@CacheEvict(cacheNames = CacheConfig.POLICIES, key = "#policyCode")
+	public ResponseEntity<?> updatePolicy(String policyCode, MergePatch<PolicyRequestDTO> policyPatch,
+			Set<Integer> versions) {
 
-		Resources<CustomMessage> resource = null;
+		Object resource = null;
 
 		try {
 
+			// Only the fields present in the patch are written, the references they name
+			// are looked up. The policy code will always be the same, so it is not one
+			// of them.
+			Map<String, Object> changes = policyAttributes(policyPatch);
+
+			if (changes.isEmpty()) {
+				return badRequest("There are no changes, please try again");
+			}
+
+			if (versions != null) {
+				return updatePolicyIfVersion(policyCode, changes, versions);
+			}
+
 			List<CustomMessage> customMessageList = null;
 
 			customMessageList = ArrayListCustomMessage.setMessage("Patch policy process", HttpStatus.OK);
@@ -165,97 +277,127 @@ public class PolicyServiceImpl implements PolicyService {
 			// If exists
 			if (policyEntity != null) {
 
-				// The policy's code and ID will always be the same, so we do not allow it to be
-				// updated, for them we overwrite the field with the original value.
-				policyRequestDTO.setPolicyCode(policyCode);
-				policyRequestDTO.setId(policyEntity.getId());
-
-				PolicyEntity entityRequest = modelMapper.map(policyRequestDTO, PolicyEntity.class);
-
-				if (policyRequestDTO.getProductCode() != null && !policyRequestDTO.getProductCode().isEmpty()) {
-
-					ProductEntity productEntity = productRepository
-							.findByProductCode(policyRequestDTO.getProductCode());
-
-					// Check if product exists in the database
-					if (productEntity != null) {
-						entityRequest.setProduct(productEntity);
-					} else {
-						customMessageList = ArrayListCustomMessage.setMessage(
-								"Product code " + policyRequestDTO.getProductCode() + " does not exist!",
-								HttpStatus.BAD_REQUEST);
-						resource = new Resources<>(customMessageList);
-						resource.add(linkTo(PolicyController.class).withSelfRel());
-						return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
-					}
+				// Check if there are changes. The policy is dynamic-update, the flush writes
+				// the changed columns only and fails if another update commits meanwhile.
+				if (partialUpdateService.apply(policyEntity, changes)) {
+					// The stored bodies are of the old version
+					responseCacheService.evict("policy", policyCode);
+				} else {
+					return badRequest("There are no changes, please try again");
 				}
 
-				if (policyRequestDTO.getPassportNumber() != null && !policyRequestDTO.getProductCode().isEmpty()) {
-					HolderEntity holderEntity = holderRepository
-							.findByPassportNumber(policyRequestDTO.getPassportNumber());
-
-					// Check if holder exists in the database
-					if (holderEntity != null) {
-						entityRequest.setHolder(holderEntity);
-					} else {
-						customMessageList = ArrayListCustomMessage.setMessage(
-								"Holder passport number " + policyRequestDTO.getPassportNumber() + " does not exist!",
-								HttpStatus.BAD_REQUEST);
-						resource = new Resources<>(customMessageList);
-						resource.add(linkTo(PolicyController.class).withSelfRel());
-						return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
-					}
-				}
+			} else {
+				return badRequest("Policy code " + policyCode + " Not Found!");
+			}
 
-				if (policyRequestDTO.getLicensePlate() != null && !policyRequestDTO.getProductCode().isEmpty()) {
-					VehicleEntity vehicleEntity = vehicleRepository
-							.findByLicensePlate(policyRequestDTO.getLicensePlate());
-
-					// Check if vehicle exists in the database
-					if (vehicleEntity != null) {
-						entityRequest.setVehicle(vehicleEntity);
-					} else {
-						customMessageList = ArrayListCustomMessage.setMessage(
-								"Vehicle license plate " + policyRequestDTO.getLicensePlate() + " does not exist!",
-								HttpStatus.BAD_REQUEST);
-						resource = new Resources<>(customMessageList);
-						resource.add(linkTo(PolicyController.class).withSelfRel());
-						return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
-					}
-				}
+			resource = MessageResources.of(customMessageList, PolicyController.class, policyCode);
+		} catch (IllegalArgumentException e) {
+			return badRequest(e.getMessage());
+		} catch (Exception e) {
+			logger.error("An error occurred! {}", e.getMessage());
+			return CustomErrorType.returnResponsEntityError(e.getMessage());
 
-				// Check if there are changes
-				if (!policyEntity.equals(entityRequest)) {
-					policyRepository.save(entityRequest);
-				} else {
-					customMessageList = ArrayListCustomMessage.setMessage("There are no changes, please try again",
-							HttpStatus.BAD_REQUEST);
+		}
 
-					resource = new Resources<>(customMessageList);
-					resource.add(linkTo(HolderController.class).withSelfRel());
+		return new ResponseEntity<>(resource, HttpStatus.OK);
 
-					return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
-				}
+	}
 
-			} else {
-				customMessageList = ArrayListCustomMessage.setMessage(
-						"Policy code" + policyRequestDTO.getPolicyCode() + " Not Found!", HttpStatus.BAD_REQUEST);
+	private ResponseEntity<?> updatePolicyIfVersion(String policyCode, Map<String, Object> changes,
+			Set<Integer> versions) {
 
-				resource = new Resources<>(customMessageList);
-				resource.add(linkTo(PolicyController.class).withSelfRel());
+		Object resource = null;
 
-				return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
+		List<CustomMessage> customMessageList = null;
+
+		// No read of the policy first: one update of the patched columns, only for the
+		// given versions
+		if (partialUpdateService.update(PolicyEntity.class, "policyCode", policyCode, changes, versions) == 0) {
+
+			if (!policyRepository.existsByPolicyCode(policyCode)) {
+				return badRequest("Policy code " + policyCode + " Not Found!");
 			}
 
-			resource = new Resources<>(customMessageList);
-			resource.add(linkTo(PolicyController.class).slash(policyRequestDTO.getPolicyCode()).withSelfRel());
-		} catch (Exception e) {
-			logger.error("An error occurred! {}", e.getMessage());
-			return CustomErrorType.returnResponsEntityError(e.getMessage());
+			customMessageList = ArrayListCustomMessage.setMessage(
+					"Policy code " + policyCode + " was modified, please read it again",
+					HttpStatus.PRECONDITION_FAILED);
+
+			resource = MessageResources.of(customMessageList, PolicyController.class, policyCode);
 
+			return new ResponseEntity<>(resource, HttpStatus.PRECONDITION_FAILED);
 		}
 
+		// The stored bodies are of the old version
+		responseCacheService.evict("policy", policyCode);
+
+		customMessageList = ArrayListCustomMessage.setMessage("Patch policy process", HttpStatus.OK);
+
+		resource = MessageResources.of(customMessageList, PolicyController.class, policyCode);
+
 		return new ResponseEntity<>(resource, HttpStatus.OK);
 
 	}
+
+	/**
+	 * Policy attributes to write for the patch: the cost and the references
+	 * named by the codes present in it.
+	 * 
+	 * @param policyPatch policy fields to change
+	 * @return new values by attribute name
+	 * @throws IllegalArgumentException if a field is removed or a reference does
+	 *                                  not exist
+	 */
+	private Map<String, Object> policyAttributes(MergePatch<PolicyRequestDTO> policyPatch) {
+
+		Map<String, Object> fields = policyPatch.valuesOf(UPDATABLE_FIELDS);
+		Map<String, Object> attributes = new LinkedHashMap<>();
+
+		if (fields.containsKey("cost")) {
+			attributes.put("cost", fields.get("cost"));
+		}
+
+		if (fields.containsKey("productCode")) {
+			String productCode = (String) fields.get("productCode");
+
+			// From the in-memory catalog, only the id is needed for the foreign key
+			ProductResponseDTO product = productCatalogService.getProduct(productCode);
+
+			if (product == null) {
+				throw new IllegalArgumentException("Product code " + productCode + " does not exist!");
+			}
+			attributes.put("product", productRepository.getOne(product.getId()));
+		}
+
+		if (fields.containsKey("passportNumber")) {
+			String passportNumber = (String) fields.get("passportNumber");
+			HolderEntity holderEntity = holderRepository.findByPassportNumber(passportNumber);
+
+			if (holderEntity == null) {
+				throw new IllegalArgumentException("Holder passport number " + passportNumber + " does not exist!");
+			}
+			attributes.put("holder", holderEntity);
+		}
+
+		if (fields.containsKey("licensePlate")) {
+			String licensePlate = (String) fields.get("licensePlate");
+			VehicleEntity vehicleEntity = vehicleRepository.findByLicensePlate(licensePlate);
+
+			if (vehicleEntity == null) {
+				throw new IllegalArgumentException("Vehicle license plate " + licensePlate + " does not exist!");
+			}
+			attributes.put("vehicle", vehicleEntity);
+		}
+
+		return attributes;
+
+	}
+
+	private static ResponseEntity<?> badRequest(String message) {
+
+		Object resource = MessageResources.of(ArrayListCustomMessage.setMessage(message, HttpStatus.BAD_REQUEST),
+				PolicyController.class);
+
+		return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
+
+	}
 }
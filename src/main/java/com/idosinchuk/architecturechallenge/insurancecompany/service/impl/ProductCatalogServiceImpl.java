@@ -0,0 +1,134 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.ProductResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.ProductEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.mapper.ProductMapper;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.ProductRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.ProductCatalogService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.SingleFlightService;
+
+/**
+ * Implementation for product catalog service. The catalog is an unmodifiable
+ * map replaced as a whole, so it is read without locks; the writers are
+ * serialized so none of them replaces the map with an older copy.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@Service("ProductCatalogService")
+public class ProductCatalogServiceImpl implements ProductCatalogService {
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private ProductMapper productMapper;
+
+	@Autowired
+	private SingleFlightService singleFlightService;
+
+	private volatile Map<String, ProductResponseDTO> products = Collections.emptyMap();
+
+	public static final Logger logger = LoggerFactory.getLogger(ProductCatalogServiceImpl.class);
+
+	@PostConstruct
+	public void load() {
+		refresh();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public ProductResponseDTO getProduct(String productCode) {
+
+		ProductResponseDTO product = products.get(productCode);
+
+		if (product == null) {
+			// Maybe created by another instance since the last refresh
+			product = singleFlightService.load("product", productCode, () -> {
+				ProductEntity productEntity = productRepository.findByProductCode(productCode);
+				if (productEntity == null) {
+					return null;
+				}
+
+				// Only this product is added, the whole catalog is reloaded by the scheduled
+				// refresh
+				ProductResponseDTO loaded = productMapper.toResponse(productEntity);
+				put(loaded);
+				return loaded;
+			});
+		}
+
+		return product;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public ProductResponseDTO getCachedProduct(String productCode) {
+
+		return products.get(productCode);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void putAfterCommit(ProductEntity productEntity) {
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					// Mapped once flushed, a managed product has its new version by now
+					put(productMapper.toResponse(productEntity));
+				}
+			});
+		} else {
+			put(productMapper.toResponse(productEntity));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	// Picks up the products written by other instances
+	@Scheduled(fixedDelayString = "${insurancecompany.catalog.refresh-interval}",
+			initialDelayString = "${insurancecompany.catalog.refresh-interval}")
+	public synchronized void refresh() {
+
+		try {
+			Map<String, ProductResponseDTO> catalog = new HashMap<>();
+			for (ProductEntity productEntity : productRepository.findAll()) {
+				catalog.put(productEntity.getProductCode(), productMapper.toResponse(productEntity));
+			}
+
+			products = Collections.unmodifiableMap(catalog);
+		} catch (Exception e) {
+			// Keep serving the current catalog
+			logger.error("An error occurred! {}", e.getMessage());
+		}
+	}
+
+	private synchronized void put(ProductResponseDTO product) {
+
+		// Copy on write, the current map may be in use by readers
+		Map<String, ProductResponseDTO> catalog = new HashMap<>(products);
+		catalog.put(product.getProductCode(), product);
+
+		products = Collections.unmodifiableMap(catalog);
+	}
+}
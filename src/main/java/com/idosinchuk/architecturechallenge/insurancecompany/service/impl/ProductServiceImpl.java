@@ -1,32 +1,42 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
 
-import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
-
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
-import org.modelmapper.ModelMapper;
-import org.modelmapper.TypeToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Pageable;
-import org.springframework.hateoas.Resources;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountStrategy;
 import com.idosinchuk.architecturechallenge.insurancecompany.common.CustomMessage;
-import com.idosinchuk.architecturechallenge.insurancecompany.controller.HolderController;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.MergePatch;
 import com.idosinchuk.architecturechallenge.insurancecompany.controller.ProductController;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.ProductRequestDTO;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.ProductResponseDTO;
 import com.idosinchuk.architecturechallenge.insurancecompany.entity.ProductEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.mapper.ProductMapper;
 import com.idosinchuk.architecturechallenge.insurancecompany.repository.ProductRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.MessageResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PartialUpdateService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PolicyCacheService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.ProductCatalogService;
 import com.idosinchuk.architecturechallenge.insurancecompany.service.ProductService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.ResponseCacheService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.TotalCountService;
 import com.idosinchuk.architecturechallenge.insurancecompany.util.ArrayListCustomMessage;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.ConstraintViolation;
 import com.idosinchuk.architecturechallenge.insurancecompany.util.CustomErrorType;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.KeysetCursor;
 
 /**
  * Implementation for product service
@@ -37,24 +47,56 @@ import com.idosinchuk.architecturechallenge.insurancecompany.util.CustomErrorTyp
 @Service("ProductService")
 public class ProductServiceImpl implements ProductService {
 
+	// The product code identifies the product and is never updated
+	private static final String[] UPDATABLE_FIELDS = { "productName" };
+
 	@Autowired
 	private ProductRepository productRepository;
 
 	@Autowired
-	private ModelMapper modelMapper;
+	private ProductCatalogService productCatalogService;
+
+	@Autowired
+	private PolicyCacheService policyCacheService;
+
+	@Autowired
+	private ResponseCacheService responseCacheService;
+
+	@Autowired
+	private ProductMapper productMapper;
+
+	@Autowired
+	private TotalCountService totalCountService;
+
+	@Autowired
+	private PartialUpdateService partialUpdateService;
 
 	public static final Logger logger = LoggerFactory.getLogger(ProductServiceImpl.class);
 
 	/**
 	 * {@inheritDoc}
 	 */
-	public Page<ProductResponseDTO> getAllProducts(Pageable pageable) {
+	public Slice<ProductResponseDTO> getAllProducts(Pageable pageable, CountStrategy countStrategy) {
 
-		Page<ProductEntity> entityResponse = productRepository.findAll(pageable);
+		// Read the page without count query, the total depends on the strategy
+		Slice<ProductEntity> entityResponse = productRepository.findAllBy(pageable);
 
 		// Convert Entity response to DTO
-		return modelMapper.map(entityResponse, new TypeToken<Page<ProductResponseDTO>>() {
-		}.getType());
+		return totalCountService.withTotal(entityResponse.map(productMapper::toResponse), "product", countStrategy,
+				productRepository::count);
+
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Slice<ProductResponseDTO> getAllProductsAfter(int afterId, int size) {
+
+		Slice<ProductEntity> entityResponse = productRepository.findByIdGreaterThan(afterId,
+				KeysetCursor.pageRequest(size));
+
+		// Convert Entity response to DTO
+		return entityResponse.map(productMapper::toResponse);
 
 	}
 
@@ -63,46 +105,65 @@ public class ProductServiceImpl implements ProductService {
 	 */
 	public ProductResponseDTO getProduct(String productCode) {
 
-		ProductEntity entityResponse = productRepository.findByProductCode(productCode);
+		return productCatalogService.getProduct(productCode);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public ProductResponseDTO getCachedProduct(String productCode) {
+
+		return productCatalogService.getCachedProduct(productCode);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public List<ProductResponseDTO> getProducts(Collection<String> productCodes) {
+
+		List<ProductEntity> entityResponse = productRepository.findByProductCodeIn(productCodes);
+
+		// Convert Entity response to DTO
+		return entityResponse.stream().map(productMapper::toResponse).collect(Collectors.toList());
 
-		return modelMapper.map(entityResponse, ProductResponseDTO.class);
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
-	@Transactional
 	public ResponseEntity<?> addProduct(ProductRequestDTO productRequestDTO) {
 
-		Resources<CustomMessage> resource = null;
+		Object resource = null;
 
 		try {
 			List<CustomMessage> customMessageList = null;
 
-			// Check if productCode exists in DB
-			ProductEntity productEntity = productRepository.findByProductCode(productRequestDTO.getProductCode());
+			ProductEntity entityRequest = productMapper.toEntity(productRequestDTO);
+
+			// No read first: the unique index on product code rejects duplicates.
+			// The insert runs in its own transaction so the violation can be answered.
+			productRepository.saveAndFlush(entityRequest);
+			productCatalogService.putAfterCommit(entityRequest);
+
+			customMessageList = ArrayListCustomMessage.setMessage("Created new product", HttpStatus.CREATED);
+
+			resource = MessageResources.of(customMessageList, ProductController.class);
+
+		} catch (DataIntegrityViolationException e) {
 
 			// If exists
-			if (productEntity != null) {
-				customMessageList = ArrayListCustomMessage.setMessage(
+			if (ConstraintViolation.isViolationOf(e, ProductEntity.UK_PRODUCT_CODE)) {
+				List<CustomMessage> customMessageList = ArrayListCustomMessage.setMessage(
 						"Product Code" + productRequestDTO.getProductCode() + " already exists in database!",
 						HttpStatus.BAD_REQUEST);
 
-				resource = new Resources<>(customMessageList);
-				resource.add(linkTo(ProductController.class).withSelfRel());
+				resource = MessageResources.of(customMessageList, ProductController.class);
 
 				return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
 			}
 
-			ProductEntity entityRequest = modelMapper.map(productRequestDTO, ProductEntity.class);
-
-			productRepository.save(entityRequest);
-
-			customMessageList = ArrayListCustomMessage.setMessage("Created new product", HttpStatus.CREATED);
-
-			resource = new Resources<>(customMessageList);
-			resource.add(linkTo(ProductController.class).withSelfRel());
-
+			logger.error("An error occurred! {}", e.getMessage());
+			return CustomErrorType.returnResponsEntityError(e.getMessage());
 		} catch (Exception e) {
 			logger.error("An error occurred! {}", e.getMessage());
 			return CustomErrorType.returnResponsEntityError(e.getMessage());
@@ -116,12 +177,25 @@ public class ProductServiceImpl implements ProductService {
 	 * {@inheritDoc}
 	 */
 	@Transactional
-	public ResponseEntity<?> updateProduct(String productCode, ProductRequestDTO productRequestDTO) {
+	public ResponseEntity<?> updateProduct(String productCode, MergePatch<ProductRequestDTO> productPatch,
+			Set<Integer> versions) {
 
-		Resources<CustomMessage> resource = null;
+		Object resource = null;
 
 		try {
 
+			// Only the fields present in the patch are written. The product code will
+			// always be the same, so it is not one of them.
+			Map<String, Object> changes = productPatch.valuesOf(UPDATABLE_FIELDS);
+
+			if (changes.isEmpty()) {
+				return badRequest("There are no changes, please try again");
+			}
+
+			if (versions != null) {
+				return updateProductIfVersion(productCode, changes, versions);
+			}
+
 			List<CustomMessage> customMessageList = null;
 
 			// Find product by productCode for check if exists in DB
@@ -132,40 +206,27 @@ public class ProductServiceImpl implements ProductService {
 
 				customMessageList = ArrayListCustomMessage.setMessage("Patch product process", HttpStatus.OK);
 
-				// The product code and product id will always be the same, so we do not allow
-				// it to be
-				// updated, for them we overwrite the field with the original value.
-				productRequestDTO.setProductCode(productCode);
-				productRequestDTO.setId(productEntity.getId());
+				// Check if there are changes. The product is dynamic-update, the flush writes
+				// the changed columns only and fails if another update commits meanwhile.
+				if (partialUpdateService.apply(productEntity, changes)) {
+					productCatalogService.putAfterCommit(productEntity);
+					// The stored bodies are of the old version
+					responseCacheService.evict("product", productCode);
 
-				ProductEntity entityRequest = modelMapper.map(productRequestDTO, ProductEntity.class);
-
-				// Check if there are changes
-				if (!productEntity.equals(entityRequest)) {
-					productRepository.save(entityRequest);
+					// Cached policies embed this product
+					policyCacheService.evictPoliciesOfProduct(productCode);
 				} else {
-					customMessageList = ArrayListCustomMessage.setMessage("There are no changes, please try again",
-							HttpStatus.BAD_REQUEST);
-
-					resource = new Resources<>(customMessageList);
-					resource.add(linkTo(HolderController.class).withSelfRel());
-
-					return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
+					return badRequest("There are no changes, please try again");
 				}
 
 			} else {
-				customMessageList = ArrayListCustomMessage.setMessage("Product Code" + productCode + " Not Found!",
-						HttpStatus.BAD_REQUEST);
-
-				resource = new Resources<>(customMessageList);
-				resource.add(linkTo(ProductController.class).withSelfRel());
-
-				return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
+				return badRequest("Product Code" + productCode + " Not Found!");
 			}
 
-			resource = new Resources<>(customMessageList);
-			resource.add(linkTo(ProductController.class).slash(productCode).withSelfRel());
+			resource = MessageResources.of(customMessageList, ProductController.class, productCode);
 
+		} catch (IllegalArgumentException e) {
+			return badRequest(e.getMessage());
 		} catch (Exception e) {
 			logger.error("An error occurred! {}", e.getMessage());
 			return CustomErrorType.returnResponsEntityError(e.getMessage());
@@ -175,4 +236,67 @@ public class ProductServiceImpl implements ProductService {
 		return new ResponseEntity<>(resource, HttpStatus.OK);
 
 	}
+
+	private ResponseEntity<?> updateProductIfVersion(String productCode, Map<String, Object> changes,
+			Set<Integer> versions) {
+
+		Object resource = null;
+
+		List<CustomMessage> customMessageList = null;
+
+		// From the in-memory catalog, no query
+		ProductResponseDTO product = productCatalogService.getProduct(productCode);
+
+		if (product == null) {
+			return badRequest("Product Code" + productCode + " Not Found!");
+		}
+
+		// No read first: one update of the patched columns, only for the given versions
+		if (partialUpdateService.update(ProductEntity.class, "productCode", productCode, changes, versions) == 0) {
+			customMessageList = ArrayListCustomMessage.setMessage(
+					"Product code " + productCode + " was modified, please read it again",
+					HttpStatus.PRECONDITION_FAILED);
+
+			resource = MessageResources.of(customMessageList, ProductController.class, productCode);
+
+			return new ResponseEntity<>(resource, HttpStatus.PRECONDITION_FAILED);
+		}
+
+		ProductEntity productEntity;
+
+		if (versions.size() == 1 && versions.contains(product.getVersion())) {
+			// The catalog product with the patch applied is the stored one
+			productEntity = productMapper.toEntity(product);
+			partialUpdateService.apply(productEntity, changes);
+			productEntity.setVersion(product.getVersion() + 1);
+		} else {
+			// The catalog may be older than the version updated, the other columns may
+			// have changed since. The stored row is read, with the update of this
+			// transaction.
+			productEntity = productRepository.findByProductCode(productCode);
+		}
+		productCatalogService.putAfterCommit(productEntity);
+
+		// The stored bodies are of the old version
+		responseCacheService.evict("product", productCode);
+
+		// Cached policies embed this product
+		policyCacheService.evictPoliciesOfProduct(productCode);
+
+		customMessageList = ArrayListCustomMessage.setMessage("Patch product process", HttpStatus.OK);
+
+		resource = MessageResources.of(customMessageList, ProductController.class, productCode);
+
+		return new ResponseEntity<>(resource, HttpStatus.OK);
+
+	}
+
+	private static ResponseEntity<?> badRequest(String message) {
+
+		Object resource = MessageResources.of(ArrayListCustomMessage.setMessage(message, HttpStatus.BAD_REQUEST),
+				ProductController.class);
+
+		return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
+
+	}
 }
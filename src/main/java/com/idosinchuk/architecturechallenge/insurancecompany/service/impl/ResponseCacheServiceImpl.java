@@ -0,0 +1,160 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.SerializedBody;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.ResponseCacheService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Implementation for response cache service. A resource has one entry, with
+ * the bodies of a single version in each of the media types read. A body is
+ * only served for the version it was written from, so a body stored by a read
+ * that raced an update is never served for the new version. The evictions only
+ * release the memory of the old version sooner.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+@Service("ResponseCacheService")
+public class ResponseCacheServiceImpl implements ResponseCacheService {
+
+	// Tagged with resource and result (hit or miss)
+	public static final String REQUESTS_METRIC = "insurancecompany.response-cache.requests";
+
+	// Weight of an entry besides its bodies
+	private static final int ENTRY_OVERHEAD = 128;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${insurancecompany.response-cache.max-size:0}")
+	private DataSize maxSize;
+
+	@Value("${insurancecompany.response-cache.off-heap:false}")
+	private boolean offHeap;
+
+	private Cache<List<String>, Bodies> bodies;
+
+	@PostConstruct
+	public void init() {
+		bodies = Caffeine.newBuilder().maximumWeight(maxSize.toBytes())
+				.weigher((List<String> key, Bodies value) -> value.weight()).build();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean isEnabled() {
+		return maxSize.toBytes() > 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public SerializedBody get(String resource, String key, String entityTag, MediaType mediaType) {
+
+		Bodies stored = bodies.getIfPresent(Arrays.asList(resource, key));
+
+		SerializedBody body = stored != null && stored.entityTag.equals(entityTag) ? stored.get(mediaType) : null;
+
+		meterRegistry.counter(REQUESTS_METRIC, "resource", resource, "result", body != null ? "hit" : "miss")
+				.increment();
+
+		return body;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void put(String resource, String key, String entityTag, MediaType mediaType, MediaType contentType,
+			byte[] body) {
+
+		SerializedBody serializedBody = offHeap ? SerializedBody.offHeap(contentType, body)
+				: SerializedBody.onHeap(contentType, body);
+
+		bodies.asMap().compute(Arrays.asList(resource, key), (k, stored) -> {
+			if (stored != null && stored.entityTag.equals(entityTag)) {
+				return stored.with(mediaType, serializedBody);
+			}
+
+			// The first body of this version, the stored ones are of another
+			return new Bodies(entityTag, new MediaType[] { mediaType }, new SerializedBody[] { serializedBody });
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void evict(String resource, String key) {
+		bodies.invalidate(Arrays.asList(resource, key));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void evictAll(String resource) {
+		bodies.asMap().keySet().removeIf(key -> key.get(0).equals(resource));
+	}
+
+	/**
+	 * Bodies of one version, a few media types at most. Never changed, a new
+	 * media type makes a copy.
+	 */
+	private static class Bodies {
+
+		private final String entityTag;
+
+		private final MediaType[] mediaTypes;
+
+		private final SerializedBody[] bodies;
+
+		Bodies(String entityTag, MediaType[] mediaTypes, SerializedBody[] bodies) {
+			this.entityTag = entityTag;
+			this.mediaTypes = mediaTypes;
+			this.bodies = bodies;
+		}
+
+		SerializedBody get(MediaType mediaType) {
+			for (int i = 0; i < mediaTypes.length; i++) {
+				if (mediaTypes[i].equals(mediaType)) {
+					return bodies[i];
+				}
+			}
+			return null;
+		}
+
+		Bodies with(MediaType mediaType, SerializedBody body) {
+			if (get(mediaType) != null) {
+				return this;
+			}
+
+			MediaType[] withMediaTypes = Arrays.copyOf(mediaTypes, mediaTypes.length + 1);
+			SerializedBody[] withBodies = Arrays.copyOf(bodies, bodies.length + 1);
+			withMediaTypes[mediaTypes.length] = mediaType;
+			withBodies[bodies.length] = body;
+
+			return new Bodies(entityTag, withMediaTypes, withBodies);
+		}
+
+		int weight() {
+			int weight = ENTRY_OVERHEAD;
+			for (SerializedBody body : bodies) {
+				weight += body.getLength();
+			}
+			return weight;
+		}
+	}
+}
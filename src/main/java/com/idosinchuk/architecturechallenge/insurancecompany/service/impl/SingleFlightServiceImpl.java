@@ -0,0 +1,97 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.service.SingleFlightService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Implementation for single flight service. The first caller for a key
+ * publishes a future that the concurrent callers wait on, and removes it once
+ * the load is done: nothing is kept, caching is left to the callers.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@Service("SingleFlightService")
+public class SingleFlightServiceImpl implements SingleFlightService {
+
+	// Tagged with resource and result (loaded, coalesced or timeout)
+	public static final String CALLS_METRIC = "insurancecompany.singleflight.calls";
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${insurancecompany.single-flight.max-wait:PT2S}")
+	private Duration maxWait;
+
+	private final ConcurrentMap<List<String>, CompletableFuture<Object>> loads = new ConcurrentHashMap<>();
+
+	public static final Logger logger = LoggerFactory.getLogger(SingleFlightServiceImpl.class);
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T load(String resource, String key, Supplier<T> loader) {
+
+		List<String> loadKey = Arrays.asList(resource, key);
+
+		CompletableFuture<Object> load = new CompletableFuture<>();
+		CompletableFuture<Object> inFlight = loads.putIfAbsent(loadKey, load);
+
+		if (inFlight != null) {
+			try {
+				T value = (T) inFlight.get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+				count(resource, "coalesced");
+				return value;
+			} catch (TimeoutException e) {
+				// The shared load is slow, do not hold this request any longer on it
+				logger.warn("Load of {} {} still running after {}, loading again", resource, key, maxWait);
+				count(resource, "timeout");
+				return loader.get();
+			} catch (ExecutionException e) {
+				// The shared load failed, fail the same way
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for " + resource + " " + key, e);
+			}
+		}
+
+		try {
+			T value = loader.get();
+			load.complete(value);
+			count(resource, "loaded");
+			return value;
+		} catch (RuntimeException e) {
+			load.completeExceptionally(e);
+			throw e;
+		} finally {
+			loads.remove(loadKey, load);
+		}
+	}
+
+	private void count(String resource, String result) {
+		meterRegistry.counter(CALLS_METRIC, "resource", resource, "result", result).increment();
+	}
+}
@@ -0,0 +1,113 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountStrategy;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountedPage;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.TotalCountService;
+
+/**
+ * Implementation for total count service
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@Service("TotalCountService")
+public class TotalCountServiceImpl implements TotalCountService {
+
+	// MySQL table statistics, refreshed by ANALYZE TABLE and InnoDB itself
+	private static final String ESTIMATE_QUERY = "SELECT TABLE_ROWS FROM information_schema.TABLES "
+			+ "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Value("${insurancecompany.count.cache-ttl:PT1M}")
+	private Duration cacheTtl;
+
+	private final Map<String, CachedCount> cachedCounts = new ConcurrentHashMap<>();
+
+	public static final Logger logger = LoggerFactory.getLogger(TotalCountServiceImpl.class);
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public <T> Slice<T> withTotal(Slice<T> slice, String table, CountStrategy strategy, LongSupplier exactCount) {
+
+		if (strategy == CountStrategy.NONE) {
+			return slice;
+		}
+
+		// Last page: the total is known without asking the database
+		if (!slice.hasNext() && (slice.hasContent() || slice.getNumber() == 0)) {
+			long total = slice.getPageable().isPaged() ? slice.getPageable().getOffset() + slice.getNumberOfElements()
+					: slice.getNumberOfElements();
+			return new CountedPage<>(slice.getContent(), slice.getPageable(), total, CountStrategy.EXACT);
+		}
+
+		switch (strategy) {
+		case CACHED:
+			return new CountedPage<>(slice.getContent(), slice.getPageable(), cachedCount(table, exactCount),
+					CountStrategy.CACHED);
+		case ESTIMATED:
+			Long estimate = estimatedCount(table);
+			if (estimate != null) {
+				// The estimate can never be lower than what has been read
+				long total = Math.max(estimate, slice.getPageable().getOffset() + slice.getNumberOfElements() + 1);
+				return new CountedPage<>(slice.getContent(), slice.getPageable(), total, CountStrategy.ESTIMATED);
+			}
+			break;
+		default:
+			break;
+		}
+
+		return new CountedPage<>(slice.getContent(), slice.getPageable(), exactCount.getAsLong(),
+				CountStrategy.EXACT);
+	}
+
+	private long cachedCount(String table, LongSupplier exactCount) {
+		long now = System.nanoTime();
+
+		CachedCount cached = cachedCounts.get(table);
+		if (cached == null || now - cached.expiresAt > 0) {
+			cached = new CachedCount(exactCount.getAsLong(), now + cacheTtl.toNanos());
+			cachedCounts.put(table, cached);
+		}
+
+		return cached.count;
+	}
+
+	private Long estimatedCount(String table) {
+		try {
+			return jdbcTemplate.queryForObject(ESTIMATE_QUERY, Long.class, table);
+		} catch (DataAccessException e) {
+			// No statistics for this table or database, fall back to the exact count
+			logger.debug("No row estimate for table {}: {}", table, e.getMessage());
+			return null;
+		}
+	}
+
+	private static final class CachedCount {
+
+		private final long count;
+
+		private final long expiresAt;
+
+		private CachedCount(long count, long expiresAt) {
+			this.count = count;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
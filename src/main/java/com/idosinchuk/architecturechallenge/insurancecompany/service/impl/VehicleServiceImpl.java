@@ -1,32 +1,46 @@
 package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
 
-import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
-
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
-import org.modelmapper.ModelMapper;
-import org.modelmapper.TypeToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Pageable;
-import org.springframework.hateoas.Resources;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.idosinchuk.architecturechallenge.insurancecompany.CacheConfig;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountStrategy;
 import com.idosinchuk.architecturechallenge.insurancecompany.common.CustomMessage;
-import com.idosinchuk.architecturechallenge.insurancecompany.controller.HolderController;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.MergePatch;
 import com.idosinchuk.architecturechallenge.insurancecompany.controller.VehicleController;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.VehicleRequestDTO;
 import com.idosinchuk.architecturechallenge.insurancecompany.dto.VehicleResponseDTO;
 import com.idosinchuk.architecturechallenge.insurancecompany.entity.VehicleEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.mapper.VehicleMapper;
 import com.idosinchuk.architecturechallenge.insurancecompany.repository.VehicleRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.MessageResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PartialUpdateService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PolicyCacheService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.ResponseCacheService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.SingleFlightService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.TotalCountService;
 import com.idosinchuk.architecturechallenge.insurancecompany.service.VehicleService;
 import com.idosinchuk.architecturechallenge.insurancecompany.util.ArrayListCustomMessage;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.ConstraintViolation;
 import com.idosinchuk.architecturechallenge.insurancecompany.util.CustomErrorType;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.KeysetCursor;
 
 /**
  * Implementation for vehicle service
@@ -37,72 +51,127 @@ import com.idosinchuk.architecturechallenge.insurancecompany.util.CustomErrorTyp
 @Service("VehicleService")
 public class VehicleServiceImpl implements VehicleService {
 
+	// The license plate identifies the vehicle and is never updated
+	private static final String[] UPDATABLE_FIELDS = { "brand" };
+
 	@Autowired
 	private VehicleRepository vehicleRepository;
 
 	@Autowired
-	private ModelMapper modelMapper;
+	private PolicyCacheService policyCacheService;
+
+	@Autowired
+	private ResponseCacheService responseCacheService;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Autowired
+	private VehicleMapper vehicleMapper;
+
+	@Autowired
+	private SingleFlightService singleFlightService;
+
+	@Autowired
+	private TotalCountService totalCountService;
+
+	@Autowired
+	private PartialUpdateService partialUpdateService;
 
 	public static final Logger logger = LoggerFactory.getLogger(VehicleServiceImpl.class);
 
 	/**
 	 * {@inheritDoc}
 	 */
-	public Page<VehicleResponseDTO> getAllVehicles(Pageable pageable) {
+	public Slice<VehicleResponseDTO> getAllVehicles(Pageable pageable, CountStrategy countStrategy) {
 
-		Page<VehicleEntity> entityResponse = vehicleRepository.findAll(pageable);
+		// Read the page without count query, the total depends on the strategy
+		Slice<VehicleEntity> entityResponse = vehicleRepository.findAllBy(pageable);
 
 		// Convert Entity response to DTO
-		return modelMapper.map(entityResponse, new TypeToken<Page<VehicleResponseDTO>>() {
-		}.getType());
+		return totalCountService.withTotal(entityResponse.map(vehicleMapper::toResponse), "vehicle", countStrategy,
+				vehicleRepository::count);
 
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
+	public Slice<VehicleResponseDTO> getAllVehiclesAfter(int afterId, int size) {
+
+		Slice<VehicleEntity> entityResponse = vehicleRepository.findByIdGreaterThan(afterId,
+				KeysetCursor.pageRequest(size));
+
+		// Convert Entity response to DTO
+		return entityResponse.map(vehicleMapper::toResponse);
+
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public VehicleResponseDTO getCachedVehicle(String licensePlate) {
+
+		return cacheManager.getCache(CacheConfig.VEHICLES).get(licensePlate, VehicleResponseDTO.class);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Cacheable(cacheNames = CacheConfig.VEHICLES, key = "#licensePlate", unless = "#result == null")
 	public VehicleResponseDTO getVehicle(String licensePlate) {
 
-		VehicleEntity entityResponse = vehicleRepository.findByLicensePlate(licensePlate);
+		return singleFlightService.load("vehicle", licensePlate,
+				() -> vehicleMapper.toResponse(vehicleRepository.findByLicensePlate(licensePlate)));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public List<VehicleResponseDTO> getVehicles(Collection<String> licensePlates) {
+
+		List<VehicleEntity> entityResponse = vehicleRepository.findByLicensePlateIn(licensePlates);
+
+		// Convert Entity response to DTO
+		return entityResponse.stream().map(vehicleMapper::toResponse).collect(Collectors.toList());
 
-		return modelMapper.map(entityResponse, VehicleResponseDTO.class);
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
-	@Transactional
 	public ResponseEntity<?> addVehicle(VehicleRequestDTO vehicleRequestDTO) {
 
-		Resources<CustomMessage> resource = null;
+		Object resource = null;
 
 		try {
 			List<CustomMessage> customMessageList = null;
 
-			// Check if vehicle license plate exists in DB
-			VehicleEntity vehicleEntity = vehicleRepository.findByLicensePlate(vehicleRequestDTO.getLicensePlate());
+			VehicleEntity entityRequest = vehicleMapper.toEntity(vehicleRequestDTO);
+
+			// No read first: the unique index on license plate rejects duplicates.
+			// The insert runs in its own transaction so the violation can be answered.
+			vehicleRepository.saveAndFlush(entityRequest);
+
+			customMessageList = ArrayListCustomMessage.setMessage("Created new vehicle", HttpStatus.CREATED);
+
+			resource = MessageResources.of(customMessageList, VehicleController.class);
+
+		} catch (DataIntegrityViolationException e) {
 
 			// If exists
-			if (vehicleEntity != null) {
-				customMessageList = ArrayListCustomMessage.setMessage(
+			if (ConstraintViolation.isViolationOf(e, VehicleEntity.UK_LICENSE_PLATE)) {
+				List<CustomMessage> customMessageList = ArrayListCustomMessage.setMessage(
 						"Vehicle license plate" + vehicleRequestDTO.getLicensePlate() + " already exists.",
 						HttpStatus.BAD_REQUEST);
 
-				resource = new Resources<>(customMessageList);
-				resource.add(linkTo(VehicleController.class).withSelfRel());
+				resource = MessageResources.of(customMessageList, VehicleController.class);
 
 				return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
 			}
 
-			VehicleEntity entityRequest = modelMapper.map(vehicleRequestDTO, VehicleEntity.class);
-
-			vehicleRepository.save(entityRequest);
-
-			customMessageList = ArrayListCustomMessage.setMessage("Created new vehicle", HttpStatus.CREATED);
-
-			resource = new Resources<>(customMessageList);
-			resource.add(linkTo(VehicleController.class).withSelfRel());
-
+			logger.error("An error occurred! {}", e.getMessage());
+			return CustomErrorType.returnResponsEntityError(e.getMessage());
 		} catch (Exception e) {
 			logger.error("An error occurred! {}", e.getMessage());
 			return CustomErrorType.returnResponsEntityError(e.getMessage());
@@ -116,12 +185,26 @@ public class VehicleServiceImpl implements VehicleService {
 	 * {@inheritDoc}
 	 */
 	@Transactional
-	public ResponseEntity<?> updateVehicle(String licensePlate, VehicleRequestDTO vehicleRequestDTO) {
+	@CacheEvict(cacheNames = CacheConfig.VEHICLES, key = "#licensePlate")
+	public ResponseEntity<?> updateVehicle(String licensePlate, MergePatch<VehicleRequestDTO> vehiclePatch,
+			Set<Integer> versions) {
 
-		Resources<CustomMessage> resource = null;
+		Object resource = null;
 
 		try {
 
+			// Only the fields present in the patch are written. The license plate will
+			// always be the same, so it is not one of them.
+			Map<String, Object> changes = vehiclePatch.valuesOf(UPDATABLE_FIELDS);
+
+			if (changes.isEmpty()) {
+				return badRequest("There are no changes, please try again");
+			}
+
+			if (versions != null) {
+				return updateVehicleIfVersion(licensePlate, changes, versions);
+			}
+
 			List<CustomMessage> customMessageList = null;
 
 			// Find vehicle by licensePlate for check if exists in DB
@@ -132,40 +215,26 @@ public class VehicleServiceImpl implements VehicleService {
 
 				customMessageList = ArrayListCustomMessage.setMessage("Patch vehicle process", HttpStatus.OK);
 
-				// The vehicle id and license plate will always be the same, so we do not allow
-				// it to be
-				// updated, for them we overwrite the field with the original value.
-				vehicleRequestDTO.setLicensePlate(licensePlate);
-				vehicleRequestDTO.setId(vehicleEntity.getId());
-
-				VehicleEntity entityRequest = modelMapper.map(vehicleRequestDTO, VehicleEntity.class);
+				// Check if there are changes. The vehicle is dynamic-update, the flush writes
+				// the changed columns only and fails if another update commits meanwhile.
+				if (partialUpdateService.apply(vehicleEntity, changes)) {
+					// The stored bodies are of the old version
+					responseCacheService.evict("vehicle", licensePlate);
 
-				// Check if there are changes
-				if (!vehicleEntity.equals(entityRequest)) {
-					vehicleRepository.save(entityRequest);
+					// Cached policies embed this vehicle
+					policyCacheService.evictPoliciesOfVehicle(licensePlate);
 				} else {
-					customMessageList = ArrayListCustomMessage.setMessage("There are no changes, please try again",
-							HttpStatus.BAD_REQUEST);
-
-					resource = new Resources<>(customMessageList);
-					resource.add(linkTo(HolderController.class).withSelfRel());
-
-					return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
+					return badRequest("There are no changes, please try again");
 				}
 
 			} else {
-				customMessageList = ArrayListCustomMessage.setMessage("License plate " + licensePlate + " Not Found!",
-						HttpStatus.BAD_REQUEST);
-
-				resource = new Resources<>(customMessageList);
-				resource.add(linkTo(VehicleController.class).withSelfRel());
-
-				return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
+				return badRequest("License plate " + licensePlate + " Not Found!");
 			}
 
-			resource = new Resources<>(customMessageList);
-			resource.add(linkTo(VehicleController.class).slash(licensePlate).withSelfRel());
+			resource = MessageResources.of(customMessageList, VehicleController.class, licensePlate);
 
+		} catch (IllegalArgumentException e) {
+			return badRequest(e.getMessage());
 		} catch (Exception e) {
 			logger.error("An error occurred! {}", e.getMessage());
 			return CustomErrorType.returnResponsEntityError(e.getMessage());
@@ -175,4 +244,50 @@ public class VehicleServiceImpl implements VehicleService {
 		return new ResponseEntity<>(resource, HttpStatus.OK);
 
 	}
+
+	private ResponseEntity<?> updateVehicleIfVersion(String licensePlate, Map<String, Object> changes,
+			Set<Integer> versions) {
+
+		Object resource = null;
+
+		List<CustomMessage> customMessageList = null;
+
+		// No read first: one update of the patched columns, only for the given versions
+		if (partialUpdateService.update(VehicleEntity.class, "licensePlate", licensePlate, changes, versions) == 0) {
+
+			if (!vehicleRepository.existsByLicensePlate(licensePlate)) {
+				return badRequest("License plate " + licensePlate + " Not Found!");
+			}
+
+			customMessageList = ArrayListCustomMessage.setMessage(
+					"License plate " + licensePlate + " was modified, please read it again",
+					HttpStatus.PRECONDITION_FAILED);
+
+			resource = MessageResources.of(customMessageList, VehicleController.class, licensePlate);
+
+			return new ResponseEntity<>(resource, HttpStatus.PRECONDITION_FAILED);
+		}
+
+		// The stored bodies are of the old version
+		responseCacheService.evict("vehicle", licensePlate);
+
+		// Cached policies embed this vehicle
+		policyCacheService.evictPoliciesOfVehicle(licensePlate);
+
+		customMessageList = ArrayListCustomMessage.setMessage("Patch vehicle process", HttpStatus.OK);
+
+		resource = MessageResources.of(customMessageList, VehicleController.class, licensePlate);
+
+		return new ResponseEntity<>(resource, HttpStatus.OK);
+
+	}
+
+	private static ResponseEntity<?> badRequest(String message) {
+
+		Object resource = MessageResources.of(ArrayListCustomMessage.setMessage(message, HttpStatus.BAD_REQUEST),
+				VehicleController.class);
+
+		return new ResponseEntity<>(resource, HttpStatus.BAD_REQUEST);
+
+	}
 }
@@ -0,0 +1,46 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.util;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Business keys of a batch read.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public final class BatchKeys {
+
+	private BatchKeys() {
+	}
+
+	/**
+	 * Trim the keys and drop the empty and repeated ones, keeping the order.
+	 * 
+	 * @param keys    requested keys
+	 * @param maxSize maximum number of distinct keys
+	 * @return distinct keys
+	 * @throws IllegalArgumentException if there are no keys or more than maxSize
+	 */
+	public static Set<String> of(List<String> keys, int maxSize) {
+		Set<String> distinctKeys = new LinkedHashSet<>();
+
+		for (String key : keys) {
+			if (key != null && !key.trim().isEmpty()) {
+				distinctKeys.add(key.trim());
+			}
+		}
+
+		if (distinctKeys.isEmpty()) {
+			throw new IllegalArgumentException("At least one key is required");
+		}
+
+		if (distinctKeys.size() > maxSize) {
+			throw new IllegalArgumentException(
+					"At most " + maxSize + " keys per request, " + distinctKeys.size() + " given");
+		}
+
+		return distinctKeys;
+	}
+}
@@ -0,0 +1,158 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.BulkFormat;
+
+/**
+ * Reads the records of a bulk body one at a time, so the body is never held in
+ * memory. NDJSON bodies have one JSON object per line, CSV bodies have a header
+ * line with the field names.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public abstract class BulkRecordReader<T> implements Closeable {
+
+	private static final CsvMapper CSV_MAPPER = (CsvMapper) new CsvMapper()
+			.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+	private int recordNumber;
+
+	/**
+	 * Open a reader for the given body.
+	 * 
+	 * @param body         request body
+	 * @param mediaType    NDJSON or CSV
+	 * @param type         record type
+	 * @param objectMapper mapper for NDJSON records
+	 * @return the reader
+	 * @throws IOException              if the body can not be read
+	 * @throws IllegalArgumentException if the media type is not a bulk format
+	 */
+	public static <T> BulkRecordReader<T> of(InputStream body, MediaType mediaType, Class<T> type,
+			ObjectMapper objectMapper) throws IOException {
+
+		Charset charset = mediaType.getCharset() != null ? mediaType.getCharset() : StandardCharsets.UTF_8;
+
+		if (BulkFormat.fromMediaType(mediaType) == BulkFormat.CSV) {
+			ObjectReader reader = CSV_MAPPER.readerFor(type).with(CsvSchema.emptySchema().withHeader());
+			return new CsvRecordReader<>(reader.readValues(new InputStreamReader(body, charset)));
+		}
+
+		return new NdjsonRecordReader<>(new BufferedReader(new InputStreamReader(body, charset)),
+				objectMapper.readerFor(type));
+	}
+
+	/**
+	 * Read the next record.
+	 * 
+	 * @return the record, or null at the end of the body
+	 * @throws JsonMappingException if the record is not valid, the following
+	 *                              records can still be read
+	 * @throws IOException          if the body can not be read any further
+	 */
+	public T next() throws IOException {
+		T record = read();
+		if (record != null) {
+			recordNumber++;
+		}
+		return record;
+	}
+
+	/**
+	 * @return number of the last record read, starting at 1
+	 */
+	public int getRecordNumber() {
+		return recordNumber;
+	}
+
+	protected void skip() {
+		recordNumber++;
+	}
+
+	protected abstract T read() throws IOException;
+
+	private static class NdjsonRecordReader<T> extends BulkRecordReader<T> {
+
+		private final BufferedReader lines;
+
+		private final ObjectReader reader;
+
+		NdjsonRecordReader(BufferedReader lines, ObjectReader reader) {
+			this.lines = lines;
+			this.reader = reader;
+		}
+
+		@Override
+		protected T read() throws IOException {
+			String line;
+			do {
+				line = lines.readLine();
+			} while (line != null && line.trim().isEmpty());
+
+			if (line == null) {
+				return null;
+			}
+
+			try {
+				return reader.readValue(line);
+			} catch (JsonProcessingException e) {
+				// Every line is parsed on its own, so a broken line does not stop the rest
+				skip();
+				throw JsonMappingException.from((JsonParser) null, e.getOriginalMessage(), e);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			lines.close();
+		}
+	}
+
+	private static class CsvRecordReader<T> extends BulkRecordReader<T> {
+
+		private final MappingIterator<T> records;
+
+		CsvRecordReader(MappingIterator<T> records) {
+			this.records = records;
+		}
+
+		@Override
+		protected T read() throws IOException {
+			if (!records.hasNextValue()) {
+				return null;
+			}
+
+			try {
+				return records.nextValue();
+			} catch (JsonMappingException e) {
+				// The iterator skips the rest of the row on the next call
+				skip();
+				throw JsonMappingException.from((JsonParser) null, e.getOriginalMessage(), e);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			records.close();
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.util;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * Circuit breaker counting consecutive failures. Once open, calls are refused
+ * for the open duration, then a single trial call decides whether it closes
+ * again or stays open.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final int failureThreshold;
+
+	private final long openNanos;
+
+	private final Consumer<State> onTransition;
+
+	private State state = State.CLOSED;
+
+	private int failures;
+
+	private long openedAt;
+
+	private boolean trialRunning;
+
+	/**
+	 * @param failureThreshold consecutive failures that open the circuit
+	 * @param openDuration     time calls are refused before a trial call
+	 * @param onTransition     called with the new state on every transition
+	 */
+	public CircuitBreaker(int failureThreshold, Duration openDuration, Consumer<State> onTransition) {
+		this.failureThreshold = failureThreshold;
+		this.openNanos = openDuration.toNanos();
+		this.onTransition = onTransition;
+	}
+
+	/**
+	 * Ask to make a call.
+	 * 
+	 * @return true if the call may go ahead, its outcome must then be reported
+	 */
+	public synchronized boolean tryAcquire() {
+		switch (state) {
+		case CLOSED:
+			return true;
+		case OPEN:
+			if (System.nanoTime() - openedAt < openNanos) {
+				return false;
+			}
+			transition(State.HALF_OPEN);
+			trialRunning = true;
+			return true;
+		default:
+			// Half open: only the trial call goes ahead
+			if (trialRunning) {
+				return false;
+			}
+			trialRunning = true;
+			return true;
+		}
+	}
+
+	public synchronized void onSuccess() {
+		failures = 0;
+		trialRunning = false;
+		if (state != State.CLOSED) {
+			transition(State.CLOSED);
+		}
+	}
+
+	/**
+	 * Report a call that did not reach the database, for example refused by a
+	 * full queue. It neither opens nor closes the circuit, the next call is a
+	 * trial again if this one was.
+	 */
+	public synchronized void onIgnored() {
+		trialRunning = false;
+	}
+
+	public synchronized void onFailure() {
+		trialRunning = false;
+		if (state == State.HALF_OPEN || (state == State.CLOSED && ++failures >= failureThreshold)) {
+			failures = 0;
+			openedAt = System.nanoTime();
+			transition(State.OPEN);
+		}
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	private void transition(State newState) {
+		state = newState;
+		onTransition.accept(newState);
+	}
+}
@@ -0,0 +1,35 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.util;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+/**
+ * Tells which database constraint made a write fail.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public final class ConstraintViolation {
+
+	private ConstraintViolation() {
+	}
+
+	/**
+	 * Check if the exception was raised by the given constraint.
+	 * 
+	 * @param e              exception raised by the write
+	 * @param constraintName name of the constraint or unique index
+	 * @return true if the violated constraint is the given one
+	 */
+	public static boolean isViolationOf(DataIntegrityViolationException e, String constraintName) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof ConstraintViolationException) {
+				String violated = ((ConstraintViolationException) cause).getConstraintName();
+
+				// Some databases report the index with its table or columns around it
+				return violated != null && violated.toLowerCase().contains(constraintName.toLowerCase());
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,17 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.util;
+
+/**
+ * The database could not answer in time and there is no earlier value to
+ * serve instead.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public class DatabaseUnavailableException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public DatabaseUnavailableException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,140 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.MediaType;
+import org.springframework.util.DigestUtils;
+
+/**
+ * Entity tags (ETag, If-Match, If-None-Match) made of row versions. The tag of
+ * a resource starts with its own version, which is the one If-Match compares,
+ * followed by the versions of the resources it embeds. Every media type of a
+ * resource is a representation of its own, so the tags sent get the format of
+ * the body as a suffix, for example "3.0.1+cbor".
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public final class EntityTags {
+
+	// Never a row version, stands for a missing embedded resource
+	public static final int NO_VERSION = -1;
+
+	private static final char SEPARATOR = '.';
+
+	private static final char FORMAT_SEPARATOR = '+';
+
+	private EntityTags() {
+	}
+
+	/**
+	 * Strong entity tag of a version.
+	 * 
+	 * @param version          version of the row
+	 * @param embeddedVersions versions of the rows embedded in the response
+	 * @return quoted versions, for example "3" or "3.0.1"
+	 */
+	public static String of(int version, int... embeddedVersions) {
+		StringBuilder tag = new StringBuilder().append('"').append(version);
+		for (int embeddedVersion : embeddedVersions) {
+			tag.append(SEPARATOR).append(embeddedVersion);
+		}
+		return tag.append('"').toString();
+	}
+
+	/**
+	 * Strong entity tag of a page: changes when an element is added, removed or
+	 * updated, or when the total count changes.
+	 * 
+	 * @param page      page read
+	 * @param id        id of an element
+	 * @param entityTag entity tag of an element
+	 * @return quoted digest of the ids and tags of the elements
+	 */
+	public static <T> String ofPage(Slice<T> page, ToIntFunction<T> id, Function<T, String> entityTag) {
+		StringBuilder content = new StringBuilder();
+		for (T element : page) {
+			content.append(id.applyAsInt(element)).append(entityTag.apply(element)).append(',');
+		}
+		content.append(page.hasNext());
+		if (page instanceof Page) {
+			content.append(',').append(((Page<T>) page).getTotalElements());
+		}
+		return "\"" + DigestUtils.md5DigestAsHex(content.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+	}
+
+	/**
+	 * Strong entity tag of one representation of a resource or page.
+	 * 
+	 * @param entityTag tag of the versions, see {@link #of(int, int...)} and
+	 *                  {@link #ofPage(Slice, ToIntFunction, Function)}
+	 * @param mediaType media type of the body, null if not negotiated
+	 * @return the tag followed by the format, for example "3+json" or "3+protobuf"
+	 */
+	public static String ofRepresentation(String entityTag, MediaType mediaType) {
+		if (mediaType == null) {
+			return entityTag;
+		}
+
+		// application/x-jackson-smile is smile, application/x-protobuf is protobuf
+		String subtype = mediaType.getSubtype();
+		String format = subtype.substring(subtype.lastIndexOf('-') + 1);
+
+		return entityTag.substring(0, entityTag.length() - 1) + FORMAT_SEPARATOR + format + '"';
+	}
+
+	/**
+	 * Versions accepted by an If-Match header, one per tag of the list. The
+	 * format of the representation a tag was sent with, if any, does not matter.
+	 * 
+	 * @param ifMatch If-Match header, may be null
+	 * @return the versions, null if any version matches (no header or *), empty
+	 *         if no tag of the list was sent by this service
+	 */
+	public static Set<Integer> versionsOf(String ifMatch) {
+		if (ifMatch == null || ifMatch.trim().equals("*")) {
+			return null;
+		}
+
+		Set<Integer> versions = new LinkedHashSet<>();
+
+		// "1+json", W/"2", "3.0.1+cbor": the quoted tags, the commas are between them
+		int start = ifMatch.indexOf('"');
+		while (start >= 0) {
+			int end = ifMatch.indexOf('"', start + 1);
+			if (end < 0) {
+				break;
+			}
+
+			// If-Match uses the strong comparison, a weak tag never matches
+			boolean weak = start >= 2 && ifMatch.startsWith("W/", start - 2);
+			Integer version = weak ? null : versionOfTag(ifMatch.substring(start + 1, end));
+			if (version != null) {
+				versions.add(version);
+			}
+
+			start = ifMatch.indexOf('"', end + 1);
+		}
+
+		return versions;
+	}
+
+	// Version of the resource itself, the first one of the tag
+	private static Integer versionOfTag(String tag) {
+		int format = tag.indexOf(FORMAT_SEPARATOR);
+		String versions = format < 0 ? tag : tag.substring(0, format);
+		int end = versions.indexOf(SEPARATOR);
+
+		try {
+			return Integer.valueOf(end < 0 ? versions : versions.substring(0, end));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
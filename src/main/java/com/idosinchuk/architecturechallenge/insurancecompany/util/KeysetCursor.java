@@ -0,0 +1,80 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Opaque continuation token for keyset (seek) pagination on the id primary
+ * key. Every page is read with "id > last id order by id limit size", so a
+ * deep page costs the same as the first one.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public final class KeysetCursor {
+
+	public static final int DEFAULT_SIZE = 20;
+
+	public static final int MAX_SIZE = 2000;
+
+	private static final String PREFIX = "id:";
+
+	private KeysetCursor() {
+	}
+
+	/**
+	 * Encode the id of the last element of a page.
+	 * 
+	 * @param lastId id of the last element already read
+	 * @return cursor to pass to get the following page
+	 */
+	public static String encode(int lastId) {
+		return Base64.getUrlEncoder().withoutPadding()
+				.encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Decode a cursor. An empty cursor starts from the beginning.
+	 * 
+	 * @param cursor cursor returned with the previous page
+	 * @return id of the last element already read
+	 * @throws IllegalArgumentException if the cursor is not valid
+	 */
+	public static int decode(String cursor) {
+		if (cursor == null || cursor.isEmpty()) {
+			return 0;
+		}
+
+		String value;
+		try {
+			value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+		}
+
+		if (!value.startsWith(PREFIX)) {
+			throw new IllegalArgumentException("Invalid cursor " + cursor);
+		}
+
+		try {
+			return Integer.parseInt(value.substring(PREFIX.length()));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+		}
+	}
+
+	/**
+	 * Page request for a keyset page: always the first page of the remaining
+	 * rows, ordered by id and clamped to {@link #MAX_SIZE}.
+	 * 
+	 * @param size requested page size
+	 * @return Pageable for the seek query
+	 */
+	public static Pageable pageRequest(int size) {
+		return PageRequest.of(0, Math.max(1, Math.min(size, MAX_SIZE)), Sort.by("id"));
+	}
+}
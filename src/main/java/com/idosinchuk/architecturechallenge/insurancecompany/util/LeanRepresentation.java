@@ -0,0 +1,35 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.util;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Lean representation, asked for with ?lean=true. The responses are plain JSON:
+ * no links are built and the content is not wrapped in HAL (_embedded,
+ * _links). The query flag keeps the lean and the full representation apart in
+ * the caches, as any other query parameter.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public final class LeanRepresentation {
+
+	public static final String PARAM = "lean";
+
+	private LeanRepresentation() {
+	}
+
+	/**
+	 * Whether the current request asks for the lean representation.
+	 * 
+	 * @return true with ?lean=true
+	 */
+	public static boolean isRequested() {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+
+		return attributes instanceof ServletRequestAttributes
+				&& Boolean.parseBoolean(((ServletRequestAttributes) attributes).getRequest().getParameter(PARAM));
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.util;
+
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.mvc.ControllerLinkBuilder;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Self links of the controllers, built once and reused. Building a link with
+ * {@link ControllerLinkBuilder} reads the request mapping of the controller,
+ * resolves the base URI of the request and parses the resulting URI template on
+ * every call. The same link is asked for on every write of a key, so the links
+ * are cached by controller, path and everything of the request the base URI is
+ * made of (scheme, host, port, context path and forwarded headers).
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public final class Links {
+
+	private static final int MAX_LINKS = 10000;
+
+	private static final String[] FORWARDED_HEADERS = { "Forwarded", "X-Forwarded-Proto", "X-Forwarded-Host",
+			"X-Forwarded-Port", "X-Forwarded-Prefix", "X-Forwarded-Ssl" };
+
+	private static final Cache<String, Link> LINKS = Caffeine.newBuilder().maximumSize(MAX_LINKS).build();
+
+	private Links() {
+	}
+
+	/**
+	 * Self link of a controller, or of a path below it, for the current request.
+	 * 
+	 * @param controller controller class
+	 * @param path       path segments below the controller mapping, if any
+	 * @return Link with rel self
+	 */
+	public static Link self(Class<?> controller, Object... path) {
+		StringBuilder key = new StringBuilder(baseOf(currentRequest())).append(controller.getName());
+		for (Object segment : path) {
+			key.append('/').append(segment);
+		}
+
+		return LINKS.get(key.toString(), k -> {
+			ControllerLinkBuilder link = linkTo(controller);
+			for (Object segment : path) {
+				link = link.slash(segment);
+			}
+			return link.withSelfRel();
+		});
+	}
+
+	private static String baseOf(HttpServletRequest request) {
+		StringBuilder base = new StringBuilder().append(request.getScheme()).append("://")
+				.append(request.getServerName()).append(':').append(request.getServerPort())
+				.append(request.getContextPath()).append('\n');
+		for (String header : FORWARDED_HEADERS) {
+			String value = request.getHeader(header);
+			if (value != null) {
+				base.append(header).append(':').append(value);
+			}
+			base.append('\n');
+		}
+		return base.toString();
+	}
+
+	private static HttpServletRequest currentRequest() {
+		return ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest();
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.util;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+
+/**
+ * Timeout of the requests streaming a body of any size, the bulk imports and
+ * the export. A streamed body is written on an asynchronous request, so the
+ * handler marks its request and the timeout is set before the request turns
+ * asynchronous. The other asynchronous requests keep the default timeout
+ * (spring.mvc.async.request-timeout).
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+public class LongRunningRequest implements CallableProcessingInterceptor {
+
+	private static final String ATTRIBUTE = LongRunningRequest.class.getName();
+
+	private final long timeout;
+
+	public LongRunningRequest(Duration timeout) {
+		this.timeout = timeout.toMillis();
+	}
+
+	/**
+	 * Give the current request the long timeout once its body is streamed.
+	 */
+	public static void mark() {
+		RequestContextHolder.currentRequestAttributes().setAttribute(ATTRIBUTE, Boolean.TRUE,
+				RequestAttributes.SCOPE_REQUEST);
+	}
+
+	@Override
+	public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+		// The request is not asynchronous yet, the timeout is applied when it starts
+		if (request instanceof AsyncWebRequest
+				&& request.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) != null) {
+			((AsyncWebRequest) request).setTimeout(timeout);
+		}
+	}
+
+}
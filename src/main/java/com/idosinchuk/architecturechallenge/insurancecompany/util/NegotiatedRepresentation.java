@@ -0,0 +1,87 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Media type a read is answered with, out of the produces of its handler and
+ * the Accept header. The body is written after the conditional request is
+ * checked, so the media type is negotiated ahead, as the message converters
+ * will, to give every representation its own entity tag. The responses vary on
+ * Accept, a shared cache keeps one body per media type.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+public final class NegotiatedRepresentation {
+
+	private NegotiatedRepresentation() {
+	}
+
+	/**
+	 * Entity tag of the representation negotiated for the current request.
+	 *
+	 * @param entityTag tag of the versions
+	 * @return the tag with the format of the body
+	 */
+	public static String entityTag(String entityTag) {
+		return EntityTags.ofRepresentation(entityTag, mediaType());
+	}
+
+	/**
+	 * Media type negotiated for the current request.
+	 *
+	 * @return MediaType, null if the handler does not declare the types it
+	 *         produces or none is accepted
+	 */
+	@SuppressWarnings("unchecked")
+	public static MediaType mediaType() {
+		HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes())
+				.getRequest();
+
+		Set<MediaType> producibleTypes = (Set<MediaType>) request
+				.getAttribute(HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE);
+		if (producibleTypes == null) {
+			return null;
+		}
+
+		List<String> accept = Collections.list(request.getHeaders(HttpHeaders.ACCEPT));
+		List<MediaType> acceptedTypes = accept.isEmpty() ? Collections.singletonList(MediaType.ALL)
+				: MediaType.parseMediaTypes(accept);
+
+		// The same choice as the message converters: the most specific pair, then quality
+		List<MediaType> compatibleTypes = new ArrayList<>();
+		for (MediaType acceptedType : acceptedTypes) {
+			for (MediaType producibleType : producibleTypes) {
+				if (acceptedType.isCompatibleWith(producibleType)) {
+					compatibleTypes.add(mostSpecific(acceptedType, producibleType));
+				}
+			}
+		}
+		MediaType.sortBySpecificityAndQuality(compatibleTypes);
+
+		for (MediaType compatibleType : compatibleTypes) {
+			if (compatibleType.isConcrete()) {
+				return new MediaType(compatibleType.getType(), compatibleType.getSubtype());
+			}
+		}
+		return null;
+	}
+
+	private static MediaType mostSpecific(MediaType acceptedType, MediaType producibleType) {
+		MediaType producedType = producibleType.copyQualityValue(acceptedType);
+		return MediaType.SPECIFICITY_COMPARATOR.compare(acceptedType, producedType) <= 0 ? acceptedType
+				: producedType;
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.util;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Unique, roughly time-ordered 63-bit ids generated without locks (Snowflake
+ * layout): 41 bits of milliseconds since {@link #EPOCH}, 10 bits of node and
+ * 12 bits of sequence within the millisecond. Two generators only produce the
+ * same id if they have the same node.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public final class SnowflakeIdGenerator {
+
+	// 2020-01-01T00:00:00Z, the 41 bits of milliseconds last until 2089
+	public static final long EPOCH = 1577836800000L;
+
+	private static final int NODE_BITS = 10;
+
+	private static final int SEQUENCE_BITS = 12;
+
+	private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+	public static final int MAX_NODES = 1 << NODE_BITS;
+
+	// Length of the base 36 code of the largest id
+	public static final int CODE_LENGTH = 13;
+
+	private static final String CODE_PADDING = "0000000000000";
+
+	private final long node;
+
+	private final LongSupplier clock;
+
+	// Milliseconds since the epoch and sequence of the last id, in one value
+	private final AtomicLong last = new AtomicLong();
+
+	public SnowflakeIdGenerator(int node) {
+		this(node, System::currentTimeMillis);
+	}
+
+	public SnowflakeIdGenerator(int node, LongSupplier clock) {
+		if (node < 0 || node >= MAX_NODES) {
+			throw new IllegalArgumentException("The node must be between 0 and " + (MAX_NODES - 1));
+		}
+		this.node = node;
+		this.clock = clock;
+	}
+
+	/**
+	 * Next id of this node.
+	 * 
+	 * @return id greater than the previous one
+	 */
+	public long nextId() {
+		long previous;
+		long next;
+
+		do {
+			previous = last.get();
+			long now = clock.getAsLong() - EPOCH;
+
+			// A new millisecond restarts the sequence. Within the same one, or when the
+			// clock goes back, the sequence goes on and its overflow carries into the
+			// milliseconds: ids run ahead of the clock instead of waiting for it.
+			next = now > (previous >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : previous + 1;
+		} while (!last.compareAndSet(previous, next));
+
+		return (next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS) | (node << SEQUENCE_BITS)
+				| (next & SEQUENCE_MASK);
+	}
+
+	/**
+	 * Next id of this node as a code.
+	 * 
+	 * @return code of {@link #CODE_LENGTH} characters
+	 */
+	public String nextCode() {
+		return code(nextId());
+	}
+
+	/**
+	 * Id in base 36, upper case and padded with zeros so the codes sort like the
+	 * ids.
+	 * 
+	 * @param id positive id
+	 * @return code of {@link #CODE_LENGTH} characters
+	 */
+	public static String code(long id) {
+		String code = Long.toString(id, 36).toUpperCase(Locale.ROOT);
+		return CODE_PADDING.substring(code.length()) + code;
+	}
+
+}
@@ -0,0 +1,76 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads of Java 21 and later. The build targets Java 8, so they are
+ * reached by reflection and only exist when the application runs on a JDK that
+ * has them.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+public final class VirtualThreads {
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * Whether the running JDK has virtual threads.
+	 *
+	 * @return true from Java 21
+	 */
+	public static boolean isAvailable() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Factory of virtual threads named prefix followed by a counter.
+	 *
+	 * @param prefix name prefix, for example http-
+	 * @return ThreadFactory
+	 * @throws IllegalStateException if the JDK has no virtual threads
+	 */
+	public static ThreadFactory factory(String prefix) {
+		if (!isAvailable()) {
+			throw new IllegalStateException("Virtual threads need Java 21 or later, running on Java "
+					+ System.getProperty("java.version"));
+		}
+
+		try {
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			Object ofVirtual = Thread.class.getMethod("ofVirtual").invoke(null);
+			Object named = builder.getMethod("name", String.class, long.class).invoke(ofVirtual, prefix, 0L);
+			return (ThreadFactory) builder.getMethod("factory").invoke(named);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Can not create virtual threads", e);
+		}
+	}
+
+	/**
+	 * Executor starting a new virtual thread per task.
+	 *
+	 * @param prefix name prefix of the threads
+	 * @return ExecutorService, unbounded
+	 * @throws IllegalStateException if the JDK has no virtual threads
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(String prefix) {
+		ThreadFactory factory = factory(prefix);
+
+		try {
+			Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor",
+					ThreadFactory.class);
+			return (ExecutorService) newThreadPerTaskExecutor.invoke(null, factory);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Can not create virtual threads", e);
+		}
+	}
+}
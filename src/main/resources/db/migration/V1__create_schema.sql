@@ -0,0 +1,49 @@
+-- Schema as it was before versioned migrations. Existing databases are
+-- baselined at this version (spring.flyway.baseline-on-migrate).
+
+CREATE TABLE IF NOT EXISTS product (
+    id INT NOT NULL AUTO_INCREMENT,
+    product_name VARCHAR(255) NOT NULL,
+    product_code VARCHAR(255) NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS holder (
+    id INT NOT NULL AUTO_INCREMENT,
+    holder_name VARCHAR(255) NOT NULL,
+    holder_surname VARCHAR(255) NOT NULL,
+    phone_number VARCHAR(255) NOT NULL,
+    email VARCHAR(255) NOT NULL,
+    passport_number VARCHAR(255) NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS holder_historical (
+    id INT NOT NULL AUTO_INCREMENT,
+    holder_name VARCHAR(255) NOT NULL,
+    holder_surname VARCHAR(255) NOT NULL,
+    phone_number VARCHAR(255) NOT NULL,
+    email VARCHAR(255) NOT NULL,
+    passport_number VARCHAR(255) NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS vehicle (
+    id INT NOT NULL AUTO_INCREMENT,
+    brand VARCHAR(255) NOT NULL,
+    license_plate VARCHAR(255) NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS policy (
+    id INT NOT NULL AUTO_INCREMENT,
+    policy_code VARCHAR(255) NOT NULL,
+    cost DECIMAL(19, 2) NOT NULL,
+    product_id INT,
+    holder_id INT,
+    vehicle_id INT,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_policy_product FOREIGN KEY (product_id) REFERENCES product (id),
+    CONSTRAINT fk_policy_holder FOREIGN KEY (holder_id) REFERENCES holder (id),
+    CONSTRAINT fk_policy_vehicle FOREIGN KEY (vehicle_id) REFERENCES vehicle (id)
+);
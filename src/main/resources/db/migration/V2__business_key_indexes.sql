@@ -0,0 +1,12 @@
+-- Every lookup goes through a business key. The unique indexes also replace
+-- the duplicate pre-check SELECTs of the add paths.
+
+CREATE UNIQUE INDEX uk_policy_policy_code ON policy (policy_code);
+
+CREATE UNIQUE INDEX uk_holder_passport_number ON holder (passport_number);
+
+CREATE UNIQUE INDEX uk_vehicle_license_plate ON vehicle (license_plate);
+
+CREATE UNIQUE INDEX uk_product_product_code ON product (product_code);
+
+CREATE INDEX idx_holder_historical_passport_number ON holder_historical (passport_number);
@@ -0,0 +1,20 @@
+-- Ids of policy, holder, vehicle and holder_historical are allocated by
+-- Hibernate in blocks (pooled-lo table generator) instead of AUTO_INCREMENT,
+-- so their inserts can be batched. Each block starts after the current max id.
+-- The id columns keep AUTO_INCREMENT for compatibility, but every writer must
+-- go through the allocator once this is deployed.
+
+CREATE TABLE id_generator (
+    sequence_name VARCHAR(255) NOT NULL,
+    next_val BIGINT NOT NULL,
+    PRIMARY KEY (sequence_name)
+);
+
+INSERT INTO id_generator (sequence_name, next_val) SELECT 'policy', COALESCE(MAX(id), 0) + 1 FROM policy;
+
+INSERT INTO id_generator (sequence_name, next_val) SELECT 'holder', COALESCE(MAX(id), 0) + 1 FROM holder;
+
+INSERT INTO id_generator (sequence_name, next_val) SELECT 'vehicle', COALESCE(MAX(id), 0) + 1 FROM vehicle;
+
+INSERT INTO id_generator (sequence_name, next_val)
+    SELECT 'holder_historical', COALESCE(MAX(id), 0) + 1 FROM holder_historical;
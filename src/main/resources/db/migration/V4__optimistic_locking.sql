@@ -0,0 +1,10 @@
+-- Version of each row for optimistic locking. Every update increments it and
+-- a conditional update (If-Match) only applies to the version it was given.
+
+ALTER TABLE policy ADD COLUMN version INT NOT NULL DEFAULT 0;
+
+ALTER TABLE holder ADD COLUMN version INT NOT NULL DEFAULT 0;
+
+ALTER TABLE vehicle ADD COLUMN version INT NOT NULL DEFAULT 0;
+
+ALTER TABLE product ADD COLUMN version INT NOT NULL DEFAULT 0;
@@ -0,0 +1,16 @@
+-- Responses of the POST endpoints by Idempotency-Key, shared by all the
+-- instances when insurancecompany.idempotency.store=jdbc. The key is a digest
+-- of the caller, the endpoint and the header. Status 0 while the first request
+-- is processed. Rows older than the TTL are purged by stored_at.
+
+CREATE TABLE idempotency_key (
+    idempotency_key CHAR(32) NOT NULL,
+    fingerprint CHAR(32) NOT NULL,
+    status INT NOT NULL,
+    content_type VARCHAR(255),
+    body MEDIUMBLOB,
+    stored_at DATETIME(3) NOT NULL,
+    PRIMARY KEY (idempotency_key)
+);
+
+CREATE INDEX idx_idempotency_key_stored_at ON idempotency_key (stored_at);
@@ -0,0 +1,4 @@
+-- Number of instances started with server-assigned policy codes. Each startup
+-- increments it and generates its codes as node (value mod 1024).
+
+INSERT INTO id_generator (sequence_name, next_val) VALUES ('policy_code_node', 0);
@@ -0,0 +1,7 @@
+-- Location and ETag headers of the stored responses, a retried POST gets the
+-- URI of the resource created by the first request, whose code may have been
+-- generated by the server.
+
+ALTER TABLE idempotency_key ADD COLUMN location VARCHAR(2048);
+
+ALTER TABLE idempotency_key ADD COLUMN entity_tag VARCHAR(255);
@@ -0,0 +1,115 @@
+package com.idosinchuk.architecturechallenge.insurancecompany;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+
+/**
+ * Permits of the connections given out by {@link ConcurrencyLimitedDataSource}
+ * and the beans it is applied to. Plain Java, the virtual threads themselves
+ * need Java 21.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+public class ConcurrencyLimitedDataSourceTests {
+
+	private static final Duration ACQUIRE_TIMEOUT = Duration.ofMillis(50);
+
+	private DataSource pool;
+
+	private ConcurrencyLimitedDataSource dataSource;
+
+	@Before
+	public void setUp() throws SQLException {
+		pool = mock(DataSource.class);
+		when(pool.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+
+		dataSource = new ConcurrencyLimitedDataSource(pool, 1, ACQUIRE_TIMEOUT);
+	}
+
+	@Test
+	public void acquireTimesOutWhileAllConnectionsAreInUse() throws SQLException {
+		Connection connection = dataSource.getConnection();
+
+		long start = System.nanoTime();
+		assertThatThrownBy(dataSource::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+		assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(ACQUIRE_TIMEOUT);
+
+		connection.close();
+	}
+
+	@Test
+	public void closeReleasesThePermitOnce() throws SQLException {
+		Connection connection = dataSource.getConnection();
+
+		// A second close does not give a second permit
+		connection.close();
+		connection.close();
+
+		Connection next = dataSource.getConnection();
+		assertThat(next).isNotSameAs(connection);
+		assertThatThrownBy(dataSource::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+
+		next.close();
+		dataSource.getConnection().close();
+	}
+
+	@Test
+	public void failedConnectionReleasesThePermit() throws SQLException {
+		when(pool.getConnection()).thenThrow(new SQLException("Connection refused"));
+
+		assertThatThrownBy(dataSource::getConnection).hasMessage("Connection refused");
+		assertThatThrownBy(dataSource::getConnection).hasMessage("Connection refused");
+		assertThat(dataSource.getWaiting()).isZero();
+	}
+
+	@Test
+	public void connectionEqualsAndUnwrapsToItself() throws SQLException {
+		Connection connection = dataSource.getConnection();
+
+		assertThat(connection).isEqualTo(connection);
+		assertThat(connection.hashCode()).isEqualTo(connection.hashCode());
+		assertThat(connection.isWrapperFor(Connection.class)).isTrue();
+		assertThat(connection.unwrap(Connection.class)).isSameAs(connection);
+
+		connection.close();
+	}
+
+	@Test
+	public void onlyJpaAndJdbcTemplateAreLimited() {
+		BeanPostProcessor postProcessor = VirtualThreadConfig
+				.concurrencyLimitedDataSourcePostProcessor(new MockEnvironment());
+
+		// Flyway and the health check get the pool bean itself
+		assertThat(postProcessor.postProcessBeforeInitialization(pool, "dataSource")).isSameAs(pool);
+		assertThat(postProcessor.postProcessAfterInitialization(pool, "dataSource")).isSameAs(pool);
+
+		LocalContainerEntityManagerFactoryBean entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+		entityManagerFactory.setDataSource(pool);
+		postProcessor.postProcessBeforeInitialization(entityManagerFactory, "entityManagerFactory");
+
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(pool);
+		postProcessor.postProcessBeforeInitialization(jdbcTemplate, "jdbcTemplate");
+
+		// One limit for both, they share the connection of a transaction
+		assertThat(entityManagerFactory.getDataSource()).isInstanceOf(ConcurrencyLimitedDataSource.class)
+				.isSameAs(jdbcTemplate.getDataSource());
+	}
+
+}
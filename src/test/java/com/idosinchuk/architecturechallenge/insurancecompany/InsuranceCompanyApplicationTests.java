@@ -3,10 +3,12 @@ package com.idosinchuk.architecturechallenge.insurancecompany;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
+@ActiveProfiles("test")
 public class InsuranceCompanyApplicationTests {
 
 	@Test
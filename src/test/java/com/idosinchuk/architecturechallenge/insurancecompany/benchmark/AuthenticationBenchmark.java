@@ -0,0 +1,80 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.benchmark;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.CachingAuthenticationProvider;
+
+/**
+ * Authentication overhead of a request with basic credentials, as configured in
+ * SpringSecurityConfig: the bcrypt check of the password on every request,
+ * against the verifications cached by {@link CachingAuthenticationProvider}.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthenticationBenchmark {
+
+	@Param({ "false", "true" })
+	public boolean cached;
+
+	private AuthenticationManager authenticationManager;
+
+	@Setup
+	public void setup() {
+		PasswordEncoder encoder = PasswordEncoderFactories.createDelegatingPasswordEncoder();
+
+		DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+		provider.setUserDetailsService(new InMemoryUserDetailsManager(
+				User.withUsername("user").password(encoder.encode("user")).roles("USER").build()));
+		provider.setPasswordEncoder(encoder);
+
+		AuthenticationProvider authenticationProvider = cached
+				? new CachingAuthenticationProvider(provider, Duration.ofMinutes(5), 10000)
+				: provider;
+		authenticationManager = new ProviderManager(Collections.singletonList(authenticationProvider));
+	}
+
+	@Benchmark
+	public Authentication authenticate() {
+		// A new token per request, as the basic authentication filter does
+		return authenticationManager.authenticate(new UsernamePasswordAuthenticationToken("user", "user"));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(AuthenticationBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
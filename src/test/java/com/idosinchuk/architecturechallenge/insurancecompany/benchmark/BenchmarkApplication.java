@@ -0,0 +1,62 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.benchmark;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.InsuranceCompanyApplication;
+
+/**
+ * Starts the application for the benchmarks that need the real beans, with
+ * the test profile, a random port and the in-memory database behind
+ * {@link RoundTripDriver}.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+final class BenchmarkApplication {
+
+	private BenchmarkApplication() {
+	}
+
+	static ConfigurableApplicationContext start(String... properties) {
+		return start(0, properties);
+	}
+
+	/**
+	 * Start the application on the in-memory database.
+	 * 
+	 * @param roundTripMicros latency charged on every statement execution
+	 * @param properties      extra application properties
+	 * @return the application context
+	 */
+	static ConfigurableApplicationContext start(long roundTripMicros, String... properties) {
+		return start("mem:benchmark", roundTripMicros, properties);
+	}
+
+	/**
+	 * Start the application.
+	 * 
+	 * @param database        H2 database, for example mem:benchmark or
+	 *                        file:/tmp/benchmark
+	 * @param roundTripMicros latency charged on every statement execution
+	 * @param properties      extra application properties
+	 * @return the application context
+	 */
+	static ConfigurableApplicationContext start(String database, long roundTripMicros, String... properties) {
+		RoundTripDriver.setRoundTripMicros(roundTripMicros);
+
+		String[] args = new String[properties.length + 5];
+		args[0] = "--server.port=0";
+		args[1] = "--spring.jpa.properties.hibernate.generate_statistics=false";
+		args[2] = "--logging.level.root=WARN";
+		args[3] = "--spring.datasource.driver-class-name=" + RoundTripDriver.class.getName();
+		args[4] = "--spring.datasource.url=" + RoundTripDriver.PREFIX + "h2:" + database
+				+ ";MODE=MySQL;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE";
+		for (int i = 0; i < properties.length; i++) {
+			args[i + 5] = "--" + properties[i];
+		}
+
+		// command line arguments, so they win over application-test.properties
+		return new SpringApplicationBuilder(InsuranceCompanyApplication.class).profiles("test").run(args);
+	}
+}
@@ -0,0 +1,183 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.BulkFormat;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PolicyExportService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PolicyService;
+
+/**
+ * Time to export a synthetic policy book of up to millions of policies, each
+ * with its own holder and vehicle, against reading the same book page by page
+ * from the policy service. The database is an H2 file so the table does not
+ * live in the heap, and the fork runs with a small heap: the export must finish
+ * in it whatever the number of rows. The peak of the old generation is printed
+ * after each iteration: with 2M rows, far more than the fetch size, it stays
+ * well below the size of the export.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx256m")
+public class ExportBenchmark {
+
+	private static final int PRODUCTS = 100;
+
+	private static final int PAGE_SIZE = 1000;
+
+	@Param({ "100000", "2000000" })
+	public int rows;
+
+	private File directory;
+
+	private ConfigurableApplicationContext context;
+
+	private PolicyExportService policyExportService;
+
+	private PolicyService policyService;
+
+	private ObjectMapper objectMapper;
+
+	@Setup
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("export-benchmark").toFile();
+		context = BenchmarkApplication.start("file:" + new File(directory, "policies").getAbsolutePath(), 0);
+
+		policyExportService = context.getBean(PolicyExportService.class);
+		policyService = context.getBean(PolicyService.class);
+		objectMapper = context.getBean(ObjectMapper.class);
+
+		// Set-based inserts, the rows never go through the heap
+		JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+		jdbcTemplate.update("INSERT INTO product (id, product_name, product_code) "
+				+ "SELECT X, 'Full of risk', CONCAT('PRODUCT', X) FROM SYSTEM_RANGE(1, ?)", PRODUCTS);
+		jdbcTemplate.update("INSERT INTO holder (id, holder_name, holder_surname, phone_number, email, "
+				+ "passport_number) SELECT X, 'Igor', 'Dosinchuk', '987654321', 'idosinchuk@example.com', "
+				+ "CONCAT('PASSPORT', X) FROM SYSTEM_RANGE(1, ?)", rows);
+		jdbcTemplate.update("INSERT INTO vehicle (id, brand, license_plate) "
+				+ "SELECT X, 'Jaguar', CONCAT('PLATE', X) FROM SYSTEM_RANGE(1, ?)", rows);
+		jdbcTemplate.update("INSERT INTO policy (id, policy_code, cost, product_id, holder_id, vehicle_id) "
+				+ "SELECT X, CONCAT('POLICY', X), 100.50, MOD(X, ?) + 1, X, X FROM SYSTEM_RANGE(1, ?)", PRODUCTS,
+				rows);
+	}
+
+	@Setup(Level.Iteration)
+	public void resetPeakHeap() {
+		System.gc();
+		oldGenerations().forEach(MemoryPoolMXBean::resetPeakUsage);
+	}
+
+	@TearDown(Level.Iteration)
+	public void printPeakHeap() {
+		long peak = oldGenerations().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+		System.out.printf("%n%d MB old generation peak%n", peak >> 20);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+		FileSystemUtils.deleteRecursively(directory);
+	}
+
+	@Benchmark
+	public long export(Format format) throws IOException {
+		CountingOutputStream out = new CountingOutputStream();
+
+		policyExportService.exportPolicies(format.format, out);
+
+		return out.bytes;
+	}
+
+	@Benchmark
+	public long keysetPages() throws IOException {
+		CountingOutputStream out = new CountingOutputStream();
+
+		// What the extracts did before: every page of the listing, serialized
+		int afterId = 0;
+		Slice<PolicyResponseDTO> page;
+		do {
+			page = policyService.getAllPoliciesAfter(afterId, PAGE_SIZE);
+			for (PolicyResponseDTO policy : page) {
+				objectMapper.writeValue(out, policy);
+				afterId = policy.getId();
+			}
+		} while (page.hasNext());
+
+		return out.bytes;
+	}
+
+	// What survives the young collections, rows kept by the driver would end up here
+	private static Stream<MemoryPoolMXBean> oldGenerations() {
+		return ManagementFactory.getMemoryPoolMXBeans().stream().filter(pool -> pool.getType() == MemoryType.HEAP
+				&& (pool.getName().contains("Old") || pool.getName().contains("Tenured")));
+	}
+
+	/**
+	 * Export format, only a parameter of the export.
+	 */
+	@State(Scope.Benchmark)
+	public static class Format {
+
+		@Param({ "NDJSON", "CSV" })
+		public BulkFormat format;
+	}
+
+	/**
+	 * Discards what is written, only counting the bytes.
+	 */
+	private static class CountingOutputStream extends OutputStream {
+
+		private long bytes;
+
+		@Override
+		public void write(int b) {
+			bytes++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			bytes += len;
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(ExportBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
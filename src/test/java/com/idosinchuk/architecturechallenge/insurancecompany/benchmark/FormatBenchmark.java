@@ -0,0 +1,142 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.idosinchuk.architecturechallenge.insurancecompany.JacksonProtobufHttpMessageConverter;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.HolderResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.ProductResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.VehicleResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.LeanResources;
+
+import lombok.Data;
+
+/**
+ * Size and cost of writing and reading a lean page of policies as JSON, Smile,
+ * CBOR and Protobuf, with the mappers the message converters use. The size of
+ * the page is printed at the setup.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatBenchmark {
+
+	private static final int PAGE_SIZE = 20;
+
+	@Param({ "json", "smile", "cbor", "protobuf" })
+	public String format;
+
+	private ObjectWriter writer;
+
+	private ObjectReader reader;
+
+	private LeanResources<PolicyResponseDTO> page;
+
+	private byte[] body;
+
+	/**
+	 * The page as read by a client.
+	 */
+	@Data
+	public static class PolicyPage {
+
+		private List<PolicyResponseDTO> content;
+
+		private Boolean hasNext;
+
+		private String nextCursor;
+	}
+
+	@Setup
+	public void setup() throws IOException {
+		if ("protobuf".equals(format)) {
+			JacksonProtobufHttpMessageConverter converter = new JacksonProtobufHttpMessageConverter();
+			writer = converter.getMapper().writer(converter.getSchema("Policies"));
+			reader = converter.getMapper().readerFor(PolicyPage.class).with(converter.getSchema("Policies"));
+		} else {
+			Jackson2ObjectMapperBuilder builder = "smile".equals(format) ? Jackson2ObjectMapperBuilder.smile()
+					: "cbor".equals(format) ? Jackson2ObjectMapperBuilder.cbor() : Jackson2ObjectMapperBuilder.json();
+			writer = builder.build().writer();
+			reader = builder.build().readerFor(PolicyPage.class);
+		}
+
+		List<PolicyResponseDTO> policies = new ArrayList<>();
+		for (int i = 1; i <= PAGE_SIZE; i++) {
+			ProductResponseDTO product = new ProductResponseDTO();
+			product.setId(i % 5 + 1);
+			product.setProductName("Full of risk");
+			product.setProductCode("PRODUCT" + product.getId());
+
+			HolderResponseDTO holder = new HolderResponseDTO();
+			holder.setId(i);
+			holder.setHolderName("Igor");
+			holder.setHolderSurname("Dosinchuk");
+			holder.setPhoneNumber("987654321");
+			holder.setEmail("idosinchuk@example.com");
+			holder.setPassportNumber("PASSPORT" + i);
+
+			VehicleResponseDTO vehicle = new VehicleResponseDTO();
+			vehicle.setId(i);
+			vehicle.setBrand("Jaguar");
+			vehicle.setLicensePlate("PLATE" + i);
+
+			PolicyResponseDTO policy = new PolicyResponseDTO();
+			policy.setId(i);
+			policy.setPolicyCode("POLICY" + i);
+			policy.setCost(new BigDecimal("100.50"));
+			policy.setProduct(product);
+			policy.setHolder(holder);
+			policy.setVehicle(vehicle);
+			policies.add(policy);
+		}
+		page = new LeanResources<>(policies, null, true, String.valueOf(PAGE_SIZE), null);
+
+		body = writer.writeValueAsBytes(page);
+		System.out.printf("%n%s page of %d policies: %d bytes%n", format, PAGE_SIZE, body.length);
+	}
+
+	@Benchmark
+	public byte[] write() throws IOException {
+		return writer.writeValueAsBytes(page);
+	}
+
+	@Benchmark
+	public PolicyPage read() throws IOException {
+		return reader.readValue(body);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(FormatBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+
+}
@@ -0,0 +1,119 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.HolderEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.ProductEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.HolderRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.ProductRepository;
+
+/**
+ * Inserts per second with IDENTITY keys (product, one round trip per row)
+ * against the pooled table allocator with JDBC batching (holder). Every
+ * statement execution is charged a network round trip by
+ * {@link RoundTripDriver}, since the in-memory database has none.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+
+	private static final int ROWS = 500;
+
+	@Param({ "0", "250" })
+	public long roundTripMicros;
+
+	private ConfigurableApplicationContext context;
+
+	private TransactionTemplate transactionTemplate;
+
+	private ProductRepository productRepository;
+
+	private HolderRepository holderRepository;
+
+	private long sequence;
+
+	@Setup
+	public void setup() {
+		context = BenchmarkApplication.start(roundTripMicros);
+
+		transactionTemplate = context.getBean(TransactionTemplate.class);
+		productRepository = context.getBean(ProductRepository.class);
+		holderRepository = context.getBean(HolderRepository.class);
+	}
+
+	@TearDown(Level.Iteration)
+	public void cleanUp() {
+		productRepository.deleteAllInBatch();
+		holderRepository.deleteAllInBatch();
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void identityInserts() {
+		List<ProductEntity> products = new ArrayList<>(ROWS);
+		for (int i = 0; i < ROWS; i++) {
+			ProductEntity product = new ProductEntity();
+			product.setProductName("Full of risk");
+			product.setProductCode("P" + sequence++);
+			products.add(product);
+		}
+
+		transactionTemplate.execute(status -> productRepository.saveAll(products));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void pooledBatchedInserts() {
+		List<HolderEntity> holders = new ArrayList<>(ROWS);
+		for (int i = 0; i < ROWS; i++) {
+			HolderEntity holder = new HolderEntity();
+			holder.setHolderName("Igor");
+			holder.setHolderSurname("Dosinchuk");
+			holder.setPhoneNumber("987654321");
+			holder.setEmail("idosinchuk@example.com");
+			holder.setPassportNumber("H" + sequence++);
+			holders.add(holder);
+		}
+
+		transactionTemplate.execute(status -> holderRepository.saveAll(holders));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(InsertBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -0,0 +1,155 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.modelmapper.ModelMapper;
+import org.modelmapper.TypeToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyRequestDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.HolderEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.PolicyEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.ProductEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.VehicleEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.mapper.HolderMapperImpl;
+import com.idosinchuk.architecturechallenge.insurancecompany.mapper.PolicyMapper;
+import com.idosinchuk.architecturechallenge.insurancecompany.mapper.PolicyMapperImpl;
+import com.idosinchuk.architecturechallenge.insurancecompany.mapper.ProductMapperImpl;
+import com.idosinchuk.architecturechallenge.insurancecompany.mapper.VehicleMapperImpl;
+
+/**
+ * Per-call cost of the generated mappers against the former reflective
+ * ModelMapper path. Run with the GC profiler to get the allocation rate
+ * (gc.alloc.rate.norm is bytes per operation).
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapperBenchmark {
+
+	private ModelMapper modelMapper;
+
+	private PolicyMapper policyMapper;
+
+	private PolicyEntity policyEntity;
+
+	private PolicyRequestDTO policyRequestDTO;
+
+	private Page<PolicyEntity> policyPage;
+
+	@Setup
+	public void setup() {
+		modelMapper = new ModelMapper();
+		policyMapper = new PolicyMapperImpl(new ProductMapperImpl(), new HolderMapperImpl(), new VehicleMapperImpl());
+
+		policyEntity = policy(1);
+
+		policyRequestDTO = new PolicyRequestDTO();
+		policyRequestDTO.setPolicyCode("RJHD21JD");
+		policyRequestDTO.setCost(new BigDecimal("100"));
+		policyRequestDTO.setProductCode("S6DHD78S");
+		policyRequestDTO.setPassportNumber("PS9393474S");
+		policyRequestDTO.setLicensePlate("6846JNR");
+
+		List<PolicyEntity> content = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			content.add(policy(i));
+		}
+		policyPage = new PageImpl<>(content, PageRequest.of(0, 100), 10_000);
+
+		// Let ModelMapper build its type maps before measuring
+		modelMapper.map(policyEntity, PolicyResponseDTO.class);
+	}
+
+	@Benchmark
+	public PolicyResponseDTO modelMapperEntityToResponse() {
+		return modelMapper.map(policyEntity, PolicyResponseDTO.class);
+	}
+
+	@Benchmark
+	public PolicyResponseDTO generatedEntityToResponse() {
+		return policyMapper.toResponse(policyEntity);
+	}
+
+	@Benchmark
+	public PolicyEntity modelMapperRequestToEntity() {
+		return modelMapper.map(policyRequestDTO, PolicyEntity.class);
+	}
+
+	@Benchmark
+	public PolicyEntity generatedRequestToEntity() {
+		return policyMapper.toEntity(policyRequestDTO);
+	}
+
+	@Benchmark
+	public Page<PolicyResponseDTO> modelMapperPage() {
+		return modelMapper.map(policyPage, new TypeToken<Page<PolicyResponseDTO>>() {
+		}.getType());
+	}
+
+	@Benchmark
+	public Page<PolicyResponseDTO> generatedPage() {
+		return policyPage.map(policyMapper::toResponse);
+	}
+
+	private static PolicyEntity policy(int i) {
+		ProductEntity product = new ProductEntity();
+		product.setId(i);
+		product.setProductName("Full of risk");
+		product.setProductCode("S6DHD78S");
+
+		HolderEntity holder = new HolderEntity();
+		holder.setId(i);
+		holder.setHolderName("Igor");
+		holder.setHolderSurname("Dosinchuk");
+		holder.setPhoneNumber("987654321");
+		holder.setEmail("idosinchuk@example.com");
+		holder.setPassportNumber("PS9393474S" + i);
+
+		VehicleEntity vehicle = new VehicleEntity();
+		vehicle.setId(i);
+		vehicle.setBrand("Jaguar");
+		vehicle.setLicensePlate("6846JNR" + i);
+
+		PolicyEntity policy = new PolicyEntity();
+		policy.setId(i);
+		policy.setPolicyCode("RJHD21JD" + i);
+		policy.setCost(new BigDecimal("100"));
+		policy.setProduct(product);
+		policy.setHolder(holder);
+		policy.setVehicle(vehicle);
+		return policy;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(MapperBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+
+}
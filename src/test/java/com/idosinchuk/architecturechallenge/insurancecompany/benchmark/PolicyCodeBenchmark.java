@@ -0,0 +1,72 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.util.SnowflakeIdGenerator;
+
+/**
+ * Policy codes per second handed out by one generator shared by 1, 4 and 16
+ * threads, against the same id layout behind a lock.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PolicyCodeBenchmark {
+
+	private static final int[] THREADS = { 1, 4, 16 };
+
+	private SnowflakeIdGenerator generator;
+
+	// Milliseconds and sequence of the locked generator, as packed by the lock-free one
+	private long last;
+
+	@Setup
+	public void setup() {
+		generator = new SnowflakeIdGenerator(1);
+	}
+
+	@Benchmark
+	public long lockFreeId() {
+		return generator.nextId();
+	}
+
+	@Benchmark
+	public String lockFreeCode() {
+		return generator.nextCode();
+	}
+
+	@Benchmark
+	public synchronized long synchronizedId() {
+		long now = System.currentTimeMillis() - SnowflakeIdGenerator.EPOCH;
+		last = now > last >>> 12 ? now << 12 : last + 1;
+		return (last >>> 12) << 22 | 1 << 12 | last & 0xFFF;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		for (int threads : THREADS) {
+			new Runner(new OptionsBuilder().include(PolicyCodeBenchmark.class.getSimpleName()).threads(threads)
+					.build()).run();
+		}
+	}
+
+}
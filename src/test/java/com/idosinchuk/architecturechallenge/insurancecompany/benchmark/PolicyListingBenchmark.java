@@ -0,0 +1,127 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PolicyService;
+
+/**
+ * Time per page of the policy listing with and without the second-level cache
+ * of products, holders and vehicles. The listing selects the policy columns
+ * only, so without the cache every page also selects its references. Every
+ * statement execution is charged a network round trip by
+ * {@link RoundTripDriver}, and the round trips per page are printed after each
+ * iteration.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PolicyListingBenchmark {
+
+	private static final int POLICIES = 10000;
+
+	private static final int PRODUCTS = 20;
+
+	// Holders and vehicles with several policies each
+	private static final int HOLDERS = 2000;
+
+	private static final int VEHICLES = 2000;
+
+	private static final int PAGE_SIZE = 20;
+
+	@Param({ "false", "true" })
+	public boolean secondLevelCache;
+
+	@Param({ "0", "250" })
+	public long roundTripMicros;
+
+	private ConfigurableApplicationContext context;
+
+	private PolicyService policyService;
+
+	private int afterId;
+
+	private long pages;
+
+	private long roundTrips;
+
+	@Setup
+	public void setup() {
+		context = BenchmarkApplication.start(roundTripMicros,
+				"spring.jpa.properties.hibernate.cache.use_second_level_cache=" + secondLevelCache,
+				"spring.jpa.properties.hibernate.cache.use_query_cache=" + secondLevelCache);
+
+		policyService = context.getBean(PolicyService.class);
+
+		JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+		jdbcTemplate.update("INSERT INTO product (id, product_name, product_code) "
+				+ "SELECT X, 'Full of risk', CONCAT('PRODUCT', X) FROM SYSTEM_RANGE(1, ?)", PRODUCTS);
+		jdbcTemplate.update("INSERT INTO holder (id, holder_name, holder_surname, phone_number, email, "
+				+ "passport_number) SELECT X, 'Igor', 'Dosinchuk', '987654321', 'idosinchuk@example.com', "
+				+ "CONCAT('PASSPORT', X) FROM SYSTEM_RANGE(1, ?)", HOLDERS);
+		jdbcTemplate.update("INSERT INTO vehicle (id, brand, license_plate) "
+				+ "SELECT X, 'Jaguar', CONCAT('PLATE', X) FROM SYSTEM_RANGE(1, ?)", VEHICLES);
+		jdbcTemplate.update("INSERT INTO policy (id, policy_code, cost, product_id, holder_id, vehicle_id) "
+				+ "SELECT X, CONCAT('POLICY', X), 100.50, MOD(X, ?) + 1, MOD(X, ?) + 1, MOD(X * 7, ?) + 1 "
+				+ "FROM SYSTEM_RANGE(1, ?)", PRODUCTS, HOLDERS, VEHICLES, POLICIES);
+	}
+
+	@Setup(Level.Iteration)
+	public void startCounting() {
+		pages = 0;
+		roundTrips = RoundTripDriver.getRoundTrips();
+	}
+
+	@TearDown(Level.Iteration)
+	public void printRoundTrips() {
+		System.out.printf("%n%.2f round trips per page%n",
+				(double) (RoundTripDriver.getRoundTrips() - roundTrips) / pages);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public Slice<PolicyResponseDTO> listPage() {
+		pages++;
+
+		// Keyset pages, an offset walk would mostly measure the skipped rows
+		Slice<PolicyResponseDTO> page = policyService.getAllPoliciesAfter(afterId, PAGE_SIZE);
+		afterId = page.hasNext() ? afterId + PAGE_SIZE : 0;
+
+		return page;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(PolicyListingBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
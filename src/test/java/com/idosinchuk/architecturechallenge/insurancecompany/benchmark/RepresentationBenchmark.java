@@ -0,0 +1,152 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.benchmark;
+
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.web.HateoasPageableHandlerMethodArgumentResolver;
+import org.springframework.data.web.PagedResourcesAssembler;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.Resources;
+import org.springframework.hateoas.core.EvoInflectorRelProvider;
+import org.springframework.hateoas.hal.Jackson2HalModule;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountStrategy;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountedPage;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CustomMessage;
+import com.idosinchuk.architecturechallenge.insurancecompany.controller.ProductController;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.ProductResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.LeanResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.resource.MessageResources;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.ArrayListCustomMessage;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.LeanRepresentation;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.Links;
+
+/**
+ * Cost of building and writing the body of a write response and of a page of
+ * products: links built by ControllerLinkBuilder and the paged resources
+ * assembler (linkTo), the cached links of the write responses (cached) and the
+ * lean representation (lean). Run with the GC profiler to compare the
+ * allocations.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepresentationBenchmark {
+
+	private static final int PAGE_SIZE = 20;
+
+	@Param({ "linkTo", "cached", "lean" })
+	public String representation;
+
+	private ObjectMapper objectMapper;
+
+	private PagedResourcesAssembler<ProductResponseDTO> pagedResourcesAssembler;
+
+	private CountedPage<ProductResponseDTO> page;
+
+	@Setup
+	public void setup() {
+		// The request the links are made of, bound to the benchmark thread
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/products");
+		request.setServerName("insurancecompany.example.com");
+		if ("lean".equals(representation)) {
+			request.setParameter(LeanRepresentation.PARAM, "true");
+		}
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+		// As configured for application/hal+json
+		objectMapper = new ObjectMapper();
+		objectMapper.registerModule(new Jackson2HalModule());
+		objectMapper.setHandlerInstantiator(
+				new Jackson2HalModule.HalHandlerInstantiator(new EvoInflectorRelProvider(), null, null));
+
+		pagedResourcesAssembler = new PagedResourcesAssembler<>(new HateoasPageableHandlerMethodArgumentResolver(),
+				null);
+
+		List<ProductResponseDTO> products = new ArrayList<>();
+		for (int i = 1; i <= PAGE_SIZE; i++) {
+			ProductResponseDTO product = new ProductResponseDTO();
+			product.setId(i);
+			product.setProductName("Full of risk");
+			product.setProductCode("PRODUCT" + i);
+			products.add(product);
+		}
+		page = new CountedPage<>(products, PageRequest.of(0, PAGE_SIZE), 1000, CountStrategy.EXACT);
+	}
+
+	@TearDown
+	public void tearDown() {
+		RequestContextHolder.resetRequestAttributes();
+	}
+
+	@Benchmark
+	public byte[] writeResponse() throws JsonProcessingException {
+		List<CustomMessage> customMessageList = ArrayListCustomMessage.setMessage("Patch product process",
+				HttpStatus.OK);
+
+		Object resource;
+		if ("linkTo".equals(representation)) {
+			Resources<CustomMessage> resources = new Resources<>(customMessageList);
+			resources.add(linkTo(ProductController.class).slash("PRODUCT1").withSelfRel());
+			resource = resources;
+		} else {
+			resource = MessageResources.of(customMessageList, ProductController.class, "PRODUCT1");
+		}
+
+		return objectMapper.writeValueAsBytes(resource);
+	}
+
+	@Benchmark
+	public Link selfLink() {
+		// The link alone, without the serialization
+		return "linkTo".equals(representation) ? linkTo(ProductController.class).slash("PRODUCT1").withSelfRel()
+				: Links.self(ProductController.class, "PRODUCT1");
+	}
+
+	@Benchmark
+	public byte[] listPage() throws JsonProcessingException {
+		// The page links depend on the request, only the lean representation skips them
+		Object resource = "lean".equals(representation) ? LeanResources.ofPage(page)
+				: pagedResourcesAssembler.toResource(page);
+
+		return objectMapper.writeValueAsBytes(resource);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(RepresentationBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class).build()).run();
+	}
+
+}
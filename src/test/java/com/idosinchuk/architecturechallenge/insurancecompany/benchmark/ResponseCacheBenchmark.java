@@ -0,0 +1,88 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.benchmark;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Latency of GET /api/v1/policies/{policyCode} through the dispatcher servlet,
+ * without the security filters, with the policy in the single record cache:
+ * the response body serialized on every read (max size 0) against copied from
+ * the stored bytes. Sampled, so the percentiles are printed along with the
+ * average.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseCacheBenchmark {
+
+	@Param({ "0", "64MB" })
+	public String maxSize;
+
+	@Param({ "application/json", "application/x-protobuf" })
+	public String accept;
+
+	private ConfigurableApplicationContext context;
+
+	private MockMvc mockMvc;
+
+	@Setup
+	public void setup() {
+		context = BenchmarkApplication.start("insurancecompany.response-cache.max-size=" + maxSize);
+
+		JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+		jdbcTemplate.update("INSERT INTO product (id, product_name, product_code) "
+				+ "VALUES (1, 'Full of risk', 'PRODUCT1')");
+		jdbcTemplate.update("INSERT INTO holder (id, holder_name, holder_surname, phone_number, email, "
+				+ "passport_number) VALUES (1, 'Igor', 'Dosinchuk', '987654321', 'idosinchuk@example.com', "
+				+ "'PASSPORT1')");
+		jdbcTemplate.update("INSERT INTO vehicle (id, brand, license_plate) VALUES (1, 'Jaguar', 'PLATE1')");
+		jdbcTemplate.update("INSERT INTO policy (id, policy_code, cost, product_id, holder_id, vehicle_id) "
+				+ "VALUES (1, 'POLICY1', 100.50, 1, 1, 1)");
+
+		mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public MockHttpServletResponse getPolicy() throws Exception {
+		return mockMvc.perform(get("/api/v1/policies/POLICY1").accept(accept)).andReturn().getResponse();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(ResponseCacheBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
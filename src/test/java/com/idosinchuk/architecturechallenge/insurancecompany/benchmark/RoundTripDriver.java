@@ -0,0 +1,122 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * JDBC driver for "jdbc:roundtrip:&lt;url&gt;" that delegates to the driver of
+ * "jdbc:&lt;url&gt;" and charges a fixed network round trip on every statement
+ * execution, like a database on another host. A JDBC batch is one execution,
+ * as with MySQL and rewriteBatchedStatements=true.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+public class RoundTripDriver implements Driver {
+
+	static final String PREFIX = "jdbc:roundtrip:";
+
+	private static volatile long roundTripNanos;
+
+	private static final AtomicLong ROUND_TRIPS = new AtomicLong();
+
+	static {
+		try {
+			DriverManager.registerDriver(new RoundTripDriver());
+		} catch (SQLException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	static void setRoundTripMicros(long roundTripMicros) {
+		roundTripNanos = TimeUnit.MICROSECONDS.toNanos(roundTripMicros);
+	}
+
+	static long getRoundTrips() {
+		return ROUND_TRIPS.get();
+	}
+
+	@Override
+	public Connection connect(String url, Properties info) throws SQLException {
+		if (!acceptsURL(url)) {
+			return null;
+		}
+
+		Connection connection = DriverManager.getConnection("jdbc:" + url.substring(PREFIX.length()), info);
+
+		InvocationHandler handler = (proxy, method, args) -> {
+			Object result = invoke(connection, method, args);
+			if (result instanceof Statement) {
+				return wrap((Statement) result, method.getReturnType());
+			}
+			return result;
+		};
+		return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+				handler);
+	}
+
+	private Object wrap(Statement statement, Class<?> type) {
+		InvocationHandler handler = (proxy, method, args) -> {
+			if (method.getName().startsWith("execute")) {
+				ROUND_TRIPS.incrementAndGet();
+				if (roundTripNanos > 0) {
+					LockSupport.parkNanos(roundTripNanos);
+				}
+			}
+			return invoke(statement, method, args);
+		};
+		return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type }, handler);
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	@Override
+	public boolean acceptsURL(String url) {
+		return url != null && url.startsWith(PREFIX);
+	}
+
+	@Override
+	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+		return new DriverPropertyInfo[0];
+	}
+
+	@Override
+	public int getMajorVersion() {
+		return 1;
+	}
+
+	@Override
+	public int getMinorVersion() {
+		return 0;
+	}
+
+	@Override
+	public boolean jdbcCompliant() {
+		return false;
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+}
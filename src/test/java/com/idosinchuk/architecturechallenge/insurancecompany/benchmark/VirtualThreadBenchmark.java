@@ -0,0 +1,179 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Time for a batch of requests to the keyset policy listing over HTTP from 400
+ * clients at once, served by the Tomcat pool of platform threads (max-threads
+ * 200) against a virtual thread per request. Every statement execution is
+ * charged a network round trip by {@link RoundTripDriver}, so the requests
+ * mostly wait on the database. The requests per second, failed requests,
+ * Tomcat platform threads and live heap are printed after each iteration. The
+ * virtual threads need Java 21 or later.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Dhttp.maxConnections=1000", "-Dnet.bytebuddy.experimental=true" })
+public class VirtualThreadBenchmark {
+
+	private static final int POLICIES = 1000;
+
+	private static final int CLIENTS = 400;
+
+	// Requests per client in a batch
+	private static final int REQUESTS = 5;
+
+	private static final String AUTHORIZATION = "Basic "
+			+ Base64.getEncoder().encodeToString("user:user".getBytes(StandardCharsets.UTF_8));
+
+	@Param({ "false", "true" })
+	public boolean virtualThreads;
+
+	@Param({ "1000" })
+	public long roundTripMicros;
+
+	private ConfigurableApplicationContext context;
+
+	private URL url;
+
+	private ExecutorService clients;
+
+	private long startNanos;
+
+	private final AtomicLong requests = new AtomicLong();
+
+	private final AtomicLong failures = new AtomicLong();
+
+	@Setup
+	public void setup() throws IOException {
+		context = BenchmarkApplication.start(roundTripMicros,
+				"insurancecompany.virtual-threads.enabled=" + virtualThreads);
+
+		JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+		jdbcTemplate.update("INSERT INTO product (id, product_name, product_code) "
+				+ "VALUES (1, 'Full of risk', 'PRODUCT1')");
+		jdbcTemplate.update("INSERT INTO holder (id, holder_name, holder_surname, phone_number, email, "
+				+ "passport_number) VALUES (1, 'Igor', 'Dosinchuk', '987654321', 'idosinchuk@example.com', "
+				+ "'PASSPORT1')");
+		jdbcTemplate.update("INSERT INTO vehicle (id, brand, license_plate) VALUES (1, 'Jaguar', 'PLATE1')");
+		jdbcTemplate.update("INSERT INTO policy (id, policy_code, cost, product_id, holder_id, vehicle_id) "
+				+ "SELECT X, CONCAT('POLICY', X), 100.50, 1, 1, 1 FROM SYSTEM_RANGE(1, ?)", POLICIES);
+
+		int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+		url = new URL("http://localhost:" + port + "/api/v1/policies?cursor=&size=20");
+
+		clients = Executors.newFixedThreadPool(CLIENTS);
+	}
+
+	@Setup(Level.Iteration)
+	public void startCounting() {
+		requests.set(0);
+		failures.set(0);
+		startNanos = System.nanoTime();
+	}
+
+	@TearDown(Level.Iteration)
+	public void printThreads() {
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+		long tomcatThreads = Thread.getAllStackTraces().keySet().stream()
+				.filter(thread -> thread.getName().startsWith("http-nio-")).count();
+		// Live heap, not the garbage of the iteration
+		System.gc();
+		long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+		System.out.printf("%n%.0f requests/s, %d of %d failed, %d Tomcat platform threads, %d platform threads "
+				+ "in all (peak %d), %d MB live heap%n", requests.get() / seconds, failures.get(), requests.get(),
+				tomcatThreads,
+				ManagementFactory.getThreadMXBean().getThreadCount(),
+				ManagementFactory.getThreadMXBean().getPeakThreadCount(), heapUsed >> 20);
+	}
+
+	@TearDown
+	public void tearDown() {
+		clients.shutdownNow();
+		context.close();
+	}
+
+	@Benchmark
+	public long listPolicies() throws Exception {
+		List<Future<?>> batch = new ArrayList<>(CLIENTS);
+		for (int i = 0; i < CLIENTS; i++) {
+			batch.add(clients.submit(() -> {
+				for (int j = 0; j < REQUESTS; j++) {
+					get();
+				}
+				return null;
+			}));
+		}
+
+		for (Future<?> future : batch) {
+			future.get();
+		}
+
+		return requests.get();
+	}
+
+	private void get() throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setRequestProperty("Authorization", AUTHORIZATION);
+		connection.setRequestProperty("User-Agent", "benchmark");
+
+		int status = connection.getResponseCode();
+		requests.incrementAndGet();
+		if (status != HttpURLConnection.HTTP_OK) {
+			failures.incrementAndGet();
+		}
+
+		// Read to the end, so the connection is kept alive for the next request
+		byte[] buffer = new byte[8192];
+		try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+			while (in != null && in.read(buffer) != -1) {
+				// discard
+			}
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(VirtualThreadBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
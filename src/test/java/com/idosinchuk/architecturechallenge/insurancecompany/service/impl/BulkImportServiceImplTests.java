@@ -0,0 +1,167 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.BulkFormat;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.BulkRowResultDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.HolderEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.ProductEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.VehicleEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.HolderRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.PolicyRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.ProductRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.VehicleRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.BulkImportService;
+
+/**
+ * Per-record results and set-based lookups of the bulk imports.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class BulkImportServiceImplTests {
+
+	private static final int POLICIES = 40;
+
+	@Autowired
+	private BulkImportService bulkImportService;
+
+	@Autowired
+	private PolicyRepository policyRepository;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private HolderRepository holderRepository;
+
+	@Autowired
+	private VehicleRepository vehicleRepository;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@After
+	public void tearDown() {
+		policyRepository.deleteAllInBatch();
+		productRepository.deleteAllInBatch();
+		holderRepository.deleteAllInBatch();
+		vehicleRepository.deleteAllInBatch();
+	}
+
+	@Test
+	public void importHoldersAnswersEveryRecordInOrder() throws IOException {
+		holderRepository.save(holder("EXISTING"));
+
+		String body = holderLine("PASSPORT1") + "\n" //
+				+ "{\"holderName\": \n" //
+				+ "{\"holderName\":\"Igor\"}\n" //
+				+ holderLine("PASSPORT1") + "\n" //
+				+ holderLine("EXISTING") + "\n" //
+				+ holderLine("PASSPORT2") + "\n";
+
+		List<BulkRowResultDTO> results = importBody(body, BulkFormat.NDJSON_VALUE,
+				bulkImportService::importHolders);
+
+		assertThat(results).extracting(BulkRowResultDTO::getRecord).containsExactly(1, 2, 3, 4, 5, 6);
+		assertThat(results).extracting(BulkRowResultDTO::getStatus).containsExactly(201, 400, 400, 400, 400, 201);
+		assertThat(results.get(2).getMessage()).contains("passportNumber");
+		assertThat(holderRepository.count()).isEqualTo(3);
+	}
+
+	@Test
+	public void importPoliciesResolvesReferencesOncePerChunk() throws IOException {
+		StringBuilder body = new StringBuilder("policyCode,cost,productCode,passportNumber,licensePlate\n");
+
+		for (int i = 0; i < POLICIES; i++) {
+			ProductEntity product = new ProductEntity();
+			product.setProductName("Full of risk");
+			product.setProductCode("PRODUCT" + i);
+			productRepository.save(product);
+
+			holderRepository.save(holder("PASSPORT" + i));
+
+			VehicleEntity vehicle = new VehicleEntity();
+			vehicle.setBrand("Jaguar");
+			vehicle.setLicensePlate("PLATE" + i);
+			vehicleRepository.save(vehicle);
+
+			body.append("POLICY").append(i).append(",100,PRODUCT").append(i).append(",PASSPORT").append(i)
+					.append(",PLATE").append(i).append('\n');
+		}
+		body.append("POLICYX,not a number,PRODUCT0,PASSPORT0,PLATE0\n");
+		body.append("POLICYY,100,UNKNOWN,PASSPORT0,PLATE0\n");
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		List<BulkRowResultDTO> results = importBody(body.toString(), BulkFormat.CSV_VALUE,
+				bulkImportService::importPolicies);
+
+		assertThat(results).hasSize(POLICIES + 2);
+		assertThat(results.subList(0, POLICIES)).allSatisfy(result -> assertThat(result.getStatus()).isEqualTo(201));
+		assertThat(results.get(POLICIES).getStatus()).isEqualTo(400);
+		assertThat(results.get(POLICIES + 1).getMessage()).isEqualTo("Product code UNKNOWN does not exist!");
+		assertThat(policyRepository.count()).isEqualTo(POLICIES);
+
+		// Four lookups, the id allocation and the batched insert, whatever the number
+		// of records
+		assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(8);
+	}
+
+	private interface Import {
+		void run(ByteArrayInputStream body, MediaType mediaType, ByteArrayOutputStream results) throws IOException;
+	}
+
+	private List<BulkRowResultDTO> importBody(String body, String mediaType, Import bulkImport)
+			throws IOException {
+		ByteArrayOutputStream results = new ByteArrayOutputStream();
+
+		bulkImport.run(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), MediaType.valueOf(mediaType),
+				results);
+
+		return objectMapper.readerFor(BulkRowResultDTO.class)
+				.<BulkRowResultDTO>readValues(results.toByteArray()).readAll();
+	}
+
+	private String holderLine(String passportNumber) {
+		return "{\"holderName\":\"Igor\",\"holderSurname\":\"Dosinchuk\",\"phoneNumber\":\"987654321\","
+				+ "\"email\":\"idosinchuk@example.com\",\"passportNumber\":\"" + passportNumber + "\"}";
+	}
+
+	private HolderEntity holder(String passportNumber) {
+		HolderEntity holder = new HolderEntity();
+		holder.setHolderName("Igor");
+		holder.setHolderSurname("Dosinchuk");
+		holder.setPhoneNumber("987654321");
+		holder.setEmail("idosinchuk@example.com");
+		holder.setPassportNumber(passportNumber);
+		return holder;
+	}
+}
@@ -0,0 +1,187 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.common.ReadResult;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.GuardedReadService;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.DatabaseUnavailableException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Reads fall back to the last known value, and the circuit breaker stops
+ * reading from a failing database.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "insurancecompany.guarded-read.timeout=PT0.2S",
+		"insurancecompany.guarded-read.failure-threshold=3", "insurancecompany.guarded-read.open-duration=PT0.5S",
+		"insurancecompany.guarded-read.threads=1", "insurancecompany.guarded-read.queue-size=1" })
+@ActiveProfiles("test")
+public class GuardedReadServiceImplTests {
+
+	private static final Supplier<String> FAILING = () -> {
+		throw new DataAccessResourceFailureException("Connection refused");
+	};
+
+	@Autowired
+	private GuardedReadService guardedReadService;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Before
+	public void setUp() {
+		// A success resets the consecutive failures of the previous test. A circuit it
+		// left open is closed by the refresh of a later read, in the background.
+		guardedReadService.read("test", "RESET", () -> "reset");
+		for (int i = 0; i < 20 && circuitState() != 0; i++) {
+			sleep(100);
+			guardedReadService.read("test", "RESET", () -> "reset");
+		}
+	}
+
+	@Test
+	public void lastValueIsServedStaleWhenReadFails() throws Exception {
+		assertThat(guardedReadService.read("test", "A", () -> "first").isStale()).isFalse();
+
+		ReadResult<String> stale = guardedReadService.read("test", "A", FAILING);
+		assertThat(stale.isStale()).isTrue();
+		assertThat(stale.getValue()).isEqualTo("first");
+		assertThat(stale.headers().getFirst("Warning")).isEqualTo(ReadResult.STALE_WARNING);
+
+		// A slow read is not waited for, but refreshes the last value when it ends
+		ReadResult<String> slow = guardedReadService.read("test", "A", () -> {
+			sleep(400);
+			return "second";
+		});
+		assertThat(slow.getValue()).isEqualTo("first");
+		sleep(600);
+		assertThat(guardedReadService.read("test", "A", FAILING).getValue()).isEqualTo("second");
+
+		guardedReadService.read("test", "A", () -> "third");
+		assertThatThrownBy(() -> guardedReadService.read("test", "NEVER_READ", FAILING))
+				.isInstanceOf(DatabaseUnavailableException.class);
+	}
+
+	@Test
+	public void circuitOpensAfterConsecutiveFailuresAndClosesAfterTrial() throws Exception {
+		guardedReadService.read("test", "B", () -> "value");
+		for (int i = 0; i < 3; i++) {
+			guardedReadService.read("test", "B", FAILING);
+		}
+		assertThat(meterRegistry.get(GuardedReadServiceImpl.CIRCUIT_STATE_METRIC).gauge().value()).isEqualTo(1);
+
+		// While open the database is not read at all
+		AtomicInteger reads = new AtomicInteger();
+		ReadResult<String> read = guardedReadService.read("test", "B", () -> "read " + reads.incrementAndGet());
+		assertThat(reads.get()).isZero();
+		assertThat(read.isStale()).isTrue();
+
+		double halfOpen = meterRegistry
+				.counter(GuardedReadServiceImpl.CIRCUIT_TRANSITIONS_METRIC, "state", "HALF_OPEN").count();
+		sleep(600);
+
+		// The last value is served at once, the trial read refreshes it in the background
+		read = guardedReadService.read("test", "B", () -> {
+			sleep(100);
+			return "read " + reads.incrementAndGet();
+		});
+		assertThat(read.isStale()).isTrue();
+		assertThat(read.getValue()).isEqualTo("value");
+		assertThat(meterRegistry.counter(GuardedReadServiceImpl.CIRCUIT_TRANSITIONS_METRIC, "state", "HALF_OPEN")
+				.count()).isEqualTo(halfOpen + 1);
+
+		// Only one refresh of the key at a time
+		guardedReadService.read("test", "B", () -> "read " + reads.incrementAndGet());
+
+		sleep(300);
+		assertThat(reads.get()).isEqualTo(1);
+		assertThat(circuitState()).isEqualTo(0);
+		assertThat(guardedReadService.read("test", "B", FAILING).getValue()).isEqualTo("read 1");
+	}
+
+	@Test
+	public void fullQueueShedsReadsWithoutOpeningCircuit() throws Exception {
+		guardedReadService.read("test", "C", () -> "value");
+
+		CountDownLatch stalled = new CountDownLatch(1);
+		Supplier<String> stalledRead = () -> {
+			try {
+				stalled.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "value";
+		};
+
+		try {
+			// The reader and the queue are taken, then every other read is refused
+			for (int i = 0; i < 6; i++) {
+				assertThat(guardedReadService.read("test", "C", stalledRead).isStale()).isTrue();
+			}
+
+			// Two timeouts, under the threshold: the refused reads did not count
+			assertThat(meterRegistry.get(GuardedReadServiceImpl.CIRCUIT_STATE_METRIC).gauge().value())
+					.isEqualTo(0);
+		} finally {
+			stalled.countDown();
+		}
+		sleep(200);
+	}
+
+	@Test
+	public void readerBugIsThrownWithoutCountingAgainstDatabase() {
+		guardedReadService.read("test", "E", () -> "value");
+
+		for (int i = 0; i < 3; i++) {
+			assertThatThrownBy(() -> guardedReadService.read("test", "E", () -> {
+				throw new NullPointerException("Mapping bug");
+			})).isInstanceOf(NullPointerException.class);
+		}
+
+		assertThat(meterRegistry.get(GuardedReadServiceImpl.CIRCUIT_STATE_METRIC).gauge().value()).isEqualTo(0);
+	}
+
+	@Test
+	public void cachedValueIsServedWithoutReading() {
+		AtomicInteger reads = new AtomicInteger();
+
+		ReadResult<String> read = guardedReadService.read("test", "D", () -> "cached",
+				() -> "read " + reads.incrementAndGet());
+
+		assertThat(read.getValue()).isEqualTo("cached");
+		assertThat(read.isStale()).isFalse();
+		assertThat(reads.get()).isZero();
+	}
+
+	private double circuitState() {
+		return meterRegistry.get(GuardedReadServiceImpl.CIRCUIT_STATE_METRIC).gauge().value();
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
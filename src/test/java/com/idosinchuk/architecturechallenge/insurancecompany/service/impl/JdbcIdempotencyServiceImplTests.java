@@ -0,0 +1,84 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.IdempotencyFilter;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.HolderRepository;
+
+/**
+ * Retried POSTs with an Idempotency-Key, keys stored in the database.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "insurancecompany.idempotency.store=jdbc")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class JdbcIdempotencyServiceImplTests {
+
+	private static final String HOLDER = "{\"holderName\":\"Igor\",\"holderSurname\":\"Dosinchuk\","
+			+ "\"phoneNumber\":\"987654321\",\"email\":\"idosinchuk@example.com\",\"passportNumber\":\"PASSPORT1\"}";
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private HolderRepository holderRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@After
+	public void tearDown() {
+		holderRepository.deleteAllInBatch();
+		jdbcTemplate.update("DELETE FROM idempotency_key");
+	}
+
+	@Test
+	public void retryGetsStoredResponseWithoutCreatingAgain() throws Exception {
+		MockHttpServletResponse first = addHolder("KEY1", HOLDER);
+		MockHttpServletResponse retry = addHolder("KEY1", HOLDER);
+
+		assertThat(first.getStatus()).isEqualTo(HttpStatus.OK.value());
+		assertThat(retry.getStatus()).isEqualTo(HttpStatus.OK.value());
+		assertThat(retry.getContentAsString()).isEqualTo(first.getContentAsString());
+		assertThat(retry.getHeader(IdempotencyFilter.IDEMPOTENT_REPLAYED)).isEqualTo("true");
+
+		// Without the key the second request would be rejected as existing
+		assertThat(holderRepository.count()).isEqualTo(1);
+	}
+
+	@Test
+	public void keyReusedWithAnotherBodyIsRejected() throws Exception {
+		addHolder("KEY1", HOLDER);
+
+		MockHttpServletResponse response = addHolder("KEY1", HOLDER.replace("PASSPORT1", "PASSPORT2"));
+
+		assertThat(response.getStatus()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY.value());
+		assertThat(holderRepository.count()).isEqualTo(1);
+	}
+
+	private MockHttpServletResponse addHolder(String idempotencyKey, String holder) throws Exception {
+		return mockMvc.perform(post("/api/v1/holders").header(HttpHeaders.AUTHORIZATION, "Basic dXNlcjp1c2Vy")
+				.header(IdempotencyFilter.IDEMPOTENCY_KEY, idempotencyKey).contentType(MediaType.APPLICATION_JSON)
+				.content(holder)).andReturn().getResponse();
+	}
+
+}
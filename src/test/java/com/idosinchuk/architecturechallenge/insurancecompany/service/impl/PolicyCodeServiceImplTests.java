@@ -0,0 +1,180 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.IdempotencyFilter;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.HolderEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.PolicyEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.ProductEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.VehicleEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.HolderRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.PolicyRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.ProductRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.VehicleRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PolicyCodeService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.ProductCatalogService;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.SnowflakeIdGenerator;
+
+/**
+ * Policy codes generated by the server.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "insurancecompany.policy-code.server-assigned=true")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class PolicyCodeServiceImplTests {
+
+	private static final int THREADS = 8;
+
+	private static final int CODES = 20000;
+
+	@Autowired
+	private PolicyCodeService policyCodeService;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private PolicyRepository policyRepository;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private HolderRepository holderRepository;
+
+	@Autowired
+	private VehicleRepository vehicleRepository;
+
+	@Autowired
+	private ProductCatalogService productCatalogService;
+
+	@After
+	public void tearDown() {
+		policyRepository.deleteAllInBatch();
+		productRepository.deleteAllInBatch();
+		holderRepository.deleteAllInBatch();
+		vehicleRepository.deleteAllInBatch();
+		productCatalogService.refresh();
+	}
+
+	@Test
+	public void concurrentCodesAreUniqueAndOrderedPerThread() throws Exception {
+		Set<String> codes = ConcurrentHashMap.newKeySet();
+		List<String> unordered = new ArrayList<>();
+		List<Thread> threads = new ArrayList<>();
+
+		for (int t = 0; t < THREADS; t++) {
+			threads.add(new Thread(() -> {
+				String previous = "";
+				for (int i = 0; i < CODES; i++) {
+					String code = policyCodeService.nextPolicyCode();
+					codes.add(code);
+					if (code.compareTo(previous) <= 0) {
+						synchronized (unordered) {
+							unordered.add(code);
+						}
+					}
+					previous = code;
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertThat(codes).hasSize(THREADS * CODES);
+		assertThat(unordered).isEmpty();
+		assertThat(codes).allSatisfy(code -> assertThat(code).hasSize(SnowflakeIdGenerator.CODE_LENGTH));
+	}
+
+	@Test
+	public void addPolicyWithoutCodeGetsGeneratedOne() throws Exception {
+		saveReferences();
+
+		MockHttpServletResponse response = addPolicy(null);
+
+		assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+
+		List<PolicyEntity> policies = policyRepository.findAll();
+		assertThat(policies).hasSize(1);
+		assertThat(policies.get(0).getPolicyCode()).hasSize(SnowflakeIdGenerator.CODE_LENGTH);
+		assertThat(response.getHeader(HttpHeaders.LOCATION)).endsWith("/policies/" + policies.get(0).getPolicyCode());
+	}
+
+	@Test
+	public void retryWithIdempotencyKeyGetsGeneratedCode() throws Exception {
+		saveReferences();
+
+		MockHttpServletResponse first = addPolicy("POLICYKEY1");
+		MockHttpServletResponse retry = addPolicy("POLICYKEY1");
+
+		assertThat(retry.getStatus()).isEqualTo(first.getStatus());
+		assertThat(retry.getHeader(IdempotencyFilter.IDEMPOTENT_REPLAYED)).isEqualTo("true");
+
+		// The retry was not executed, only the first request generated a code
+		List<PolicyEntity> policies = policyRepository.findAll();
+		assertThat(policies).hasSize(1);
+		assertThat(retry.getHeader(HttpHeaders.LOCATION)).isEqualTo(first.getHeader(HttpHeaders.LOCATION))
+				.endsWith("/policies/" + policies.get(0).getPolicyCode());
+	}
+
+	private void saveReferences() {
+		ProductEntity product = new ProductEntity();
+		product.setProductName("Full of risk");
+		product.setProductCode("PRODUCT1");
+		productRepository.save(product);
+		productCatalogService.refresh();
+
+		HolderEntity holder = new HolderEntity();
+		holder.setHolderName("Igor");
+		holder.setHolderSurname("Dosinchuk");
+		holder.setPhoneNumber("987654321");
+		holder.setEmail("idosinchuk@example.com");
+		holder.setPassportNumber("PASSPORT1");
+		holderRepository.save(holder);
+
+		VehicleEntity vehicle = new VehicleEntity();
+		vehicle.setBrand("Jaguar");
+		vehicle.setLicensePlate("PLATE1");
+		vehicleRepository.save(vehicle);
+	}
+
+	private MockHttpServletResponse addPolicy(String idempotencyKey) throws Exception {
+		MockHttpServletRequestBuilder request = post("/api/v1/policies")
+				.header(HttpHeaders.AUTHORIZATION, "Basic dXNlcjp1c2Vy").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"cost\":100,\"productCode\":\"PRODUCT1\",\"passportNumber\":\"PASSPORT1\","
+						+ "\"licensePlate\":\"PLATE1\"}");
+		if (idempotencyKey != null) {
+			request.header(IdempotencyFilter.IDEMPOTENCY_KEY, idempotencyKey);
+		}
+
+		return mockMvc.perform(request).andReturn().getResponse();
+	}
+
+}
@@ -0,0 +1,189 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.BulkFormat;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.HolderEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.PolicyEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.ProductEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.VehicleEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.HolderRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.PolicyRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.ProductRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.VehicleRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PolicyExportService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PolicyService;
+
+/**
+ * The export writes the same policies as the policy endpoints.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class PolicyExportServiceImplTests {
+
+	private static final int POLICIES = 5;
+
+	@Autowired
+	private PolicyExportService policyExportService;
+
+	@Autowired
+	private PolicyService policyService;
+
+	@Autowired
+	private PolicyRepository policyRepository;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private HolderRepository holderRepository;
+
+	@Autowired
+	private VehicleRepository vehicleRepository;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private PolicyExportServiceImpl policyExportServiceImpl;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Before
+	public void setUp() {
+		for (int i = 0; i < POLICIES; i++) {
+			ProductEntity product = new ProductEntity();
+			product.setProductName("Full of risk");
+			product.setProductCode("PRODUCT" + i);
+
+			HolderEntity holder = new HolderEntity();
+			holder.setHolderName("Igor");
+			holder.setHolderSurname("Dosinchuk");
+			holder.setPhoneNumber("987654321");
+			holder.setEmail("idosinchuk@example.com");
+			holder.setPassportNumber("PASSPORT" + i);
+
+			VehicleEntity vehicle = new VehicleEntity();
+			vehicle.setBrand("Jaguar");
+			vehicle.setLicensePlate("PLATE" + i);
+
+			// Policies do not cascade to their references
+			productRepository.save(product);
+			holderRepository.save(holder);
+			vehicleRepository.save(vehicle);
+
+			PolicyEntity policy = new PolicyEntity();
+			policy.setPolicyCode("POLICY" + i);
+			policy.setCost(new BigDecimal("100.50"));
+			policy.setProduct(product);
+			policy.setHolder(holder);
+			policy.setVehicle(vehicle);
+
+			policyRepository.save(policy);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		policyRepository.deleteAllInBatch();
+		productRepository.deleteAllInBatch();
+		holderRepository.deleteAllInBatch();
+		vehicleRepository.deleteAllInBatch();
+	}
+
+	@Test
+	public void ndjsonExportMatchesPolicyResponses() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		policyExportService.exportPolicies(BulkFormat.NDJSON, out);
+
+		List<PolicyResponseDTO> exported = objectMapper.readerFor(PolicyResponseDTO.class)
+				.<PolicyResponseDTO>readValues(out.toByteArray()).readAll();
+
+		assertThat(exported).hasSize(POLICIES);
+		for (PolicyResponseDTO policy : exported) {
+			assertThat(policy).isEqualTo(policyService.getPolicies(policy.getPolicyCode()));
+		}
+	}
+
+	@Test
+	public void mysqlWithoutCursorFetchStreamsRowByRow() throws SQLException {
+		Connection connection = mock(Connection.class);
+		DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+		PreparedStatement statement = mock(PreparedStatement.class);
+		when(connection.getMetaData()).thenReturn(metaData);
+		when(connection.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(statement);
+		when(metaData.getDatabaseProductName()).thenReturn("MySQL");
+
+		// Connector/J would read the whole result at once with a positive fetch size
+		when(metaData.getURL()).thenReturn("jdbc:mysql://localhost:3306/insurancecompany");
+		policyExportServiceImpl.openCursor(connection);
+		verify(statement).setFetchSize(Integer.MIN_VALUE);
+
+		when(metaData.getURL()).thenReturn("jdbc:mysql://localhost:3306/insurancecompany?useCursorFetch=true");
+		policyExportServiceImpl.openCursor(connection);
+		verify(statement).setFetchSize(1000);
+	}
+
+	@Test
+	public void exportIsGivenTheBulkRequestTimeout() throws Exception {
+		MockHttpServletRequest request = mockMvc.perform(get("/api/v1/policies/export")
+				.header(HttpHeaders.AUTHORIZATION, "Basic dXNlcjp1c2Vy").accept(BulkFormat.NDJSON.mediaType()))
+				.andReturn().getRequest();
+
+		// insurancecompany.bulk.request-timeout, not the default async timeout
+		assertThat(request.isAsyncStarted()).isTrue();
+		assertThat(request.getAsyncContext().getTimeout()).isEqualTo(Duration.ofMinutes(30).toMillis());
+	}
+
+	@Test
+	public void csvExportHasHeaderAndOneLinePerPolicy() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		policyExportService.exportPolicies(BulkFormat.CSV, out);
+
+		String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+
+		assertThat(lines).hasSize(POLICIES + 1);
+		assertThat(lines[0]).startsWith("id,policyCode,cost,productId,");
+		assertThat(lines[1]).contains(",POLICY0,100.50,").endsWith(",Jaguar,PLATE0");
+	}
+}
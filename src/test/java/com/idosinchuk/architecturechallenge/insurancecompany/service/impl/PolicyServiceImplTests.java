@@ -0,0 +1,443 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountStrategy;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.CountedPage;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.MergePatch;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.HolderRequestDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyRequestDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.PolicyResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.ProductRequestDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.HolderEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.PolicyEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.ProductEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.VehicleEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.HolderRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.PolicyRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.ProductRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.VehicleRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.HolderService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.PolicyService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.ProductCatalogService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.ProductService;
+import com.idosinchuk.architecturechallenge.insurancecompany.util.EntityTags;
+
+/**
+ * Statement counts for the policy read paths, so an N+1 regression fails the
+ * build.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class PolicyServiceImplTests {
+
+	private static final int POLICIES = 30;
+
+	@Autowired
+	private PolicyService policyService;
+
+	@Autowired
+	private HolderService holderService;
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private PolicyRepository policyRepository;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private HolderRepository holderRepository;
+
+	@Autowired
+	private VehicleRepository vehicleRepository;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Autowired
+	private ProductCatalogService productCatalogService;
+
+	private Statistics statistics;
+
+	@Before
+	public void setUp() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+		for (int i = 0; i < POLICIES; i++) {
+			ProductEntity product = new ProductEntity();
+			product.setProductName("Full of risk");
+			product.setProductCode("PRODUCT" + i);
+
+			HolderEntity holder = new HolderEntity();
+			holder.setHolderName("Igor");
+			holder.setHolderSurname("Dosinchuk");
+			holder.setPhoneNumber("987654321");
+			holder.setEmail("idosinchuk@example.com");
+			holder.setPassportNumber("PASSPORT" + i);
+
+			VehicleEntity vehicle = new VehicleEntity();
+			vehicle.setBrand("Jaguar");
+			vehicle.setLicensePlate("PLATE" + i);
+
+			// Policies do not cascade to their references
+			productRepository.save(product);
+			holderRepository.save(holder);
+			vehicleRepository.save(vehicle);
+
+			PolicyEntity policy = new PolicyEntity();
+			policy.setPolicyCode("POLICY" + i);
+			policy.setCost(new BigDecimal("100"));
+			policy.setProduct(product);
+			policy.setHolder(holder);
+			policy.setVehicle(vehicle);
+
+			policyRepository.save(policy);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		policyRepository.deleteAllInBatch();
+		productRepository.deleteAllInBatch();
+		holderRepository.deleteAllInBatch();
+		vehicleRepository.deleteAllInBatch();
+
+		// The batch deletes bypass the cache evictions
+		cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+		productCatalogService.refresh();
+	}
+
+	@Test
+	public void getAllPoliciesLoadsPageWithPageAndCountQueries() {
+		entityManagerFactory.getCache().evictAll();
+		statistics.clear();
+
+		Slice<PolicyResponseDTO> page = policyService.getAllPolicies(PageRequest.of(0, 20), CountStrategy.EXACT);
+
+		// Cold second-level cache: page and count queries, then one select per
+		// reference type, never one per policy
+		assertThat(page.getContent()).hasSize(20);
+		assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(5);
+
+		statistics.clear();
+
+		page = policyService.getAllPolicies(PageRequest.of(0, 20), CountStrategy.EXACT);
+
+		assertThat(page.getContent()).hasSize(20);
+		assertThat(page.getContent()).allSatisfy(policy -> {
+			assertThat(policy.getProduct()).isNotNull();
+			assertThat(policy.getHolder()).isNotNull();
+			assertThat(policy.getVehicle()).isNotNull();
+		});
+		assertThat(((CountedPage<PolicyResponseDTO>) page).getTotalElements()).isEqualTo(POLICIES);
+		assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(2);
+	}
+
+	@Test
+	public void getAllPoliciesLoadsReferencesMissingFromCacheInOneSelectEach() {
+		entityManagerFactory.getCache().evictAll();
+		statistics.clear();
+
+		policyService.getAllPolicies(PageRequest.of(0, 20), CountStrategy.NONE);
+
+		// Page query, then product, holder and vehicle ids in one select each
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(4);
+
+		statistics.clear();
+
+		policyService.getAllPolicies(PageRequest.of(0, 20), CountStrategy.NONE);
+
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+		assertThat(statistics.getDomainDataRegionStatistics(ProductEntity.CACHE_REGION).getMissCount())
+				.isZero();
+	}
+
+	@Test
+	public void getAllPoliciesWithoutCountRunsOnlyPageQuery() {
+		// The first read loads the references into the second-level cache
+		policyService.getAllPolicies(PageRequest.of(0, 20), CountStrategy.NONE);
+		statistics.clear();
+
+		Slice<PolicyResponseDTO> page = policyService.getAllPolicies(PageRequest.of(0, 20), CountStrategy.NONE);
+
+		assertThat(page).isNotInstanceOf(CountedPage.class);
+		assertThat(page.hasNext()).isTrue();
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void getAllPoliciesWithCachedCountCountsOnce() {
+		policyService.getAllPolicies(PageRequest.of(0, 20), CountStrategy.CACHED);
+		statistics.clear();
+
+		Slice<PolicyResponseDTO> page = policyService.getAllPolicies(PageRequest.of(0, 20), CountStrategy.CACHED);
+
+		assertThat(((CountedPage<PolicyResponseDTO>) page).getCountStrategy()).isEqualTo(CountStrategy.CACHED);
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void getPoliciesLoadsPolicyWithSingleQuery() {
+		statistics.clear();
+
+		PolicyResponseDTO policy = policyService.getPolicies("POLICY7");
+
+		assertThat(policy.getHolder().getPassportNumber()).isEqualTo("PASSPORT7");
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void getPoliciesIsServedFromCacheOnSecondRead() {
+		policyService.getPolicies("POLICY7");
+		statistics.clear();
+
+		PolicyResponseDTO policy = policyService.getPolicies("POLICY7");
+
+		assertThat(policy.getPolicyCode()).isEqualTo("POLICY7");
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void updateHolderEvictsCachedPoliciesOfHolder() {
+		policyService.getPolicies("POLICY3");
+
+		HolderRequestDTO holderRequestDTO = new HolderRequestDTO();
+		holderRequestDTO.setHolderName("Ivan");
+		holderRequestDTO.setHolderSurname("Dosinchuk");
+		holderRequestDTO.setPhoneNumber("987654321");
+		holderRequestDTO.setEmail("idosinchuk@example.com");
+		holderService.updateHolder("PASSPORT3", MergePatch.of(holderRequestDTO, "holderName", "holderSurname",
+				"phoneNumber", "email"), null);
+
+		PolicyResponseDTO policy = policyService.getPolicies("POLICY3");
+
+		assertThat(policy.getHolder().getHolderName()).isEqualTo("Ivan");
+	}
+
+	@Test
+	public void updateProductEvictsCachedPoliciesWithoutLookingThemUp() {
+		policyService.getPolicies("POLICY3");
+		policyService.getPolicies("POLICY4");
+
+		ProductRequestDTO productRequestDTO = new ProductRequestDTO();
+		productRequestDTO.setProductName("Third party");
+		statistics.clear();
+		productService.updateProduct("PRODUCT3", MergePatch.of(productRequestDTO, "productName"), null);
+
+		// Select and update of the product, the policies of the product are not queried
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+		assertThat(policyService.getPolicies("POLICY3").getProduct().getProductName()).isEqualTo("Third party");
+		assertThat(policyService.getPolicies("POLICY4").getProduct().getProductName()).isEqualTo("Full of risk");
+	}
+
+	@Test
+	public void getPoliciesByCodesLoadsAllPoliciesWithSingleQuery() {
+		statistics.clear();
+
+		List<PolicyResponseDTO> policies = policyService.getPolicies(Arrays.asList("POLICY3", "POLICY7", "MISSING"));
+
+		assertThat(policies).extracting(PolicyResponseDTO::getPolicyCode).containsExactlyInAnyOrder("POLICY3",
+				"POLICY7");
+		assertThat(policies).allSatisfy(policy -> assertThat(policy.getVehicle()).isNotNull());
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void getAllPoliciesAfterWalksAllPoliciesWithOneQueryPerPage() {
+		entityManagerFactory.getCache().evictAll();
+
+		// Cold second-level cache: the page query and one select per reference type
+		assertThat(walkAllPoliciesAfter(4)).isEqualTo(POLICIES);
+
+		// Then the references are all cached
+		assertThat(walkAllPoliciesAfter(1)).isEqualTo(POLICIES);
+	}
+
+	private int walkAllPoliciesAfter(int maxStatementsPerPage) {
+		int afterId = 0;
+		int read = 0;
+		Slice<PolicyResponseDTO> slice;
+
+		do {
+			statistics.clear();
+
+			slice = policyService.getAllPoliciesAfter(afterId, 7);
+
+			assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(maxStatementsPerPage);
+			assertThat(slice.getContent()).allSatisfy(policy -> assertThat(policy.getId()).isGreaterThan(0));
+
+			read += slice.getNumberOfElements();
+			afterId = slice.getContent().get(slice.getNumberOfElements() - 1).getId();
+		} while (slice.hasNext());
+
+		return read;
+	}
+
+	@Test
+	public void addPolicyCreatesPolicy() {
+		ResponseEntity<?> response = policyService.addPolicy(policyRequest("NEWPOLICY"));
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(policyRepository.findByPolicyCode("NEWPOLICY").getHolder().getPassportNumber())
+				.isEqualTo("PASSPORT1");
+	}
+
+	@Test
+	public void addPolicyRunsOneSelectAndOneInsert() {
+		// The first insert also reserves a block of policy ids
+		policyService.addPolicy(policyRequest("NEWPOLICY1"));
+		statistics.clear();
+
+		ResponseEntity<?> response = policyService.addPolicy(policyRequest("NEWPOLICY2"));
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+		assertThat(statistics.getEntityLoadCount()).isZero();
+		assertThat(statistics.getEntityUpdateCount()).isZero();
+	}
+
+	@Test
+	public void addPolicyWithUnknownReferenceIsRejected() {
+		PolicyRequestDTO policyRequestDTO = policyRequest("NEWPOLICY");
+		policyRequestDTO.setLicensePlate("UNKNOWN");
+
+		ResponseEntity<?> response = policyService.addPolicy(policyRequestDTO);
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		assertThat(policyRepository.count()).isEqualTo(POLICIES);
+	}
+
+	@Test
+	public void addPolicyWithExistingCodeIsRejectedByUniqueIndex() {
+		ResponseEntity<?> response = policyService.addPolicy(policyRequest("POLICY0"));
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		assertThat(policyRepository.count()).isEqualTo(POLICIES);
+	}
+
+	@Test
+	public void updatePolicyWithCurrentVersionRunsOneConditionalUpdate() {
+		statistics.clear();
+
+		ResponseEntity<?> response = policyService.updatePolicy("POLICY3", costPatch("150"),
+				Collections.singleton(0));
+
+		// The tag of a policy embeds the versions of its references, which are not read
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getETag()).isNull();
+
+		// Only the cost is written, without reading the policy first
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+		PolicyEntity policy = policyRepository.findByPolicyCode("POLICY3");
+		assertThat(policy.getCost()).isEqualByComparingTo("150");
+		assertThat(policy.getHolder().getPassportNumber()).isEqualTo("PASSPORT3");
+	}
+
+	@Test
+	public void updatePolicyWithStaleVersionIsRejected() {
+		policyService.updatePolicy("POLICY3", costPatch("150"), Collections.singleton(0));
+
+		ResponseEntity<?> response = policyService.updatePolicy("POLICY3", costPatch("200"),
+				Collections.singleton(0));
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+		assertThat(policyRepository.findByPolicyCode("POLICY3").getVersion()).isEqualTo(1);
+	}
+
+	@Test
+	public void updatePolicyWithAnyMatchingTagOfTheList() {
+		// Tags of the JSON and CBOR reads, the CBOR one is current
+		ResponseEntity<?> response = policyService.updatePolicy("POLICY3", costPatch("150"),
+				EntityTags.versionsOf("\"7.0.0.0+json\", \"0.0.0.0+cbor\""));
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(policyRepository.findByPolicyCode("POLICY3").getVersion()).isEqualTo(1);
+
+		// A weak tag never matches
+		response = policyService.updatePolicy("POLICY3", costPatch("200"),
+				EntityTags.versionsOf("\"0.0.0.0+json\", W/\"1.0.0.0+json\""));
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+		assertThat(policyRepository.findByPolicyCode("POLICY3").getCost()).isEqualByComparingTo("150");
+	}
+
+	@Test
+	public void updatePolicyKeepsFieldsMissingFromPatch() {
+		// The products of this test are not in the catalog yet
+		productCatalogService.refresh();
+
+		ResponseEntity<?> response = policyService.updatePolicy("POLICY3",
+				MergePatch.of(policyRequest("POLICY3"), "productCode", "licensePlate"), null);
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		PolicyEntity policy = policyRepository.findByPolicyCode("POLICY3");
+		assertThat(policy.getProduct().getProductCode()).isEqualTo("PRODUCT1");
+		assertThat(policy.getVehicle().getLicensePlate()).isEqualTo("PLATE1");
+		assertThat(policy.getHolder().getPassportNumber()).isEqualTo("PASSPORT3");
+		assertThat(policy.getCost()).isEqualByComparingTo("100");
+	}
+
+	@Test
+	public void updatePolicyRemovingRequiredFieldIsRejected() {
+		PolicyRequestDTO policyRequestDTO = policyRequest("POLICY3");
+		policyRequestDTO.setCost(null);
+
+		ResponseEntity<?> response = policyService.updatePolicy("POLICY3", MergePatch.of(policyRequestDTO, "cost"),
+				Collections.singleton(0));
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		assertThat(policyRepository.findByPolicyCode("POLICY3").getVersion()).isZero();
+	}
+
+	private static PolicyRequestDTO policyRequest(String policyCode) {
+		PolicyRequestDTO policyRequestDTO = new PolicyRequestDTO();
+		policyRequestDTO.setPolicyCode(policyCode);
+		policyRequestDTO.setCost(new BigDecimal("150"));
+		policyRequestDTO.setProductCode("PRODUCT1");
+		policyRequestDTO.setPassportNumber("PASSPORT1");
+		policyRequestDTO.setLicensePlate("PLATE1");
+		return policyRequestDTO;
+	}
+
+	private static MergePatch<PolicyRequestDTO> costPatch(String cost) {
+		PolicyRequestDTO policyRequestDTO = new PolicyRequestDTO();
+		policyRequestDTO.setCost(new BigDecimal(cost));
+		return MergePatch.of(policyRequestDTO, "cost");
+	}
+
+}
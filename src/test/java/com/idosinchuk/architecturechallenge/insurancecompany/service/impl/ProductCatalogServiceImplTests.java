@@ -0,0 +1,128 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.common.MergePatch;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.ProductRequestDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.ProductResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.ProductEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.ProductRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.ProductCatalogService;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.ProductService;
+
+/**
+ * The product catalog answers from memory and follows the product writes.
+ * 
+ * @author Igor Dosinchuk
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class ProductCatalogServiceImplTests {
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private ProductCatalogService productCatalogService;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private Statistics statistics;
+
+	@Before
+	public void setUp() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+		ProductRequestDTO productRequestDTO = new ProductRequestDTO();
+		productRequestDTO.setProductName("Full of risk");
+		productRequestDTO.setProductCode("PRODUCT1");
+		productService.addProduct(productRequestDTO);
+	}
+
+	@After
+	public void tearDown() {
+		productRepository.deleteAllInBatch();
+		productCatalogService.refresh();
+	}
+
+	@Test
+	public void getProductIsServedFromCatalog() {
+		statistics.clear();
+
+		assertThat(productService.getProduct("PRODUCT1").getProductName()).isEqualTo("Full of risk");
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void updateProductReplacesCatalogEntryOnCommit() {
+		ProductRequestDTO productRequestDTO = new ProductRequestDTO();
+		productRequestDTO.setProductName("Third party");
+		productService.updateProduct("PRODUCT1", MergePatch.of(productRequestDTO, "productName"), null);
+		statistics.clear();
+
+		assertThat(productService.getProduct("PRODUCT1").getProductName()).isEqualTo("Third party");
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void conditionalUpdateOverStaleCatalogPutsStoredProduct() {
+		// Written by another instance, the catalog still has version 0
+		jdbcTemplate.update("UPDATE product SET product_name = 'Renamed', version = 1 WHERE product_code = ?",
+				"PRODUCT1");
+
+		ProductRequestDTO productRequestDTO = new ProductRequestDTO();
+		productRequestDTO.setProductName("Third party");
+		productService.updateProduct("PRODUCT1", MergePatch.of(productRequestDTO, "productName"),
+				Collections.singleton(1));
+
+		ProductResponseDTO product = productCatalogService.getCachedProduct("PRODUCT1");
+		assertThat(product.getProductName()).isEqualTo("Third party");
+		assertThat(product.getVersion()).isEqualTo(productRepository.findByProductCode("PRODUCT1").getVersion())
+				.isEqualTo(2);
+	}
+
+	@Test
+	public void productWrittenElsewhereIsFoundOnCatalogMiss() {
+		for (String productCode : new String[] { "PRODUCT2", "PRODUCT3" }) {
+			ProductEntity product = new ProductEntity();
+			product.setProductName("Full of risk");
+			product.setProductCode(productCode);
+			productRepository.save(product);
+		}
+		statistics.clear();
+
+		assertThat(productService.getProduct("PRODUCT2")).isNotNull();
+		assertThat(productService.getProduct("MISSING")).isNull();
+
+		// One query per missed product, the catalog is not reloaded on the request
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+		assertThat(productCatalogService.getCachedProduct("PRODUCT2")).isNotNull();
+		assertThat(productCatalogService.getCachedProduct("PRODUCT3")).isNull();
+	}
+
+}
@@ -0,0 +1,162 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.CacheConfig;
+import com.idosinchuk.architecturechallenge.insurancecompany.JacksonProtobufHttpMessageConverter;
+import com.idosinchuk.architecturechallenge.insurancecompany.common.BinaryFormat;
+import com.idosinchuk.architecturechallenge.insurancecompany.dto.HolderResponseDTO;
+import com.idosinchuk.architecturechallenge.insurancecompany.entity.HolderEntity;
+import com.idosinchuk.architecturechallenge.insurancecompany.repository.HolderRepository;
+import com.idosinchuk.architecturechallenge.insurancecompany.service.ResponseCacheService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Serialized bodies of the reads by key.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class ResponseCacheServiceImplTests {
+
+	private static final String AUTHORIZATION = "Basic dXNlcjp1c2Vy";
+
+	@Autowired
+	private ResponseCacheService responseCacheService;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private HolderRepository holderRepository;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@After
+	public void tearDown() {
+		holderRepository.deleteAllInBatch();
+		cacheManager.getCache(CacheConfig.HOLDERS).clear();
+	}
+
+	@Test
+	public void readsOfTheSameVersionGetTheStoredBody() throws Exception {
+		saveHolder();
+
+		double hits = hits();
+
+		MockHttpServletResponse first = getHolder(MediaType.APPLICATION_JSON_VALUE);
+		MockHttpServletResponse second = getHolder(MediaType.APPLICATION_JSON_VALUE);
+
+		assertThat(second.getStatus()).isEqualTo(HttpStatus.OK.value());
+		assertThat(second.getContentType()).isEqualTo(first.getContentType());
+		assertThat(second.getContentAsByteArray()).isEqualTo(first.getContentAsByteArray());
+		assertThat(hits()).isEqualTo(hits + 1);
+
+		// Stored per media type
+		MockHttpServletResponse protobuf = getHolder(BinaryFormat.PROTOBUF_VALUE);
+		assertThat(protobuf.getContentType()).isEqualTo(BinaryFormat.PROTOBUF_VALUE);
+		assertThat(hits()).isEqualTo(hits + 1);
+
+		mockMvc.perform(patch("/api/v1/holders/PASSPORT1").header(HttpHeaders.AUTHORIZATION, AUTHORIZATION)
+				.contentType(MediaType.APPLICATION_JSON).content("{\"holderName\":\"Ivan\"}"));
+
+		MockHttpServletResponse updated = getHolder(MediaType.APPLICATION_JSON_VALUE);
+		assertThat(updated.getHeader(HttpHeaders.ETAG)).isNotEqualTo(first.getHeader(HttpHeaders.ETAG));
+		assertThat(updated.getContentAsString()).contains("\"holderName\":\"Ivan\"");
+	}
+
+	@Test
+	public void everyMediaTypeIsARepresentationOfItsOwn() throws Exception {
+		saveHolder();
+
+		MockHttpServletResponse json = getHolder(MediaType.APPLICATION_JSON_VALUE);
+		MockHttpServletResponse protobuf = getHolder(BinaryFormat.PROTOBUF_VALUE);
+
+		assertThat(json.getHeader(HttpHeaders.ETAG)).isEqualTo("\"0+json\"");
+		assertThat(protobuf.getHeader(HttpHeaders.ETAG)).isEqualTo("\"0+protobuf\"");
+		assertThat(protobuf.getHeader(HttpHeaders.VARY)).isEqualTo(HttpHeaders.ACCEPT);
+
+		// The version to send in If-Match is in the Protobuf body too
+		JacksonProtobufHttpMessageConverter converter = new JacksonProtobufHttpMessageConverter();
+		HolderResponseDTO holder = converter.getMapper().readerFor(HolderResponseDTO.class)
+				.with(converter.getSchema("Holder")).readValue(protobuf.getContentAsByteArray());
+		assertThat(holder.getVersion()).isZero();
+
+		// A tag of the JSON body does not validate the Protobuf one
+		MockHttpServletResponse notModified = getHolder(BinaryFormat.PROTOBUF_VALUE,
+				protobuf.getHeader(HttpHeaders.ETAG));
+		MockHttpServletResponse modified = getHolder(BinaryFormat.PROTOBUF_VALUE, json.getHeader(HttpHeaders.ETAG));
+
+		assertThat(notModified.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+		assertThat(notModified.getHeader(HttpHeaders.VARY)).isEqualTo(HttpHeaders.ACCEPT);
+		assertThat(modified.getStatus()).isEqualTo(HttpStatus.OK.value());
+		assertThat(modified.getContentAsByteArray()).isEqualTo(protobuf.getContentAsByteArray());
+	}
+
+	@Test
+	public void bodyOfAnotherVersionIsNotServed() {
+		responseCacheService.put("test", "KEY", "\"1\"", MediaType.APPLICATION_JSON, MediaType.APPLICATION_JSON,
+				new byte[] { '{', '}' });
+
+		assertThat(responseCacheService.get("test", "KEY", "\"1\"", MediaType.APPLICATION_JSON).getLength())
+				.isEqualTo(2);
+		assertThat(responseCacheService.get("test", "KEY", "\"2\"", MediaType.APPLICATION_JSON)).isNull();
+		assertThat(responseCacheService.get("test", "KEY", "\"1\"", MediaType.APPLICATION_XML)).isNull();
+
+		responseCacheService.evict("test", "KEY");
+
+		assertThat(responseCacheService.get("test", "KEY", "\"1\"", MediaType.APPLICATION_JSON)).isNull();
+	}
+
+	private void saveHolder() {
+		HolderEntity holder = new HolderEntity();
+		holder.setHolderName("Igor");
+		holder.setHolderSurname("Dosinchuk");
+		holder.setPhoneNumber("987654321");
+		holder.setEmail("idosinchuk@example.com");
+		holder.setPassportNumber("PASSPORT1");
+		holderRepository.save(holder);
+	}
+
+	private MockHttpServletResponse getHolder(String accept) throws Exception {
+		return mockMvc.perform(get("/api/v1/holders/PASSPORT1").header(HttpHeaders.AUTHORIZATION, AUTHORIZATION)
+				.accept(accept)).andReturn().getResponse();
+	}
+
+	private MockHttpServletResponse getHolder(String accept, String ifNoneMatch) throws Exception {
+		return mockMvc.perform(get("/api/v1/holders/PASSPORT1").header(HttpHeaders.AUTHORIZATION, AUTHORIZATION)
+				.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch).accept(accept)).andReturn().getResponse();
+	}
+
+	private double hits() {
+		return meterRegistry.counter(ResponseCacheServiceImpl.REQUESTS_METRIC, "resource", "holder", "result", "hit")
+				.count();
+	}
+
+}
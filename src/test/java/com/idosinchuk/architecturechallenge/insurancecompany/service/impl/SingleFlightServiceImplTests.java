@@ -0,0 +1,88 @@
+package com.idosinchuk.architecturechallenge.insurancecompany.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.idosinchuk.architecturechallenge.insurancecompany.service.SingleFlightService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Concurrent loads of the same key run once.
+ *
+ * @author Igor Dosinchuk
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class SingleFlightServiceImplTests {
+
+	@Autowired
+	private SingleFlightService singleFlightService;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Test
+	public void concurrentCallersShareOneLoad() throws Exception {
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger loads = new AtomicInteger();
+
+		Supplier<Object> loader = () -> {
+			loads.incrementAndGet();
+			loading.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new Object();
+		};
+
+		AtomicReference<Object> first = new AtomicReference<>();
+		AtomicReference<Object> second = new AtomicReference<>();
+		Thread firstCaller = new Thread(() -> first.set(singleFlightService.load("test", "KEY", loader)));
+		Thread secondCaller = new Thread(() -> second.set(singleFlightService.load("test", "KEY", loader)));
+
+		firstCaller.start();
+		loading.await();
+		secondCaller.start();
+
+		// Release the load once the second caller waits for it
+		while (secondCaller.getState() != Thread.State.TIMED_WAITING) {
+			Thread.sleep(1);
+		}
+		release.countDown();
+		firstCaller.join();
+		secondCaller.join();
+
+		assertThat(loads.get()).isEqualTo(1);
+		assertThat(second.get()).isSameAs(first.get());
+		assertThat(meterRegistry.counter(SingleFlightServiceImpl.CALLS_METRIC, "resource", "test", "result",
+				"coalesced").count()).isEqualTo(1);
+	}
+
+	@Test
+	public void sequentialCallersLoadAgain() {
+		AtomicInteger loads = new AtomicInteger();
+
+		singleFlightService.load("test", "OTHER", loads::incrementAndGet);
+		singleFlightService.load("test", "OTHER", loads::incrementAndGet);
+
+		assertThat(loads.get()).isEqualTo(2);
+	}
+
+}